@@ -0,0 +1,255 @@
+package com.rairai.consumer_kafka_1.catalog;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Carga do catálogo de estoque a partir de um arquivo mapeado em memória e processado em blocos paralelos com
+ * fork/join. Dois formatos:
+ * <ul>
+ *     <li>CSV ({@code productId,quantity} por linha; linhas que não parseiam, como o cabeçalho, são ignoradas);</li>
+ *     <li>binário ({@code .bin}): {@code "STK1"}, largura do id em 2 bytes e registros de largura fixa com o id em
+ *     UTF-8 completado com zeros e a quantidade como int big-endian. A largura fixa deixa os blocos alinhados sem
+ *     procurar fim de linha.</li>
+ * </ul>
+ */
+@Component
+public class CatalogLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogLoader.class);
+
+    static final byte[] BINARY_MAGIC = {'S', 'T', 'K', '1'};
+    static final int BINARY_HEADER = BINARY_MAGIC.length + Short.BYTES;
+
+    private final Path path;
+    private final int parallelism;
+    private final int chunkBytes;
+
+    public CatalogLoader(@Value("${app.stock.catalog.path:}") String path,
+                         @Value("${app.stock.catalog.parallelism:0}") int parallelism,
+                         @Value("${app.stock.catalog.chunk-bytes:4194304}") int chunkBytes) {
+        this.path = path == null || path.isBlank() ? null : Path.of(path);
+        this.parallelism = parallelism;
+        this.chunkBytes = chunkBytes;
+    }
+
+
+    public boolean isConfigured() {
+        return path != null;
+    }
+
+    /** Identifica a versão do arquivo (caminho, tamanho e data de modificação) para saber se ele já foi carregado. */
+    public String fingerprint() {
+        try {
+            return path.toAbsolutePath() + ":" + Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível ler o catálogo " + path, e);
+        }
+    }
+
+    public Map<String, Integer> load() {
+        long start = System.nanoTime();
+        ForkJoinPool pool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Catálogo " + path + " maior que 2 GB; divida o arquivo");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            LongAdder skipped = new LongAdder();
+            Map<String, Integer> catalog = path.getFileName().toString().endsWith(".bin")
+                    ? pool.invoke(binaryTask(buffer, skipped))
+                    : pool.invoke(new CsvChunk(buffer, 0, (int) size, chunkBytes, skipped));
+            logger.info("Catálogo {} carregado: produtos={}, linhas ignoradas={}, bytes={}, tempo={}ms",
+                    path, catalog.size(), skipped.sum(), size, (System.nanoTime() - start) / 1_000_000);
+            return catalog;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao carregar o catálogo " + path, e);
+        } finally {
+            if (pool != ForkJoinPool.commonPool()) {
+                pool.shutdown();
+            }
+        }
+    }
+
+
+    private BinaryChunk binaryTask(ByteBuffer buffer, LongAdder skipped) {
+        for (int i = 0; i < BINARY_MAGIC.length; i++) {
+            if (buffer.limit() < BINARY_HEADER || buffer.get(i) != BINARY_MAGIC[i]) {
+                throw new IllegalStateException("Catálogo binário " + path + " sem cabeçalho STK1");
+            }
+        }
+        int idWidth = Short.toUnsignedInt(buffer.getShort(BINARY_MAGIC.length));
+        int recordSize = idWidth + Integer.BYTES;
+        int records = (buffer.limit() - BINARY_HEADER) / recordSize;
+        return new BinaryChunk(buffer, idWidth, 0, records, Math.max(1, chunkBytes / recordSize), skipped);
+    }
+
+
+    /** Intervalo [start, end) do arquivo; processa as linhas que começam dentro dele, mesmo que terminem depois. */
+    private static final class CsvChunk extends RecursiveTask<Map<String, Integer>> {
+
+        private final ByteBuffer buffer;
+        private final int start;
+        private final int end;
+        private final int chunkBytes;
+        private final LongAdder skipped;
+
+        private CsvChunk(ByteBuffer buffer, int start, int end, int chunkBytes, LongAdder skipped) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+            this.chunkBytes = chunkBytes;
+            this.skipped = skipped;
+        }
+
+        @Override
+        protected Map<String, Integer> compute() {
+            if (end - start > chunkBytes) {
+                int mid = start + (end - start) / 2;
+                CsvChunk left = new CsvChunk(buffer, start, mid, chunkBytes, skipped);
+                left.fork();
+                Map<String, Integer> right = new CsvChunk(buffer, mid, end, chunkBytes, skipped).compute();
+                return merge(left.join(), right);
+            }
+
+            int limit = buffer.limit();
+            int pos = start;
+            // a linha que atravessa o início do bloco pertence ao bloco anterior
+            if (pos > 0 && buffer.get(pos - 1) != '\n') {
+                while (pos < limit && buffer.get(pos) != '\n') {
+                    pos++;
+                }
+                pos++;
+            }
+
+            Map<String, Integer> result = new HashMap<>(Math.max(16, (end - start) / 16));
+            while (pos < end && pos < limit) {
+                int lineStart = pos;
+                int comma = -1;
+                while (pos < limit && buffer.get(pos) != '\n') {
+                    if (comma < 0 && buffer.get(pos) == ',') {
+                        comma = pos;
+                    }
+                    pos++;
+                }
+                int lineEnd = pos > lineStart && buffer.get(pos - 1) == '\r' ? pos - 1 : pos;
+                pos++;
+                if (lineEnd == lineStart) {
+                    continue;
+                }
+                Integer quantity = comma > lineStart ? parseInt(buffer, comma + 1, lineEnd) : null;
+                if (quantity == null) {
+                    skipped.increment();
+                    continue;
+                }
+                byte[] id = new byte[comma - lineStart];
+                buffer.get(lineStart, id);
+                result.put(new String(id, StandardCharsets.UTF_8), quantity);
+            }
+            return result;
+        }
+    }
+
+    /** Registros [from, to) do arquivo binário. */
+    private static final class BinaryChunk extends RecursiveTask<Map<String, Integer>> {
+
+        private final ByteBuffer buffer;
+        private final int idWidth;
+        private final int from;
+        private final int to;
+        private final int recordsPerChunk;
+        private final LongAdder skipped;
+
+        private BinaryChunk(ByteBuffer buffer, int idWidth, int from, int to, int recordsPerChunk, LongAdder skipped) {
+            this.buffer = buffer;
+            this.idWidth = idWidth;
+            this.from = from;
+            this.to = to;
+            this.recordsPerChunk = recordsPerChunk;
+            this.skipped = skipped;
+        }
+
+        @Override
+        protected Map<String, Integer> compute() {
+            if (to - from > recordsPerChunk) {
+                int mid = from + (to - from) / 2;
+                BinaryChunk left = new BinaryChunk(buffer, idWidth, from, mid, recordsPerChunk, skipped);
+                left.fork();
+                Map<String, Integer> right = new BinaryChunk(buffer, idWidth, mid, to, recordsPerChunk, skipped).compute();
+                return merge(left.join(), right);
+            }
+
+            int recordSize = idWidth + Integer.BYTES;
+            Map<String, Integer> result = new HashMap<>(Math.max(16, (to - from) * 4 / 3));
+            byte[] id = new byte[idWidth];
+            for (int record = from; record < to; record++) {
+                int offset = BINARY_HEADER + record * recordSize;
+                buffer.get(offset, id);
+                int length = 0;
+                while (length < idWidth && id[length] != 0) {
+                    length++;
+                }
+                if (length == 0) {
+                    skipped.increment();
+                    continue;
+                }
+                result.put(new String(id, 0, length, StandardCharsets.UTF_8), buffer.getInt(offset + idWidth));
+            }
+            return result;
+        }
+    }
+
+
+    /** Junta dois blocos vizinhos; em produto repetido vale o registro mais adiante no arquivo. */
+    private static Map<String, Integer> merge(Map<String, Integer> left, Map<String, Integer> right) {
+        if (left.size() >= right.size()) {
+            left.putAll(right);
+            return left;
+        }
+        left.forEach(right::putIfAbsent);
+        return right;
+    }
+
+    private static Integer parseInt(ByteBuffer buffer, int from, int to) {
+        while (from < to && buffer.get(from) == ' ') {
+            from++;
+        }
+        while (to > from && buffer.get(to - 1) == ' ') {
+            to--;
+        }
+        boolean negative = from < to && buffer.get(from) == '-';
+        int pos = negative ? from + 1 : from;
+        if (pos == to || to - pos > 10) {
+            return null;
+        }
+        long value = 0;
+        for (; pos < to; pos++) {
+            int digit = buffer.get(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                return null;
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? null : (int) value;
+    }
+}
@@ -0,0 +1,364 @@
+package com.rairai.consumer_kafka_1.changelog;
+
+import com.rairai.consumer_kafka_1.commit.DurabilityBarrier;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.IsolationLevel;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+
+/**
+ * Changelog compactado do estoque. Cada mudança de um produto grava o valor mais recente ({@code stock:<productId>})
+ * e cada registro processado grava o próximo offset da partição de origem ({@code offset:<topic>:<partition>}).
+ * O tópico tem uma única partição, então a ordem das gravações é preservada: se um marcador de offset chegou ao
+ * broker, todas as mudanças de estoque anteriores a ele também chegaram.
+ * <p>
+ * As mudanças feitas dentro de {@link #process} vão no mesmo registro do marcador (offset na primeira linha, depois
+ * {@code productId=quantidade}), seguido dos {@code stock:<productId>} de sempre. Um crash entre duas gravações nunca
+ * deixa o estoque novo com o offset antigo, o que faria a releitura, com a deduplicação vazia, baixar o estoque de
+ * novo. Se o crash cair antes dos {@code stock:<productId>}, {@link #bootstrap()} os regrava a partir do marcador
+ * antes que a compactação possa descartá-lo.
+ * <p>
+ * Na subida, {@link #bootstrap()} lê só os valores compactados (proporcional ao número de SKUs) e os listeners
+ * retomam as partições de origem a partir dos marcadores. Também é o {@link DurabilityBarrier} do modo de commit
+ * {@code durable}: o estado está durável quando o producer confirma tudo que foi enviado ao changelog.
+ * <p>
+ * Com transações cada thread do container grava por um producer transacional próprio, e dois producers não garantem
+ * entre si a ordem de chegada ao broker. Por isso, dentro de uma transação, {@link #publish(Map)} espera o offset do
+ * registro antes de retornar, e {@link #publishNonTransactional(Map)} também: quem chama segura o lock do estoque,
+ * então a ordem no tópico é a ordem do lock.
+ */
+@Component
+@ConditionalOnProperty(name = "app.stock.changelog.enabled", havingValue = "true")
+public class StockChangelog implements DurabilityBarrier {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockChangelog.class);
+
+    static final String STOCK_PREFIX = "stock:";
+    static final String OFFSET_PREFIX = "offset:";
+    static final String CATALOG_KEY = "catalog";
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final KafkaTemplate<String, Object> nonTransactionalTemplate;
+    private final KafkaAdmin kafkaAdmin;
+    private final String topic;
+    private final int replicationFactor;
+    private final String bootstrapServers;
+    private final Duration bootstrapTimeout;
+
+    private final Map<String, Integer> stock = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, Long> offsets = new ConcurrentHashMap<>();
+    private final Set<String> onlyInMarker = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Source> processing = new ThreadLocal<>();
+    private final AtomicReference<Throwable> sendFailure = new AtomicReference<>();
+    private volatile String catalogFingerprint;
+
+    private final ReentrantLock readLock = new ReentrantLock();
+    private KafkaConsumer<String, String> reader;
+
+    /**
+     * Com {@code app.stock.transactions.enabled} as gravações usam o template transacional: as feitas durante o
+     * processamento de um pedido entram na transação dele e somem junto se ela abortar.
+     */
+    @Autowired
+    public StockChangelog(KafkaTemplate<String, Object> kafkaTemplate,
+                          @Qualifier("stockTransactionTemplate") ObjectProvider<KafkaTemplate<String, Object>> transactionTemplate,
+                          KafkaAdmin kafkaAdmin,
+                          @Value("${app.stock.changelog.topic:pedidos-stock-changelog}") String topic,
+                          @Value("${app.stock.changelog.replication-factor:1}") int replicationFactor,
+                          @Value("${spring.kafka.bootstrap-servers:localhost:9092,localhost:9093,localhost:9094}") String bootstrapServers,
+                          @Value("${app.stock.changelog.bootstrap-timeout-ms:60000}") long bootstrapTimeoutMs) {
+        this(transactionTemplate.getIfAvailable(() -> kafkaTemplate), kafkaTemplate, kafkaAdmin, topic,
+                replicationFactor, bootstrapServers, bootstrapTimeoutMs);
+    }
+
+    public StockChangelog(KafkaTemplate<String, Object> kafkaTemplate, KafkaAdmin kafkaAdmin, String topic,
+                          int replicationFactor, String bootstrapServers, long bootstrapTimeoutMs) {
+        this(kafkaTemplate, kafkaTemplate, kafkaAdmin, topic, replicationFactor, bootstrapServers, bootstrapTimeoutMs);
+    }
+
+    public StockChangelog(KafkaTemplate<String, Object> kafkaTemplate,
+                          KafkaTemplate<String, Object> nonTransactionalTemplate, KafkaAdmin kafkaAdmin, String topic,
+                          int replicationFactor, String bootstrapServers, long bootstrapTimeoutMs) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.nonTransactionalTemplate = nonTransactionalTemplate;
+        this.kafkaAdmin = kafkaAdmin;
+        this.topic = topic;
+        this.replicationFactor = replicationFactor;
+        this.bootstrapServers = bootstrapServers;
+        this.bootstrapTimeout = Duration.ofMillis(bootstrapTimeoutMs);
+    }
+
+
+    @PostConstruct
+    public void bootstrap() {
+        long start = System.nanoTime();
+        // criado aqui e não como bean NewTopic: o KafkaAdmin só cria os beans depois que este @PostConstruct já rodou
+        NewTopic changelogTopic = TopicBuilder.name(topic)
+                .partitions(1)
+                .replicas(replicationFactor)
+                .compact()
+                .config(TopicConfig.MIN_IN_SYNC_REPLICAS_CONFIG, replicationFactor > 1 ? "2" : "1")
+                .build();
+        kafkaAdmin.createOrModifyTopics(changelogTopic);
+
+        int read = catchUp();
+        Map<String, Integer> repaired = new LinkedHashMap<>();
+        onlyInMarker.forEach(productId -> repaired.put(productId, stock.get(productId)));
+        if (!repaired.isEmpty()) {
+            logger.warn("Changelog {} tinha mudanças só no marcador de offset; regravando {}", topic, repaired);
+            repaired.forEach((productId, qty) -> send(kafkaTemplate, STOCK_PREFIX + productId, Integer.toString(qty)));
+            onlyInMarker.clear();
+        }
+        logger.info("Changelog {} restaurado: registros lidos={}, produtos={}, offsets={}, tempo={}ms",
+                topic, read, stock.size(), offsets, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** Lê o changelog do ponto atual até o fim, atualizando o estado restaurado. Retorna o número de registros lidos. */
+    public int catchUp() {
+        readLock.lock();
+        try {
+            if (reader == null) {
+                reader = openReader();
+            }
+            TopicPartition tp = new TopicPartition(topic, 0);
+            long end = reader.endOffsets(List.of(tp)).get(tp);
+            long deadline = System.nanoTime() + bootstrapTimeout.toNanos();
+            int read = 0;
+            while (reader.position(tp) < end) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Tempo esgotado lendo o changelog " + topic + " até o offset " + end);
+                }
+                for (ConsumerRecord<String, String> record : reader.poll(Duration.ofMillis(200))) {
+                    apply(record.key(), record.value());
+                    read++;
+                }
+            }
+            return read;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+
+    /**
+     * Processa um registro da partição de origem: as mudanças publicadas por {@code work} nesta thread vão junto com o
+     * marcador {@code nextOffset}. Sem mudanças, grava só o marcador. Se {@code work} lançar exceção nada é marcado.
+     */
+    public <T> T process(TopicPartition source, long nextOffset, Supplier<T> work) {
+        Source current = new Source(source, nextOffset);
+        processing.set(current);
+        T result;
+        try {
+            result = work.get();
+        } finally {
+            processing.remove();
+        }
+        if (!current.marked) {
+            offsets.put(source, nextOffset);
+            send(kafkaTemplate, offsetKey(source), Long.toString(nextOffset));
+        }
+        return result;
+    }
+
+    public void publish(String productId, int quantity) {
+        publish(Map.of(productId, quantity));
+    }
+
+    /** Mudanças de um mesmo registro; chame uma vez com todas para que o marcador leve o conjunto inteiro. */
+    public void publish(Map<String, Integer> changes) {
+        stock.putAll(changes);
+        Source current = processing.get();
+        if (current != null) {
+            StringBuilder marker = new StringBuilder(Long.toString(current.nextOffset));
+            changes.forEach((productId, qty) -> marker.append('\n').append(productId).append('=').append(qty));
+            offsets.put(current.source, current.nextOffset);
+            send(kafkaTemplate, offsetKey(current.source), marker.toString());
+            current.marked = true;
+        }
+        CompletableFuture<?> last = null;
+        for (Map.Entry<String, Integer> change : changes.entrySet()) {
+            last = send(kafkaTemplate, STOCK_PREFIX + change.getKey(), Integer.toString(change.getValue()));
+        }
+        if (last != null && kafkaTemplate.inTransaction()) {
+            awaitOffset(last);
+        }
+    }
+
+    /**
+     * Grava mudanças sem transação mesmo com uma ainda ligada à thread. É o caminho da compensação de uma transação
+     * abortada: no {@code afterCompletion} o producer abortado continua ligado e não aceita mais envios. Como em
+     * {@link #publish(Map)}, espera o offset do broker: a próxima reserva do produto sai por outro producer e não pode
+     * chegar antes da quantidade devolvida.
+     */
+    public void publishNonTransactional(Map<String, Integer> changes) {
+        stock.putAll(changes);
+        CompletableFuture<?> last = null;
+        for (Map.Entry<String, Integer> change : changes.entrySet()) {
+            last = send(nonTransactionalTemplate, STOCK_PREFIX + change.getKey(), Integer.toString(change.getValue()));
+        }
+        if (last != null) {
+            awaitOffset(last);
+        }
+    }
+
+    /** Registra qual arquivo de catálogo originou o estado, para um restart não recarregar o mesmo arquivo. */
+    public void markCatalog(String fingerprint) {
+        catalogFingerprint = fingerprint;
+        send(kafkaTemplate, CATALOG_KEY, fingerprint);
+    }
+
+    public String catalogFingerprint() {
+        return catalogFingerprint;
+    }
+
+    public Map<String, Integer> restoredStock() {
+        return Collections.unmodifiableMap(new HashMap<>(stock));
+    }
+
+    public Long resumeOffset(TopicPartition source) {
+        return offsets.get(source);
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        return CompletableFuture.runAsync(() -> {
+            kafkaTemplate.flush();
+            if (nonTransactionalTemplate != kafkaTemplate) {
+                nonTransactionalTemplate.flush();
+            }
+            Throwable failure = sendFailure.getAndSet(null);
+            if (failure != null) {
+                throw new IllegalStateException("Falha ao gravar no changelog " + topic, failure);
+            }
+        });
+    }
+
+
+    private CompletableFuture<?> send(KafkaTemplate<String, Object> template, String key, String value) {
+        return template.send(topic, key, value.getBytes(StandardCharsets.UTF_8)).whenComplete((result, ex) -> {
+            if (ex != null) {
+                sendFailure.compareAndSet(null, ex);
+                logger.error("Falha ao gravar no changelog {}: key={}, erro={}", topic, key, ex.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Espera o broker atribuir o offset, sem esperar o commit da transação. Uma falha não é relançada: ela já ficou
+     * em {@code sendFailure} e derruba o próximo {@link #flush()}; numa transação a compensação registrada por quem
+     * chama desfaz a reserva.
+     */
+    private void awaitOffset(CompletableFuture<?> future) {
+        try {
+            future.get(bootstrapTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("Gravação no changelog {} sem confirmação: {}", topic, e.getMessage());
+        }
+    }
+
+    private static String offsetKey(TopicPartition source) {
+        return OFFSET_PREFIX + source.topic() + ":" + source.partition();
+    }
+
+    private void apply(String key, String value) {
+        if (key == null || value == null) {
+            return;
+        }
+        if (key.startsWith(STOCK_PREFIX)) {
+            String productId = key.substring(STOCK_PREFIX.length());
+            stock.put(productId, Integer.parseInt(value));
+            onlyInMarker.remove(productId);
+        } else if (key.equals(CATALOG_KEY)) {
+            catalogFingerprint = value;
+        } else if (key.startsWith(OFFSET_PREFIX)) {
+            String source = key.substring(OFFSET_PREFIX.length());
+            int sep = source.lastIndexOf(':');
+            TopicPartition tp = new TopicPartition(source.substring(0, sep), Integer.parseInt(source.substring(sep + 1)));
+            String[] lines = value.split("\n");
+            offsets.merge(tp, Long.parseLong(lines[0]), Math::max);
+            for (int i = 1; i < lines.length; i++) {
+                int eq = lines[i].lastIndexOf('=');
+                String productId = lines[i].substring(0, eq);
+                stock.put(productId, Integer.parseInt(lines[i].substring(eq + 1)));
+                onlyInMarker.add(productId);
+            }
+        }
+    }
+
+    private KafkaConsumer<String, String> openReader() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 5000);
+        // gravações de transações abortadas não podem voltar como estado restaurado
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, IsolationLevel.READ_COMMITTED.toString());
+        KafkaConsumer<String, String> consumer = new KafkaConsumer<>(props, new StringDeserializer(), new StringDeserializer());
+        TopicPartition tp = new TopicPartition(topic, 0);
+        consumer.assign(List.of(tp));
+        consumer.seekToBeginning(List.of(tp));
+        return consumer;
+    }
+
+    @PreDestroy
+    public void close() {
+        readLock.lock();
+        try {
+            if (reader != null) {
+                reader.close();
+                reader = null;
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+
+    private static final class Source {
+
+        private final TopicPartition source;
+        private final long nextOffset;
+        private boolean marked;
+
+        private Source(TopicPartition source, long nextOffset) {
+            this.source = source;
+            this.nextOffset = nextOffset;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.rairai.consumer_kafka_1.commit;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Controla quando os offsets chegam ao group coordinator. O container continua rastreando os acks fora de ordem e
+ * só entrega offsets contíguos já processados; cada consumer é embrulhado por um {@link CommitDeferringConsumer}
+ * que guarda o maior offset contíguo por partição e decide quando confirmá-lo:
+ * <ul>
+ *     <li>{@code batch}: um commit assíncrono quando o lote do último poll termina;</li>
+ *     <li>{@code time}: um commit assíncrono a cada {@code app.commit.interval-ms};</li>
+ *     <li>{@code durable}: ao fim do lote, espera os {@link DurabilityBarrier} e só então confirma.</li>
+ * </ul>
+ * Na revogação de partições e no close os offsets pendentes são confirmados de forma síncrona.
+ */
+@Component
+public class OffsetCommitManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffsetCommitManager.class);
+
+    public static final String MODE_BATCH = "batch";
+    public static final String MODE_TIME = "time";
+    public static final String MODE_DURABLE = "durable";
+
+    private final String mode;
+    private final Duration interval;
+    private final Duration flushTimeout;
+    private final DurabilityBarrier barrier;
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+
+    public OffsetCommitManager(@Value("${app.commit.mode:batch}") String mode,
+                               @Value("${app.commit.interval-ms:1000}") long intervalMs,
+                               @Value("${app.commit.flush-timeout-ms:10000}") long flushTimeoutMs,
+                               ObjectProvider<DurabilityBarrier> barrier) {
+        this.mode = switch (mode.toLowerCase()) {
+            case MODE_BATCH, MODE_TIME, MODE_DURABLE -> mode.toLowerCase();
+            default -> throw new IllegalArgumentException("app.commit.mode inválido: " + mode);
+        };
+        this.interval = Duration.ofMillis(intervalMs);
+        this.flushTimeout = Duration.ofMillis(flushTimeoutMs);
+        this.barrier = compose(barrier.orderedStream().toList());
+        logger.info("Commit de offsets configurado: mode={}, intervalMs={}", this.mode, intervalMs);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public <K, V> Consumer<K, V> wrap(Consumer<K, V> consumer) {
+        return (Consumer<K, V>) Proxy.newProxyInstance(Consumer.class.getClassLoader(),
+                new Class<?>[]{Consumer.class}, new CommitDeferringConsumer(consumer, this));
+    }
+
+    /** Confirma de forma síncrona o que estiver pendente para as partições revogadas. Chamar na thread do consumer. */
+    public void flush(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        CommitDeferringConsumer deferring = unwrap(consumer);
+        if (deferring != null) {
+            deferring.flush(partitions);
+        }
+    }
+
+    /** Descarta o estado de partições perdidas, que já podem pertencer a outro membro do grupo. */
+    public void discard(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        CommitDeferringConsumer deferring = unwrap(consumer);
+        if (deferring != null) {
+            deferring.discard(partitions);
+        }
+    }
+
+    public long requestedCommits() {
+        return requested.get();
+    }
+
+    public long committedCommits() {
+        return committed.get();
+    }
+
+
+    String mode() {
+        return mode;
+    }
+
+    Duration interval() {
+        return interval;
+    }
+
+    Duration flushTimeout() {
+        return flushTimeout;
+    }
+
+    DurabilityBarrier barrier() {
+        return barrier;
+    }
+
+    void onRequested() {
+        requested.incrementAndGet();
+    }
+
+    void onCommitted() {
+        committed.incrementAndGet();
+    }
+
+    /** Changelog e resultados de reserva podem estar ligados juntos: o estado está durável quando os dois estão. */
+    private static DurabilityBarrier compose(List<DurabilityBarrier> barriers) {
+        if (barriers.isEmpty()) {
+            return DurabilityBarrier.NONE;
+        }
+        if (barriers.size() == 1) {
+            return barriers.get(0);
+        }
+        return () -> CompletableFuture.allOf(barriers.stream()
+                .map(DurabilityBarrier::flush)
+                .toArray(CompletableFuture[]::new));
+    }
+
+    private static CommitDeferringConsumer unwrap(Consumer<?, ?> consumer) {
+        if (consumer != null && Proxy.isProxyClass(consumer.getClass())
+                && Proxy.getInvocationHandler(consumer) instanceof CommitDeferringConsumer deferring) {
+            return deferring;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,77 @@
+package com.rairai.consumer_kafka_1.config;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Producer dos resultados de reserva no modo {@code app.stock.outcomes.enabled=true} sem transações (no modo
+ * transacional o {@code TransactionalStockConfig} já publica no mesmo tópico). Separado do producer padrão para
+ * agrupar os eventos em lotes: {@code linger-ms} segura o envio até o lote encher {@code batch-size} bytes, e o lote
+ * inteiro vai comprimido numa única requisição ao broker.
+ */
+@Configuration
+@ConditionalOnExpression("${app.stock.outcomes.enabled:false} and !${app.stock.transactions.enabled:false}")
+public class ReservationOutcomeConfig {
+
+    @Value("${spring.kafka.bootstrap-servers:localhost:9092,localhost:9093,localhost:9094}")
+    private String bootstrapServers;
+
+    @Value("${app.stock.outcomes.topic:pedidos-stock-resultados}")
+    private String topic;
+
+    @Value("${app.stock.outcomes.linger-ms:20}")
+    private int lingerMs;
+
+    @Value("${app.stock.outcomes.batch-size:65536}")
+    private int batchSize;
+
+    @Value("${app.stock.outcomes.compression:lz4}")
+    private String compression;
+
+    @Value("${app.retry.partitions:3}")
+    private int partitions;
+
+    @Value("${app.retry.replication-factor:1}")
+    private int replicationFactor;
+
+    @Bean
+    public NewTopic reservationOutcomesTopic() {
+        return TopicBuilder.name(topic)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .build();
+    }
+
+    @Bean
+    public ProducerFactory<String, Object> stockOutcomeProducerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compression);
+
+        return new DefaultKafkaProducerFactory<>(props, new StringSerializer(), KafkaProducerConfig.valueSerializer());
+    }
+
+    @Bean
+    public KafkaTemplate<String, Object> stockOutcomeTemplate(
+            @Qualifier("stockOutcomeProducerFactory") ProducerFactory<String, Object> producerFactory) {
+        return new KafkaTemplate<>(producerFactory);
+    }
+}
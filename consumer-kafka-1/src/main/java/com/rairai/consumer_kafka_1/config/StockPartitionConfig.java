@@ -0,0 +1,127 @@
+package com.rairai.consumer_kafka_1.config;
+
+import com.rairai.consumer_kafka_1.commit.OffsetCommitManager;
+import com.rairai.consumer_kafka_1.model.StockReservation;
+import com.rairai.consumer_kafka_1.service.PartitionedStockStore;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Infraestrutura do modo {@code app.stock.mode=partitioned}: tópico de reservas chaveado por productId e o container
+ * que carrega/libera o estado de cada partição no rebalance.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.stock.mode", havingValue = "partitioned")
+public class StockPartitionConfig {
+
+    @Value("${spring.kafka.bootstrap-servers:localhost:9092,localhost:9093,localhost:9094}")
+    private String bootstrapServers;
+
+    @Value("${spring.kafka.consumer.group-id:consumer-group-1}")
+    private String groupId;
+
+    @Value("${spring.kafka.consumer.auto-offset-reset:earliest}")
+    private String autoOffsetReset;
+
+    @Value("${spring.listener.concurrency:3}")
+    private int concurrency;
+
+    @Value("${spring.kafka.consumer.max-poll-records:500}")
+    private int maxPollRecords;
+
+    @Value("${app.stock.reservations-topic:pedidos-stock-reservas}")
+    private String reservationsTopic;
+
+    @Value("${app.stock.partitions:6}")
+    private int partitions;
+
+    @Value("${app.stock.replication-factor:1}")
+    private int replicationFactor;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Bean
+    public NewTopic stockReservationsTopic() {
+        return TopicBuilder.name(reservationsTopic)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .build();
+    }
+
+    @Bean
+    public ConsumerFactory<String, StockReservation> stockReservationConsumerFactory(OffsetCommitManager commitManager) {
+        JacksonJsonDeserializer<StockReservation> deserializer = new JacksonJsonDeserializer<>(StockReservation.class);
+        deserializer.addTrustedPackages("*");
+
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, autoOffsetReset);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+
+        DefaultKafkaConsumerFactory<String, StockReservation> factory = new DefaultKafkaConsumerFactory<>(props,
+                new StringDeserializer(), new ErrorHandlingDeserializer<>(deserializer));
+        factory.addPostProcessor(commitManager::wrap);
+        return factory;
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, StockReservation> stockReservationContainerFactory(
+            ConsumerFactory<String, StockReservation> stockReservationConsumerFactory, PartitionedStockStore store,
+            OffsetCommitManager commitManager) {
+        ConcurrentKafkaListenerContainerFactory<String, StockReservation> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(stockReservationConsumerFactory);
+        factory.setConcurrency(concurrency);
+        KafkaConsumerConfig.useVirtualThreads(factory, virtualThreads, "stock-reservation-listener-");
+        factory.getContainerProperties().setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
+
+            @Override
+            public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> assigned) {
+                store.load(partitionNumbers(assigned), consumer.partitionsFor(reservationsTopic).size());
+            }
+
+            @Override
+            public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> revoked) {
+                commitManager.flush(consumer, revoked);
+                store.release(partitionNumbers(revoked));
+            }
+
+            @Override
+            public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> lost) {
+                commitManager.discard(consumer, lost);
+                store.release(partitionNumbers(lost));
+            }
+        });
+        return factory;
+    }
+
+
+    private List<Integer> partitionNumbers(Collection<TopicPartition> partitions) {
+        return partitions.stream()
+                .filter(tp -> tp.topic().equals(reservationsTopic))
+                .map(TopicPartition::partition)
+                .toList();
+    }
+}
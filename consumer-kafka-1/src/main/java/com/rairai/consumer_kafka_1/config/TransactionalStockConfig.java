@@ -0,0 +1,177 @@
+package com.rairai.consumer_kafka_1.config;
+
+import com.rairai.consumer_kafka_1.model.Order;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.IsolationLevel;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultAfterRollbackProcessor;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.util.backoff.FixedBackOff;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Infraestrutura do modo {@code app.stock.transactions.enabled=true}: producer transacional, gerenciador de transações
+ * e o container de {@code pedidos} que abre uma transação por registro. O evento de resultado, as gravações no
+ * changelog e o offset consumido são confirmados juntos; o consumer lê com {@code read_committed}, então uma transação
+ * abortada não deixa rastro e o registro é reentregue.
+ * <p>
+ * Falhas não passam pelos tópicos de retry: a transação volta, o registro é relido até {@code app.retry.attempts}
+ * vezes com {@code app.retry.delay-ms} de intervalo e depois vai para a DLT dentro de uma nova transação.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.stock.transactions.enabled", havingValue = "true")
+public class TransactionalStockConfig {
+
+    @Value("${spring.kafka.bootstrap-servers:localhost:9092,localhost:9093,localhost:9094}")
+    private String bootstrapServers;
+
+    @Value("${spring.kafka.consumer.group-id:consumer-group-1}")
+    private String groupId;
+
+    @Value("${spring.kafka.consumer.auto-offset-reset:earliest}")
+    private String autoOffsetReset;
+
+    @Value("${spring.listener.concurrency:3}")
+    private int concurrency;
+
+    @Value("${spring.kafka.consumer.max-poll-records:500}")
+    private int maxPollRecords;
+
+    @Value("${app.listener.poll-timeout-ms:5000}")
+    private long pollTimeoutMs;
+
+    @Value("${app.stock.transactions.id-prefix:consumer-kafka-1-stock-tx-}")
+    private String transactionIdPrefix;
+
+    @Value("${app.stock.transactions.outcomes-topic:pedidos-stock-resultados}")
+    private String outcomesTopic;
+
+    @Value("${app.retry.partitions:3}")
+    private int partitions;
+
+    @Value("${app.retry.replication-factor:1}")
+    private int replicationFactor;
+
+    @Value("${app.retry.attempts:4}")
+    private int attempts;
+
+    @Value("${app.retry.delay-ms:1000}")
+    private long delayMs;
+
+    @Value("${app.retry.dlt-topic:pedidos-stock-dlt}")
+    private String dltTopic;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Bean
+    public NewTopic stockOutcomesTopic() {
+        return TopicBuilder.name(outcomesTopic)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .build();
+    }
+
+    @Bean
+    public NewTopic stockDltTopic() {
+        return TopicBuilder.name(dltTopic)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .build();
+    }
+
+    @Bean
+    public ProducerFactory<String, Object> stockTransactionProducerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+
+        DefaultKafkaProducerFactory<String, Object> factory = new DefaultKafkaProducerFactory<>(props,
+                new StringSerializer(), KafkaProducerConfig.valueSerializer());
+        // cada instância precisa de um prefixo próprio; dois processos com o mesmo transactional.id se cercam (fencing)
+        factory.setTransactionIdPrefix(transactionIdPrefix);
+        return factory;
+    }
+
+    @Bean
+    public KafkaTransactionManager<String, Object> stockTransactionManager(
+            @Qualifier("stockTransactionProducerFactory") ProducerFactory<String, Object> producerFactory) {
+        KafkaTransactionManager<String, Object> transactionManager = new KafkaTransactionManager<>(producerFactory);
+        // o padrão é não sincronizar; o listener registra a compensação da reserva no fim da transação
+        transactionManager.setTransactionSynchronization(AbstractPlatformTransactionManager.SYNCHRONIZATION_ON_ACTUAL_TRANSACTION);
+        return transactionManager;
+    }
+
+    /**
+     * Participa da transação do container quando chamado na thread do listener; fora dela (carga inicial, ajustes
+     * pela API) envia sem transação.
+     */
+    @Bean
+    public KafkaTemplate<String, Object> stockTransactionTemplate(
+            @Qualifier("stockTransactionProducerFactory") ProducerFactory<String, Object> producerFactory) {
+        KafkaTemplate<String, Object> template = new KafkaTemplate<>(producerFactory);
+        template.setAllowNonTransactional(true);
+        return template;
+    }
+
+    @Bean
+    public ConsumerFactory<String, Order> stockTransactionConsumerFactory() {
+        JacksonJsonDeserializer<Order> deserializer = new JacksonJsonDeserializer<>(Order.class);
+        deserializer.addTrustedPackages("*");
+
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, autoOffsetReset);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, IsolationLevel.READ_COMMITTED.toString());
+
+        // sem o OffsetCommitManager: os offsets vão para o coordinator dentro da transação
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ErrorHandlingDeserializer<>(deserializer));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Order> stockTransactionContainerFactory(
+            @Qualifier("stockTransactionConsumerFactory") ConsumerFactory<String, Order> consumerFactory,
+            KafkaTransactionManager<String, Object> stockTransactionManager,
+            @Qualifier("stockTransactionTemplate") KafkaTemplate<String, Object> stockTransactionTemplate) {
+        ConcurrentKafkaListenerContainerFactory<String, Order> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setConcurrency(concurrency);
+        factory.getContainerProperties().setPollTimeout(pollTimeoutMs);
+        KafkaConsumerConfig.useVirtualThreads(factory, virtualThreads, "stock-tx-listener-");
+        factory.getContainerProperties().setKafkaAwareTransactionManager(stockTransactionManager);
+
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(stockTransactionTemplate,
+                (record, ex) -> new TopicPartition(dltTopic, -1));
+        factory.setAfterRollbackProcessor(new DefaultAfterRollbackProcessor<>(recoverer,
+                new FixedBackOff(delayMs, Math.max(0, attempts - 1)), stockTransactionTemplate, true));
+        return factory;
+    }
+}
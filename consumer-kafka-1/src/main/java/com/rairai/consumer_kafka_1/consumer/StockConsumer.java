@@ -1,50 +1,161 @@
 package com.rairai.consumer_kafka_1.consumer;
 
+import com.rairai.consumer_kafka_1.changelog.StockChangelog;
+import com.rairai.consumer_kafka_1.dispatch.KeyOrderedDispatcher;
+import com.rairai.consumer_kafka_1.flow.FlowController;
+import com.rairai.consumer_kafka_1.logging.OrderLogSampler;
 import com.rairai.consumer_kafka_1.model.Order;
+import com.rairai.consumer_kafka_1.outcome.ReservationOutcomePublisher;
+import com.rairai.consumer_kafka_1.service.StockRepartitioner;
 import com.rairai.consumer_kafka_1.service.StockService;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.BackOff;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.kafka.retrytopic.DltStrategy;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.stereotype.Component;
 
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 
 @Component
-public class StockConsumer {
+@ConditionalOnProperty(name = "app.stock.transactions.enabled", havingValue = "false", matchIfMissing = true)
+public class StockConsumer implements ConsumerSeekAware {
 
     private static final Logger logger = LoggerFactory.getLogger(StockConsumer.class);
 
+    public static final String LISTENER_ID = "stock-pedidos";
+
     private final StockService stockService;
+    private final KeyOrderedDispatcher dispatcher;
+    private final FlowController flowController;
+    private final AtomicBoolean firstRecord = new AtomicBoolean();
+    private final StockRepartitioner repartitioner;
+    private final StockChangelog changelog;
+    private final ReservationOutcomePublisher outcomes;
 
-    public StockConsumer(StockService stockService) {
+    public StockConsumer(StockService stockService, KeyOrderedDispatcher dispatcher, FlowController flowController,
+                         ObjectProvider<StockRepartitioner> repartitioner, ObjectProvider<StockChangelog> changelog,
+                         ObjectProvider<ReservationOutcomePublisher> outcomes) {
         this.stockService = stockService;
+        this.dispatcher = dispatcher;
+        this.flowController = flowController;
+        this.repartitioner = repartitioner.getIfAvailable();
+        // com despacho por chave os registros terminam fora de ordem e o marcador não representaria um prefixo
+        this.changelog = dispatcher.isKeyOrdered() || this.repartitioner != null ? null : changelog.getIfAvailable();
+        this.outcomes = outcomes.getIfAvailable();
+        if (this.outcomes != null && this.repartitioner != null) {
+            // no modo partitioned cada produto é reservado num dono diferente e não há um resultado do pedido inteiro
+            logger.warn("app.stock.outcomes.enabled ignorado com app.stock.mode=partitioned");
+        }
     }
 
 
-    @KafkaListener(topics = "pedidos", groupId = "${spring.kafka.consumer.group-id}")
-    public void consume(ConsumerRecord<String, Order> record) {
-        try {
-            String key = record.key();
-            Order order = record.value();
+    @RetryableTopic(
+            attempts = "${app.retry.attempts:4}",
+            backOff = @BackOff(delayString = "${app.retry.delay-ms:1000}",
+                    multiplierString = "${app.retry.multiplier:5}",
+                    maxDelayString = "${app.retry.max-delay-ms:60000}"),
+            retryTopicSuffix = "-stock-retry",
+            dltTopicSuffix = "-stock-dlt",
+            topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE,
+            dltStrategy = DltStrategy.FAIL_ON_ERROR,
+            numPartitions = "${app.retry.partitions:3}",
+            replicationFactor = "${app.retry.replication-factor:1}",
+            concurrency = "${app.retry.concurrency:1}",
+            kafkaTemplate = "kafkaTemplate")
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = "#{@laneScheduler.topics()}", groupId = "${spring.kafka.consumer.group-id}")
+    public CompletableFuture<Void> consume(ConsumerRecord<String, Order> record) {
+        long start = System.nanoTime();
+        // app.stock.mode=partitioned: a reserva acontece no dono do produto, aqui só reparticionamos
+        CompletableFuture<Void> future = repartitioner != null
+                ? repartitioner.forward(record.value())
+                : dispatcher.dispatch(record, () -> process(record));
+        flowController.track(future, start);
+        if (!firstRecord.get()) {
+            future.thenRun(this::logFirstRecord);
+        }
+        return future;
+    }
+
+
+    /** Tempo da subida até o primeiro registro processado; é o número a comparar entre a imagem normal e a fast-start. */
+    private void logFirstRecord() {
+        if (firstRecord.compareAndSet(false, true)) {
+            logger.info("Primeiro registro processado {} ms após o início da JVM",
+                    ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+    }
+
 
-            if (order == null) {
-                logger.warn("Recebido registro com valor nulo. offset={}, partition={}, key={}",
-                        record.offset(), record.partition(), key);
-                return;
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        if (changelog == null) {
+            return;
+        }
+        assignments.forEach((tp, committed) -> {
+            Long resume = changelog.resumeOffset(tp);
+            if (resume != null && !resume.equals(committed)) {
+                logger.info("Retomando {} a partir do changelog: offset={} (commitado={})", tp, resume, committed);
+                callback.seek(tp.topic(), tp.partition(), resume);
             }
+        });
+    }
 
-            logger.info("Recebido pedido para reserva. key={}, orderId={}, partition={}, offset={}",
-                    key, order.getId(), record.partition(), record.offset());
 
-            boolean reserved = stockService.reserve(order);
+    @DltHandler
+    public void consumeDlt(ConsumerRecord<String, Order> record) {
+        Header header = record.headers().lastHeader(KafkaHeaders.DLT_EXCEPTION_MESSAGE);
+        String error = header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+        logger.error("Pedido enviado para a DLT após esgotar as tentativas. topic={}, partition={}, offset={}, key={}, erro={}",
+                record.topic(), record.partition(), record.offset(), record.key(), error);
+    }
+
+
+    private void process(ConsumerRecord<String, Order> record) {
+        Order order = record.value();
+        if (order == null) {
+            logger.warn("Recebido registro com valor nulo. offset={}, partition={}, key={}",
+                    record.offset(), record.partition(), record.key());
+            return;
+        }
+
+        try (MDC.MDCCloseable ignored = MDC.putCloseable(OrderLogSampler.ORDER_ID, order.getId())) {
+            // com o changelog, o marcador de offset vai no mesmo registro que as mudanças de estoque do pedido
+            String status = changelog != null
+                    ? changelog.process(new TopicPartition(record.topic(), record.partition()), record.offset() + 1,
+                            () -> stockService.reserveStatus(order, record.partition()))
+                    : stockService.reserveStatus(order, record.partition());
+            boolean reserved = StockService.RESERVED.equals(status) || StockService.DUPLICATE.equals(status);
+            if (outcomes != null) {
+                outcomes.publish(order, status, new TopicPartition(record.topic(), record.partition()), record.offset());
+            }
             if (reserved) {
-                logger.info("Estoque reservado para pedido {} (key={})", order.getId(), key);
+                logger.atInfo().addKeyValue("orderId", order.getId()).addKeyValue("partition", record.partition())
+                        .addKeyValue("offset", record.offset()).log("Estoque reservado");
             } else {
-                logger.warn("Falha ao reservar estoque para pedido {} (key={}). Verifique disponibilidade.", order.getId(), key);
+                logger.atWarn().addKeyValue("orderId", order.getId()).addKeyValue("partition", record.partition())
+                        .addKeyValue("offset", record.offset()).log("Falha ao reservar estoque; verifique disponibilidade");
             }
-        } catch (Exception ex) {
-            logger.error("Erro ao processar mensagem de estoque. partition={}, offset={}. erro={}",
-                    record.partition(), record.offset(), ex.getMessage(), ex);
+        } catch (RuntimeException ex) {
+            logger.error("Erro ao processar mensagem de estoque, encaminhando para retry. topic={}, partition={}, offset={}. erro={}",
+                    record.topic(), record.partition(), record.offset(), ex.getMessage(), ex);
+            throw ex;
         }
     }
 }
@@ -0,0 +1,90 @@
+package com.rairai.consumer_kafka_1.consumer;
+
+import com.rairai.consumer_kafka_1.changelog.StockChangelog;
+import com.rairai.consumer_kafka_1.logging.OrderLogSampler;
+import com.rairai.consumer_kafka_1.model.StockReservation;
+import com.rairai.consumer_kafka_1.service.PartitionedStockStore;
+import com.rairai.consumer_kafka_1.service.StockRepartitioner;
+import com.rairai.consumer_kafka_1.service.StockService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+
+/**
+ * Aplica as reservas por produto na thread do consumer dona da partição (single writer, sem dispatcher). Quando um
+ * item não pode ser reservado, pede a devolução dos outros itens do pedido antes de marcar o registro como processado.
+ */
+@Component
+@ConditionalOnProperty(name = "app.stock.mode", havingValue = "partitioned")
+public class StockReservationConsumer implements ConsumerSeekAware {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockReservationConsumer.class);
+
+    public static final String LISTENER_ID = "stock-reservas";
+
+    private final PartitionedStockStore store;
+    private final StockRepartitioner repartitioner;
+    private final StockChangelog changelog;
+
+    public StockReservationConsumer(PartitionedStockStore store, StockRepartitioner repartitioner,
+                                    ObjectProvider<StockChangelog> changelog) {
+        this.store = store;
+        this.repartitioner = repartitioner;
+        this.changelog = changelog.getIfAvailable();
+    }
+
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        if (changelog == null) {
+            return;
+        }
+        assignments.forEach((tp, committed) -> {
+            Long resume = changelog.resumeOffset(tp);
+            if (resume != null && !resume.equals(committed)) {
+                logger.info("Retomando {} a partir do changelog: offset={} (commitado={})", tp, resume, committed);
+                callback.seek(tp.topic(), tp.partition(), resume);
+            }
+        });
+    }
+
+
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = "${app.stock.reservations-topic:pedidos-stock-reservas}",
+            groupId = "${spring.kafka.consumer.group-id}", containerFactory = "stockReservationContainerFactory")
+    public void consume(ConsumerRecord<String, StockReservation> record) {
+        StockReservation reservation = record.value();
+        try (MDC.MDCCloseable ignored = MDC.putCloseable(OrderLogSampler.ORDER_ID,
+                reservation != null ? reservation.getOrderId() : null)) {
+            if (changelog != null) {
+                changelog.process(new TopicPartition(record.topic(), record.partition()), record.offset() + 1,
+                        () -> apply(record));
+            } else {
+                apply(record);
+            }
+        }
+    }
+
+
+    private String apply(ConsumerRecord<String, StockReservation> record) {
+        StockReservation reservation = record.value();
+        String outcome = store.apply(record.partition(), reservation);
+        if (reservation != null && StockReservation.RESERVE.equals(reservation.getType())
+                && (StockService.INSUFFICIENT_STOCK.equals(outcome) || StockService.INVALID.equals(outcome))) {
+            logger.warn("Falha ao reservar item do pedido. key={}, partition={}, offset={}, reserva={}",
+                    record.key(), record.partition(), record.offset(), reservation);
+            // se a compensação não chegar ao broker o registro é reentregue e a tentativa se repete
+            repartitioner.compensate(reservation).join();
+        }
+        return outcome;
+    }
+}
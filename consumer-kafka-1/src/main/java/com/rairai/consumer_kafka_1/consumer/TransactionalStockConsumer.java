@@ -0,0 +1,140 @@
+package com.rairai.consumer_kafka_1.consumer;
+
+import com.rairai.consumer_kafka_1.changelog.StockChangelog;
+import com.rairai.consumer_kafka_1.dispatch.KeyOrderedDispatcher;
+import com.rairai.consumer_kafka_1.flow.FlowController;
+import com.rairai.consumer_kafka_1.logging.OrderLogSampler;
+import com.rairai.consumer_kafka_1.model.Order;
+import com.rairai.consumer_kafka_1.model.ReservationOutcome;
+import com.rairai.consumer_kafka_1.service.StockRepartitioner;
+import com.rairai.consumer_kafka_1.service.StockService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Substitui o {@link StockConsumer} com {@code app.stock.transactions.enabled=true}. Cada registro de {@code pedidos}
+ * é processado numa transação Kafka aberta pelo container: a reserva grava o changelog, o listener publica o
+ * {@link ReservationOutcome} e o container envia o offset consumido, tudo confirmado ou abortado junto. Depois de um
+ * restart o grupo retoma do último offset confirmado, então só o trabalho não confirmado é refeito.
+ * <p>
+ * O estoque em memória não é transacional: se a transação aborta a reserva é desfeita com
+ * {@link StockService#revert(Order)} e o pedido só entra na deduplicação depois do commit, para que a reentrega seja
+ * processada de novo do zero.
+ */
+@Component
+@ConditionalOnProperty(name = "app.stock.transactions.enabled", havingValue = "true")
+public class TransactionalStockConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionalStockConsumer.class);
+
+    private final StockService stockService;
+    private final KeyOrderedDispatcher dispatcher;
+    private final FlowController flowController;
+    private final KafkaTemplate<String, Object> template;
+    private final String outcomesTopic;
+    private final AtomicBoolean firstRecord = new AtomicBoolean();
+
+    public TransactionalStockConsumer(StockService stockService, KeyOrderedDispatcher dispatcher,
+                                      FlowController flowController, ObjectProvider<StockRepartitioner> repartitioner,
+                                      ObjectProvider<StockChangelog> changelog,
+                                      @Qualifier("stockTransactionTemplate") KafkaTemplate<String, Object> template,
+                                      @Value("${app.stock.transactions.outcomes-topic:pedidos-stock-resultados}") String outcomesTopic) {
+        // a transação é da thread do container: o registro precisa terminar antes do listener retornar
+        if (dispatcher.isKeyOrdered() || repartitioner.getIfAvailable() != null) {
+            throw new IllegalStateException(
+                    "app.stock.transactions.enabled requer app.dispatch.mode=partition e app.stock.mode=shared");
+        }
+        // sem changelog o estoque baixado só existe em memória e o offset confirmado pularia o registro num restart
+        if (changelog.getIfAvailable() == null) {
+            throw new IllegalStateException("app.stock.transactions.enabled requer app.stock.changelog.enabled=true");
+        }
+        this.stockService = stockService;
+        this.dispatcher = dispatcher;
+        this.flowController = flowController;
+        this.template = template;
+        this.outcomesTopic = outcomesTopic;
+        logger.info("Reserva transacional habilitada: resultados em {}", outcomesTopic);
+    }
+
+
+    @KafkaListener(id = StockConsumer.LISTENER_ID, idIsGroup = false, topics = "#{@laneScheduler.topics()}",
+            groupId = "${spring.kafka.consumer.group-id}", containerFactory = "stockTransactionContainerFactory")
+    public void consume(ConsumerRecord<String, Order> record) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> future = dispatcher.dispatch(record, () -> process(record));
+        flowController.track(future, start);
+        if (firstRecord.compareAndSet(false, true)) {
+            logger.info("Primeiro registro processado {} ms após o início da JVM",
+                    ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+    }
+
+
+    private void process(ConsumerRecord<String, Order> record) {
+        Order order = record.value();
+        if (order == null) {
+            logger.warn("Recebido registro com valor nulo. offset={}, partition={}, key={}",
+                    record.offset(), record.partition(), record.key());
+            return;
+        }
+
+        try (MDC.MDCCloseable ignored = MDC.putCloseable(OrderLogSampler.ORDER_ID, order.getId())) {
+            String status = stockService.reserveInTransaction(order, record.partition());
+            if (StockService.RESERVED.equals(status)) {
+                TransactionSynchronizationManager.registerSynchronization(new Compensation(order));
+            }
+            template.send(outcomesTopic, order.getId(), new ReservationOutcome(order.getId(), order.getCustomer(),
+                    status, record.partition(), record.offset(), Instant.now()));
+            logger.atInfo().addKeyValue("orderId", order.getId()).addKeyValue("partition", record.partition())
+                    .addKeyValue("offset", record.offset()).addKeyValue("status", status)
+                    .log("Reserva processada na transação");
+        } catch (RuntimeException ex) {
+            logger.error("Erro ao processar mensagem de estoque; transação será abortada. topic={}, partition={}, offset={}. erro={}",
+                    record.topic(), record.partition(), record.offset(), ex.getMessage(), ex);
+            throw ex;
+        }
+    }
+
+
+    /** Acompanha o fim da transação do registro para registrar ou desfazer a reserva em memória. */
+    private final class Compensation implements TransactionSynchronization {
+
+        private final Order order;
+
+        private Compensation(Order order) {
+            this.order = order;
+        }
+
+        @Override
+        public void afterCommit() {
+            stockService.markApplied(order.getId());
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status == STATUS_ROLLED_BACK) {
+                stockService.revert(order);
+            } else if (status == STATUS_UNKNOWN) {
+                // o commit pode ter chegado ao coordinator; desfazer aqui arriscaria devolver estoque já confirmado
+                logger.error("Resultado da transação do pedido {} desconhecido; reserva mantida", order.getId());
+            }
+        }
+    }
+}
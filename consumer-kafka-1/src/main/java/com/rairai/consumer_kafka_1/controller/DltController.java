@@ -0,0 +1,27 @@
+package com.rairai.consumer_kafka_1.controller;
+
+import com.rairai.consumer_kafka_1.retry.DltReplayService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/dlt")
+public class DltController {
+
+    private final DltReplayService replayService;
+
+    public DltController(DltReplayService replayService) {
+        this.replayService = replayService;
+    }
+
+    @PostMapping("/replay")
+    public ResponseEntity<Map<String, Integer>> replay(@RequestParam(defaultValue = "100") int max) {
+        int replayed = replayService.replay(max);
+        return ResponseEntity.ok(Map.of("replayed", replayed));
+    }
+}
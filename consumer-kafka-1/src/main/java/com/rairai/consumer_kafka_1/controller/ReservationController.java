@@ -0,0 +1,58 @@
+package com.rairai.consumer_kafka_1.controller;
+
+import com.rairai.consumer_kafka_1.hold.ReservationHolds;
+import com.rairai.consumer_kafka_1.outcome.ReservationOutcomePublisher;
+import com.rairai.consumer_kafka_1.service.StockService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/reservas")
+public class ReservationController {
+
+    private final StockService stockService;
+    private final ObjectProvider<ReservationHolds> holds;
+    private final ObjectProvider<ReservationOutcomePublisher> outcomes;
+
+    public ReservationController(StockService stockService, ObjectProvider<ReservationHolds> holds,
+                                 ObjectProvider<ReservationOutcomePublisher> outcomes) {
+        this.stockService = stockService;
+        this.holds = holds;
+        this.outcomes = outcomes;
+    }
+
+    @PostMapping("/{orderId}/confirmar")
+    public ResponseEntity<Map<String, String>> confirm(@PathVariable String orderId) {
+        if (!stockService.confirm(orderId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(Map.of("orderId", orderId, "status", "CONFIRMED"));
+    }
+
+    @PostMapping("/{orderId}/cancelar")
+    public ResponseEntity<Map<String, String>> cancel(@PathVariable String orderId) {
+        if (!stockService.cancel(orderId)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(Map.of("orderId", orderId, "status", "CANCELLED"));
+    }
+
+    @GetMapping("/metricas")
+    public ResponseEntity<Map<String, Long>> metrics() {
+        ReservationHolds reservationHolds = holds.getIfAvailable();
+        return ResponseEntity.ok(reservationHolds != null ? reservationHolds.metrics() : Map.of());
+    }
+
+    @GetMapping("/resultados")
+    public ResponseEntity<Map<String, Long>> outcomes() {
+        ReservationOutcomePublisher publisher = outcomes.getIfAvailable();
+        return ResponseEntity.ok(publisher != null ? publisher.metrics() : Map.of());
+    }
+}
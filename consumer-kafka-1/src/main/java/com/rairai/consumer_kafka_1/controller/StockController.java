@@ -0,0 +1,99 @@
+package com.rairai.consumer_kafka_1.controller;
+
+import com.rairai.consumer_kafka_1.service.StockRepartitioner;
+import com.rairai.consumer_kafka_1.service.StockService;
+import com.rairai.consumer_kafka_1.snapshot.StockSnapshot;
+import com.rairai.consumer_kafka_1.snapshot.StockSnapshotPublisher;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consulta de disponibilidade servida pelas versões imutáveis do {@link StockSnapshotPublisher}: cada resposta lê uma
+ * única versão, então uma consulta em lote é consistente entre produtos e nunca espera pelo lock da reserva.
+ */
+@RestController
+@RequestMapping("/api/estoque")
+public class StockController {
+
+    private final StockSnapshotPublisher snapshots;
+    private final StockService stockService;
+    private final ObjectProvider<StockRepartitioner> repartitioner;
+
+    public StockController(StockSnapshotPublisher snapshots, StockService stockService,
+                           ObjectProvider<StockRepartitioner> repartitioner) {
+        this.snapshots = snapshots;
+        this.stockService = stockService;
+        this.repartitioner = repartitioner;
+    }
+
+    @GetMapping("/{productId}")
+    public ResponseEntity<Map<String, Object>> get(@PathVariable String productId) {
+        StockSnapshot snapshot = snapshots.current();
+        Integer available = snapshot.get(productId);
+        if (available == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(Map.of("productId", productId, "available", available, "version", snapshot.version()));
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> bulk(@RequestParam List<String> ids) {
+        return ResponseEntity.ok(lookup(ids));
+    }
+
+    @PostMapping("/consulta")
+    public ResponseEntity<Map<String, Object>> bulkPost(@RequestBody List<String> ids) {
+        return ResponseEntity.ok(lookup(ids));
+    }
+
+    /**
+     * Ajustes intradiários: corpo {@code {"p1": 50, "p2": -3}} com a quantidade a somar por produto. Quantidade nula ou
+     * estoque resultante negativo respondem 400 e nada é aplicado.
+     */
+    @PostMapping("/ajustes")
+    public ResponseEntity<Map<String, Object>> adjust(@RequestBody Map<String, Integer> deltas) {
+        try {
+            StockRepartitioner partitioned = repartitioner.getIfAvailable();
+            if (partitioned != null) {
+                // no modo particionado o estoque pertence às threads donas das partições de reservas
+                partitioned.adjust(deltas).join();
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of("deltas", deltas));
+            }
+            Map<String, Integer> stock = stockService.adjust(deltas);
+            return ResponseEntity.ok(Map.of("version", snapshots.current().version(), "stock", stock));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("erro", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/delta")
+    public ResponseEntity<StockSnapshotPublisher.Delta> delta(@RequestParam long since) {
+        return ResponseEntity.ok(snapshots.changesSince(since));
+    }
+
+
+    private Map<String, Object> lookup(Collection<String> ids) {
+        StockSnapshot snapshot = snapshots.current();
+        Map<String, Integer> stock = new LinkedHashMap<>();
+        for (String id : ids) {
+            Integer available = snapshot.get(id);
+            if (available != null) {
+                stock.put(id, available);
+            }
+        }
+        return Map.of("version", snapshot.version(), "stock", stock);
+    }
+}
@@ -0,0 +1,216 @@
+package com.rairai.consumer_kafka_1.dedup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Memória de pedidos já aplicados, com tamanho limitado, para descartar reentregas do Kafka (at-least-once).
+ * <p>
+ * Duas camadas na mesma janela {@code app.dedup.window-ms}, em gerações que giram com o tempo (atual + anterior):
+ * <ul>
+ *     <li>Bloom filters dimensionados por {@code app.dedup.expected-orders} e {@code app.dedup.false-positive-rate}:
+ *     resposta negativa exata em O(1), que dispensa a consulta ao conjunto exato para pedidos novos;</li>
+ *     <li>um conjunto exato de até {@code app.dedup.exact-capacity} ids por geração, o único que confirma uma
+ *     reentrega.</li>
+ * </ul>
+ * O Bloom filter só descarta: um id que só ele reconhece (falso positivo, ou id que não coube no conjunto exato) segue
+ * como pedido novo. Reportar um falso positivo como duplicado trataria como reservado um pedido que não tirou estoque.
+ * Pelo mesmo motivo, um pedido cuja reserva foi devolvida ao estoque é marcado com {@link #release(String)} e a
+ * reentrega dele é reconhecida por {@link #isReleased(String)}.
+ */
+@Component
+public class OrderDeduplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderDeduplicator.class);
+
+    private final boolean enabled;
+    private final long expectedOrders;
+    private final double falsePositiveRate;
+    private final long windowNanos;
+    private final int exactCapacity;
+    private final LongSupplier clock;
+
+    private final ReentrantLock rotateLock = new ReentrantLock();
+
+    private volatile Generation current;
+    private volatile Generation previous;
+    private volatile long rotateAt;
+
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+    private final AtomicLong unconfirmed = new AtomicLong();
+
+    @Autowired
+    public OrderDeduplicator(@Value("${app.dedup.enabled:true}") boolean enabled,
+                             @Value("${app.dedup.expected-orders:100000}") long expectedOrders,
+                             @Value("${app.dedup.false-positive-rate:0.001}") double falsePositiveRate,
+                             @Value("${app.dedup.window-ms:300000}") long windowMs,
+                             @Value("${app.dedup.exact-capacity:100000}") int exactCapacity) {
+        this(enabled, expectedOrders, falsePositiveRate, windowMs, exactCapacity, System::nanoTime);
+    }
+
+    OrderDeduplicator(boolean enabled, long expectedOrders, double falsePositiveRate, long windowMs,
+                      int exactCapacity, LongSupplier clock) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("app.dedup.false-positive-rate deve estar entre 0 e 1: " + falsePositiveRate);
+        }
+        this.enabled = enabled;
+        this.expectedOrders = expectedOrders;
+        this.falsePositiveRate = falsePositiveRate;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.exactCapacity = exactCapacity;
+        this.clock = clock;
+
+        long now = clock.getAsLong();
+        this.current = newGeneration();
+        this.previous = newGeneration();
+        this.rotateAt = now + windowNanos;
+
+        if (enabled) {
+            logger.info("Deduplicação de pedidos habilitada: janela={}ms, esperados={}, fpp={}, bloom={} bytes x2 ({} hashes), "
+                            + "capacidade exata={}",
+                    windowMs, expectedOrders, falsePositiveRate, current.bloom.sizeInBytes(), current.bloom.hashes(),
+                    exactCapacity);
+        }
+    }
+
+
+    /**
+     * Indica se o pedido já foi aplicado dentro da janela; só responde sim quando o conjunto exato confirma. Não
+     * registra o id; use {@link #record(String)}.
+     */
+    public boolean isDuplicate(String orderId) {
+        if (!enabled || orderId == null) {
+            return false;
+        }
+        rotateIfDue();
+        Generation current = this.current;
+        Generation previous = this.previous;
+
+        if (!current.bloom.mightContain(orderId) && !previous.bloom.mightContain(orderId)) {
+            return false;
+        }
+        if (current.ids.contains(orderId) || previous.ids.contains(orderId)) {
+            duplicates.incrementAndGet();
+            return true;
+        }
+        if (current.overflowed() || previous.overflowed()) {
+            unconfirmed.incrementAndGet();
+            logger.warn("Pedido {} reconhecido apenas pelo Bloom filter com o conjunto exato cheio "
+                    + "(app.dedup.exact-capacity={}); processado como novo", orderId, exactCapacity);
+        } else {
+            falsePositives.incrementAndGet();
+        }
+        return false;
+    }
+
+    public void record(String orderId) {
+        if (!enabled || orderId == null) {
+            return;
+        }
+        rotateIfDue();
+        current.add(orderId, exactCapacity);
+    }
+
+    /** Marca um pedido já aplicado cuja reserva voltou ao estoque (expirada ou cancelada). */
+    public void release(String orderId) {
+        if (!enabled || orderId == null) {
+            return;
+        }
+        rotateIfDue();
+        current.release(orderId);
+        previous.release(orderId);
+    }
+
+    /** Indica se o pedido, já aplicado dentro da janela, teve a reserva devolvida com {@link #release(String)}. */
+    public boolean isReleased(String orderId) {
+        if (!enabled || orderId == null) {
+            return false;
+        }
+        rotateIfDue();
+        return current.released.contains(orderId) || previous.released.contains(orderId);
+    }
+
+    public long duplicates() {
+        return duplicates.get();
+    }
+
+    public long falsePositives() {
+        return falsePositives.get();
+    }
+
+    /** Ids reconhecidos só pelo Bloom filter quando o conjunto exato transbordou; podem ser reentregas reaplicadas. */
+    public long unconfirmed() {
+        return unconfirmed.get();
+    }
+
+
+    private void rotateIfDue() {
+        long now = clock.getAsLong();
+        if (now - rotateAt < 0) {
+            return;
+        }
+        rotateLock.lock();
+        try {
+            if (now - rotateAt >= 0) {
+                previous = current;
+                current = newGeneration();
+                rotateAt = now + windowNanos;
+            }
+        } finally {
+            rotateLock.unlock();
+        }
+    }
+
+    private Generation newGeneration() {
+        return new Generation(new BloomFilter(expectedOrders, falsePositiveRate));
+    }
+
+
+    private static final class Generation {
+
+        private final BloomFilter bloom;
+        private final Set<String> ids = ConcurrentHashMap.newKeySet();
+        /** Subconjunto de {@code ids}, então limitado pela mesma capacidade. */
+        private final Set<String> released = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger size = new AtomicInteger();
+        private volatile boolean overflowed;
+
+        Generation(BloomFilter bloom) {
+            this.bloom = bloom;
+        }
+
+        void add(String id, int capacity) {
+            bloom.put(id);
+            if (size.get() >= capacity) {
+                overflowed = true;
+                return;
+            }
+            if (ids.add(id)) {
+                size.incrementAndGet();
+            }
+        }
+
+        void release(String id) {
+            if (ids.contains(id)) {
+                released.add(id);
+            }
+        }
+
+        boolean overflowed() {
+            return overflowed;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.rairai.consumer_kafka_1.dispatch;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Distribui os registros de uma partição entre várias virtual threads, mantendo a ordem por chave do registro.
+ * O offset só é confirmado pelo container quando o future retornado (e todos os anteriores da partição) completam.
+ */
+@Component
+public class KeyOrderedDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyOrderedDispatcher.class);
+
+    public static final String MODE_PARTITION = "partition";
+    public static final String MODE_KEY = "key";
+
+    private final boolean keyOrdered;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+
+    private final Map<Object, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, Set<CompletableFuture<Void>>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlightCount = new AtomicInteger();
+
+    public KeyOrderedDispatcher(@Value("${app.dispatch.mode:partition}") String mode,
+                                @Value("${app.dispatch.max-in-flight:1000}") int maxInFlight) {
+        this.keyOrdered = MODE_KEY.equalsIgnoreCase(mode);
+        this.permits = new Semaphore(maxInFlight);
+        this.executor = keyOrdered ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        logger.info("Dispatcher configurado: mode={}, maxInFlight={}", keyOrdered ? MODE_KEY : MODE_PARTITION, maxInFlight);
+    }
+
+
+    public CompletableFuture<Void> dispatch(ConsumerRecord<?, ?> record, Runnable task) {
+        if (!keyOrdered) {
+            inFlightCount.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                inFlightCount.decrementAndGet();
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        inFlightCount.incrementAndGet();
+        Object key = record.key();
+        CompletableFuture<Void> future = key == null
+                ? CompletableFuture.runAsync(task, executor)
+                : tails.compute(key, (k, tail) -> tail == null
+                        ? CompletableFuture.runAsync(task, executor)
+                        : tail.handle((r, ex) -> null).thenRunAsync(task, executor));
+
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        Set<CompletableFuture<Void>> pending = inFlight.computeIfAbsent(partition, tp -> ConcurrentHashMap.newKeySet());
+        pending.add(future);
+
+        future.whenComplete((r, ex) -> {
+            if (key != null) {
+                tails.remove(key, future);
+            }
+            pending.remove(future);
+            inFlightCount.decrementAndGet();
+            permits.release();
+        });
+        return future;
+    }
+
+
+    public void awaitPartitions(Collection<TopicPartition> partitions, Duration timeout) {
+        if (!keyOrdered) {
+            return;
+        }
+        CompletableFuture<?>[] pending = partitions.stream()
+                .map(inFlight::get)
+                .filter(set -> set != null && !set.isEmpty())
+                .flatMap(Set::stream)
+                .toArray(CompletableFuture[]::new);
+        if (pending.length == 0) {
+            return;
+        }
+        try {
+            CompletableFuture.allOf(pending).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Registros ainda em processamento ao revogar partições {}: pendentes={}, erro={}",
+                    partitions, pending.length, e.getMessage());
+        }
+    }
+
+
+    public int inFlightCount() {
+        return inFlightCount.get();
+    }
+
+
+    public boolean isKeyOrdered() {
+        return keyOrdered;
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+}
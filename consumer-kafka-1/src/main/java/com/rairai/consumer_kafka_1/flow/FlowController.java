@@ -0,0 +1,219 @@
+package com.rairai.consumer_kafka_1.flow;
+
+import com.rairai.consumer_kafka_1.dispatch.KeyOrderedDispatcher;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+
+/**
+ * Controle de fluxo AIMD: a janela de registros em processamento cresce aditivamente enquanto a latência fica
+ * abaixo do alvo e cai multiplicativamente quando passa dele. Ao encher a janela as partições atribuídas são
+ * pausadas; o container continua chamando poll, então não há estouro de max.poll.interval nem rebalance.
+ * <p>
+ * Só atua com {@code app.dispatch.mode=key}. No modo {@code partition} cada thread do listener processa um registro
+ * por vez antes do próximo poll: não há fila entre o poll e o processamento para limitar, a contagem em processamento
+ * nunca passa da concorrência do listener e o próprio bloqueio da thread já segura o consumo. Nesse modo
+ * {@code app.flow.enabled} é ignorado.
+ */
+@Component
+public class FlowController {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowController.class);
+
+    private final boolean enabled;
+    private final long targetLatencyNanos;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int increaseStep;
+    private final double decreaseFactor;
+    private final double resumeRatio;
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final List<String> listenerIds;
+    private final KeyOrderedDispatcher dispatcher;
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder latencySum = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final AtomicBoolean paused = new AtomicBoolean();
+    private final ReentrantLock pauseLock = new ReentrantLock();
+
+    private volatile int limit;
+
+    public FlowController(KafkaListenerEndpointRegistry registry,
+                          KeyOrderedDispatcher dispatcher,
+                          @Value("${app.flow.enabled:false}") boolean enabled,
+                          @Value("${app.flow.listener-ids:stock-pedidos}") List<String> listenerIds,
+                          @Value("${app.flow.target-latency-ms:200}") long targetLatencyMs,
+                          @Value("${app.flow.min-limit:10}") int minLimit,
+                          @Value("${app.flow.max-limit:1000}") int maxLimit,
+                          @Value("${app.flow.initial-limit:100}") int initialLimit,
+                          @Value("${app.flow.increase-step:10}") int increaseStep,
+                          @Value("${app.flow.decrease-factor:0.7}") double decreaseFactor,
+                          @Value("${app.flow.resume-ratio:0.5}") double resumeRatio,
+                          @Value("${app.flow.interval-ms:250}") long intervalMs) {
+        this.registry = registry;
+        this.listenerIds = listenerIds;
+        this.dispatcher = dispatcher;
+        this.enabled = enabled && dispatcher.isKeyOrdered();
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMs);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.increaseStep = increaseStep;
+        this.decreaseFactor = decreaseFactor;
+        this.resumeRatio = resumeRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+
+        if (enabled && !dispatcher.isKeyOrdered()) {
+            logger.warn("app.flow.enabled ignorado com app.dispatch.mode=partition: o processamento já é síncrono no listener");
+        }
+        if (this.enabled) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "flow-controller");
+                t.setDaemon(true);
+                return t;
+            });
+            this.scheduler.scheduleWithFixedDelay(this::adjust, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+            logger.info("Controle de fluxo habilitado: targetLatencyMs={}, limite=[{}, {}]", targetLatencyMs, minLimit, maxLimit);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+
+    public void track(CompletableFuture<Void> future, long startNanos) {
+        if (!enabled) {
+            return;
+        }
+        if (dispatcher.inFlightCount() >= limit) {
+            pause();
+        }
+        future.whenComplete((r, ex) -> {
+            latencySum.add(System.nanoTime() - startNanos);
+            completed.increment();
+            if (paused.get() && dispatcher.inFlightCount() <= limit * resumeRatio) {
+                resume();
+            }
+        });
+    }
+
+
+    void adjust() {
+        try {
+            long count = completed.sumThenReset();
+            long sum = latencySum.sumThenReset();
+            int inFlight = dispatcher.inFlightCount();
+
+            if (count > 0 && sum / count > targetLatencyNanos) {
+                limit = Math.max(minLimit, (int) (limit * decreaseFactor));
+            } else if (inFlight >= limit * resumeRatio) {
+                limit = Math.min(maxLimit, limit + increaseStep);
+            }
+
+            if (inFlight >= limit) {
+                pause();
+            } else if (paused.get() && inFlight <= limit * resumeRatio) {
+                resume();
+            }
+            if (paused.get()) {
+                pauseNewlyAssigned();
+            }
+        } catch (Exception ex) {
+            logger.warn("Falha ao ajustar controle de fluxo: {}", ex.getMessage(), ex);
+        }
+    }
+
+
+    private void pause() {
+        pauseLock.lock();
+        try {
+            if (paused.compareAndSet(false, true)) {
+                forEachPartition(MessageListenerContainer::pausePartition);
+                logger.info("Partições pausadas: emProcessamento={}, limite={}", dispatcher.inFlightCount(), limit);
+            }
+        } finally {
+            pauseLock.unlock();
+        }
+    }
+
+
+    private void pauseNewlyAssigned() {
+        pauseLock.lock();
+        try {
+            if (paused.get()) {
+                forEachPartition((container, tp) -> {
+                    if (!container.isPartitionPauseRequested(tp)) {
+                        container.pausePartition(tp);
+                    }
+                });
+            }
+        } finally {
+            pauseLock.unlock();
+        }
+    }
+
+
+    private void resume() {
+        pauseLock.lock();
+        try {
+            if (paused.compareAndSet(true, false)) {
+                forEachPartition(MessageListenerContainer::resumePartition);
+                logger.info("Partições retomadas: emProcessamento={}, limite={}", dispatcher.inFlightCount(), limit);
+            }
+        } finally {
+            pauseLock.unlock();
+        }
+    }
+
+
+    private void forEachPartition(BiConsumer<MessageListenerContainer, TopicPartition> action) {
+        for (String listenerId : listenerIds) {
+            MessageListenerContainer container = registry.getListenerContainer(listenerId);
+            Collection<TopicPartition> assigned = container != null ? container.getAssignedPartitions() : null;
+            if (assigned != null) {
+                assigned.forEach(tp -> action.accept(container, tp));
+            }
+        }
+    }
+
+
+    public int limit() {
+        return limit;
+    }
+
+
+    public boolean isPaused() {
+        return paused.get();
+    }
+
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.rairai.consumer_kafka_1.hold;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Reservas pendentes: o estoque de um pedido fica retido por {@code app.stock.hold.ttl-ms} e volta para o saldo se o
+ * pedido não for confirmado a tempo. A expiração usa um {@link TimingWheel} avançado por uma única thread, então
+ * milhões de reservas pendentes custam um nó cada, sem tarefa agendada por reserva nem varredura periódica.
+ */
+@Component
+@ConditionalOnProperty(name = "app.stock.hold.enabled", havingValue = "true")
+public class ReservationHolds {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReservationHolds.class);
+
+    public record Hold(String orderId, Map<String, Integer> items) {
+    }
+
+    private final long ttlMs;
+    private final LongSupplier clock;
+    private final TimingWheel<Hold> wheel;
+    private final Map<String, TimingWheel.Timeout<Hold>> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong confirmed = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong expiredUnits = new AtomicLong();
+
+    private volatile Consumer<Hold> onExpire = hold -> { };
+
+    public ReservationHolds(@Value("${app.stock.hold.ttl-ms:900000}") long ttlMs,
+                            @Value("${app.stock.hold.tick-ms:100}") long tickMs,
+                            @Value("${app.stock.hold.wheel-size:512}") int wheelSize) {
+        this(ttlMs, tickMs, wheelSize, System::currentTimeMillis, true);
+    }
+
+    ReservationHolds(long ttlMs, long tickMs, int wheelSize, LongSupplier clock, boolean startTicker) {
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+        this.wheel = new TimingWheel<>(tickMs, wheelSize, clock.getAsLong());
+        if (startTicker) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "reservation-holds");
+                t.setDaemon(true);
+                return t;
+            });
+            this.scheduler.scheduleAtFixedRate(this::expireDue, tickMs, tickMs, TimeUnit.MILLISECONDS);
+            logger.info("Reservas pendentes habilitadas: ttlMs={}, tickMs={}, wheelSize={}", ttlMs, tickMs, wheelSize);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+
+    /** Chamado por quem devolve o estoque; roda na thread do timing wheel. */
+    public void onExpire(Consumer<Hold> onExpire) {
+        this.onExpire = onExpire;
+    }
+
+    public void hold(String orderId, Map<String, Integer> items) {
+        Hold hold = new Hold(orderId, Map.copyOf(items));
+        TimingWheel.Timeout<Hold> previous = pending.put(orderId, wheel.schedule(hold, clock.getAsLong() + ttlMs));
+        if (previous != null) {
+            wheel.cancel(previous);
+        }
+        created.incrementAndGet();
+    }
+
+    /** Torna a reserva definitiva. Retorna {@code false} se ela não estava pendente (expirou, foi cancelada ou não existe). */
+    public boolean confirm(String orderId) {
+        TimingWheel.Timeout<Hold> timeout = pending.remove(orderId);
+        if (timeout == null) {
+            return false;
+        }
+        wheel.cancel(timeout);
+        confirmed.incrementAndGet();
+        return true;
+    }
+
+    /** Remove a reserva pendente e devolve os itens a liberar, ou {@code null} se ela não estava pendente. */
+    public Hold cancel(String orderId) {
+        TimingWheel.Timeout<Hold> timeout = pending.remove(orderId);
+        if (timeout == null) {
+            return null;
+        }
+        wheel.cancel(timeout);
+        cancelled.incrementAndGet();
+        return timeout.payload();
+    }
+
+    public boolean isPending(String orderId) {
+        return pending.containsKey(orderId);
+    }
+
+
+    void expireDue() {
+        try {
+            for (Hold hold : wheel.advance(clock.getAsLong())) {
+                // confirm/cancel concorrente já removeu do mapa: quem remove primeiro decide o destino da reserva
+                TimingWheel.Timeout<Hold> timeout = pending.get(hold.orderId());
+                if (timeout == null || timeout.payload() != hold || !pending.remove(hold.orderId(), timeout)) {
+                    continue;
+                }
+                expired.incrementAndGet();
+                expiredUnits.addAndGet(hold.items().values().stream().mapToLong(Integer::longValue).sum());
+                logger.info("Reserva do pedido {} expirou sem confirmação; liberando {}", hold.orderId(), hold.items());
+                onExpire.accept(hold);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Falha ao expirar reservas pendentes: {}", e.getMessage(), e);
+        }
+    }
+
+
+    public Map<String, Long> metrics() {
+        return Map.of(
+                "pending", (long) pending.size(),
+                "created", created.get(),
+                "confirmed", confirmed.get(),
+                "cancelled", cancelled.get(),
+                "expired", expired.get(),
+                "expiredUnits", expiredUnits.get());
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
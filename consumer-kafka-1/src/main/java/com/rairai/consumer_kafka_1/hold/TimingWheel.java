@@ -0,0 +1,196 @@
+package com.rairai.consumer_kafka_1.hold;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Timing wheel hierárquico: {@value #LEVELS} níveis de {@code wheelSize} buckets, cada nível cobrindo
+ * {@code wheelSize} vezes o intervalo do nível de baixo. Agendar e cancelar são O(1) (lista duplamente ligada por
+ * bucket); a cada tick só o bucket corrente do nível 0 expira, e os buckets dos níveis superiores descem em cascata
+ * quando o nível de baixo completa uma volta.
+ */
+public final class TimingWheel<T> {
+
+    static final int LEVELS = 4;
+
+    private final long tickMs;
+    private final int bits;
+    private final int mask;
+    private final Bucket<T>[][] wheels;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize < 2 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("tickMs deve ser positivo e wheelSize potência de 2: " + tickMs + ", " + wheelSize);
+        }
+        this.tickMs = tickMs;
+        this.bits = Integer.numberOfTrailingZeros(wheelSize);
+        this.mask = wheelSize - 1;
+        this.wheels = new Bucket[LEVELS][wheelSize];
+        for (Bucket<T>[] wheel : wheels) {
+            for (int i = 0; i < wheelSize; i++) {
+                wheel[i] = new Bucket<>();
+            }
+        }
+        this.currentTick = startMs / tickMs;
+    }
+
+
+    /** Agenda {@code payload} para expirar em {@code deadlineMs}; prazos já vencidos expiram no próximo tick. */
+    public Timeout<T> schedule(T payload, long deadlineMs) {
+        lock.lock();
+        try {
+            Timeout<T> timeout = new Timeout<>(payload, Math.max(ceilDiv(deadlineMs, tickMs), currentTick + 1));
+            place(timeout);
+            size++;
+            return timeout;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Retorna {@code false} se o timeout já expirou ou foi cancelado. */
+    public boolean cancel(Timeout<T> timeout) {
+        lock.lock();
+        try {
+            if (timeout.bucket == null) {
+                return false;
+            }
+            timeout.unlink();
+            size--;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Avança o relógio até {@code nowMs} e devolve os payloads que expiraram, em ordem de prazo. */
+    public List<T> advance(long nowMs) {
+        List<T> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            long target = nowMs / tickMs;
+            while (currentTick < target) {
+                currentTick++;
+                cascade();
+                Bucket<T> bucket = wheels[0][(int) (currentTick & mask)];
+                for (Timeout<T> timeout = bucket.poll(); timeout != null; timeout = bucket.poll()) {
+                    expired.add(timeout.payload);
+                    size--;
+                }
+            }
+            return expired;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = bits * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                return;
+            }
+            // esvazia antes de reposicionar: um timeout além do horizonte volta para este mesmo bucket
+            List<Timeout<T>> due = new ArrayList<>();
+            Bucket<T> bucket = wheels[level][(int) ((currentTick >>> shift) & mask)];
+            for (Timeout<T> timeout = bucket.poll(); timeout != null; timeout = bucket.poll()) {
+                due.add(timeout);
+            }
+            due.forEach(this::place);
+        }
+    }
+
+    private void place(Timeout<T> timeout) {
+        long tick = timeout.expirationTick;
+        if (tick - currentTick <= mask) {
+            wheels[0][(int) (tick & mask)].add(timeout);
+            return;
+        }
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = bits * level;
+            // o bucket corrente deste nível já desceu em cascata, então ele ainda cabe aqui se estiver uma volta à frente
+            if ((tick >>> shift) - (currentTick >>> shift) <= mask + 1) {
+                wheels[level][(int) ((tick >>> shift) & mask)].add(timeout);
+                return;
+            }
+        }
+        // além do horizonte: fica no último bucket do nível mais alto e é reposicionado quando ele descer em cascata
+        int top = bits * (LEVELS - 1);
+        wheels[LEVELS - 1][(int) ((currentTick >>> top) & mask)].add(timeout);
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+
+
+    public static final class Timeout<T> {
+
+        private final T payload;
+        private final long expirationTick;
+        private Bucket<T> bucket;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T payload, long expirationTick) {
+            this.payload = payload;
+            this.expirationTick = expirationTick;
+        }
+
+        public T payload() {
+            return payload;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+            bucket = null;
+        }
+    }
+
+    private static final class Bucket<T> {
+
+        private final Timeout<T> head = new Timeout<>(null, -1);
+
+        private Bucket() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        private void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+            timeout.prev = head.prev;
+            timeout.next = head;
+            head.prev.next = timeout;
+            head.prev = timeout;
+        }
+
+        private Timeout<T> poll() {
+            Timeout<T> first = head.next;
+            if (first == head) {
+                return null;
+            }
+            first.unlink();
+            return first;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.rairai.consumer_kafka_1.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+
+@Name("com.rairai.stock.Reserve")
+@Label("Reserva de Estoque")
+@Category({"Pedidos", "Stock"})
+@Description("Reserva de estoque de um pedido, incluindo a espera pelo lock do estoque")
+@Enabled(false)
+@StackTrace(false)
+public class StockReserveEvent extends Event {
+
+    @Label("Order Id")
+    public String orderId;
+
+    @Label("Item Count")
+    public int itemCount;
+
+    @Label("Partition")
+    public int partition = -1;
+
+    @Label("Lock Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    public long lockWait;
+
+    @Label("Outcome")
+    public String outcome;
+}
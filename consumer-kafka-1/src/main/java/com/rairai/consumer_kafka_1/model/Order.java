@@ -16,6 +16,7 @@ public class Order implements Serializable {
     private List<OrderItem> items;
     private Double total;
     private Instant createdAt;
+    private String priority;
 
     public Order() {
         this.id = UUID.randomUUID().toString();
@@ -71,6 +72,15 @@ public class Order implements Serializable {
         this.createdAt = createdAt;
     }
 
+    /** Fila de prioridade do pedido: {@code express} ou {@code bulk} (padrão quando vazio). */
+    public String getPriority() {
+        return priority;
+    }
+
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -93,6 +103,7 @@ public class Order implements Serializable {
                 ", items=" + items +
                 ", total=" + total +
                 ", createdAt=" + createdAt +
+                ", priority='" + priority + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,116 @@
+package com.rairai.consumer_kafka_1.model;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+
+/**
+ * Resultado da reserva de um pedido, publicado com o orderId como chave. {@code status} é um dos resultados do
+ * {@code StockService} (RESERVED, INSUFFICIENT_STOCK, INVALID, DUPLICATE, RELEASED); {@code partition} e {@code offset}
+ * apontam o registro de {@code pedidos} que o originou.
+ */
+public class ReservationOutcome implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String orderId;
+    private String customer;
+    private String status;
+    private Integer partition;
+    private Long offset;
+    private Instant processedAt;
+
+    public ReservationOutcome() {
+    }
+
+    public ReservationOutcome(String orderId, String customer, String status, Integer partition, Long offset,
+                              Instant processedAt) {
+        this.orderId = orderId;
+        this.customer = customer;
+        this.status = status;
+        this.partition = partition;
+        this.offset = offset;
+        this.processedAt = processedAt;
+    }
+
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(String orderId) {
+        this.orderId = orderId;
+    }
+
+    public String getCustomer() {
+        return customer;
+    }
+
+    public void setCustomer(String customer) {
+        this.customer = customer;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getPartition() {
+        return partition;
+    }
+
+    public void setPartition(Integer partition) {
+        this.partition = partition;
+    }
+
+    public Long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(Long offset) {
+        this.offset = offset;
+    }
+
+    public Instant getProcessedAt() {
+        return processedAt;
+    }
+
+    public void setProcessedAt(Instant processedAt) {
+        this.processedAt = processedAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        ReservationOutcome that = (ReservationOutcome) o;
+        return Objects.equals(orderId, that.orderId)
+                && Objects.equals(customer, that.customer)
+                && Objects.equals(status, that.status)
+                && Objects.equals(partition, that.partition)
+                && Objects.equals(offset, that.offset)
+                && Objects.equals(processedAt, that.processedAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(orderId, customer, status, partition, offset, processedAt);
+    }
+
+    @Override
+    public String toString() {
+        return "ReservationOutcome{" +
+                "orderId='" + orderId + '\'' +
+                ", customer='" + customer + '\'' +
+                ", status='" + status + '\'' +
+                ", partition=" + partition +
+                ", offset=" + offset +
+                ", processedAt=" + processedAt +
+                '}';
+    }
+}
@@ -0,0 +1,114 @@
+package com.rairai.consumer_kafka_1.model;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Objects;
+
+
+/**
+ * Operação de estoque sobre um produto, publicada com o productId como chave para que cada produto tenha um único dono.
+ * {@code RESERVE} é a reserva de um item do pedido e leva em {@code orderItems} todos os itens do pedido, para que o
+ * dono de um item que falhou possa pedir a devolução dos outros; {@code COMPENSATE} devolve um item reservado de um
+ * pedido que falhou; {@code ADJUST} soma {@code quantity} ao estoque (ajustes vindos da API).
+ */
+public class StockReservation implements Serializable {
+
+    private static final long serialVersionUID = 2L;
+
+    public static final String RESERVE = "RESERVE";
+    public static final String COMPENSATE = "COMPENSATE";
+    public static final String ADJUST = "ADJUST";
+
+    private String orderId;
+    private String productId;
+    private Integer quantity;
+    private String type;
+    private Map<String, Integer> orderItems;
+
+    public StockReservation() {
+    }
+
+    public StockReservation(String orderId, String productId, Integer quantity) {
+        this(orderId, productId, quantity, RESERVE, null);
+    }
+
+    public StockReservation(String orderId, String productId, Integer quantity, String type,
+                            Map<String, Integer> orderItems) {
+        this.orderId = orderId;
+        this.productId = productId;
+        this.quantity = quantity;
+        this.type = type;
+        this.orderItems = orderItems;
+    }
+
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public void setOrderId(String orderId) {
+        this.orderId = orderId;
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public Integer getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(Integer quantity) {
+        this.quantity = quantity;
+    }
+
+    /** Registros gravados antes do campo existir não têm tipo e são reservas. */
+    public String getType() {
+        return type != null ? type : RESERVE;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Map<String, Integer> getOrderItems() {
+        return orderItems;
+    }
+
+    public void setOrderItems(Map<String, Integer> orderItems) {
+        this.orderItems = orderItems;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        StockReservation that = (StockReservation) o;
+        return Objects.equals(orderId, that.orderId)
+                && Objects.equals(productId, that.productId)
+                && Objects.equals(quantity, that.quantity)
+                && Objects.equals(getType(), that.getType())
+                && Objects.equals(orderItems, that.orderItems);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(orderId, productId, quantity, getType(), orderItems);
+    }
+
+    @Override
+    public String toString() {
+        return "StockReservation{" +
+                "orderId='" + orderId + '\'' +
+                ", productId='" + productId + '\'' +
+                ", quantity=" + quantity +
+                ", type='" + getType() + '\'' +
+                ", orderItems=" + orderItems +
+                '}';
+    }
+}
@@ -0,0 +1,86 @@
+package com.rairai.consumer_kafka_1.outcome;
+
+import com.rairai.consumer_kafka_1.commit.DurabilityBarrier;
+import com.rairai.consumer_kafka_1.model.Order;
+import com.rairai.consumer_kafka_1.model.ReservationOutcome;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Publica o {@link ReservationOutcome} de cada pedido processado pelo {@code StockConsumer}, com o orderId como chave.
+ * O envio é assíncrono e o producer junta os eventos em lotes ({@code app.stock.outcomes.linger-ms} /
+ * {@code batch-size}), então o listener não espera o broker por pedido.
+ * <p>
+ * Também é um {@link DurabilityBarrier}: com {@code app.commit.mode=durable} o offset de {@code pedidos} só é
+ * confirmado depois que os resultados dos pedidos até ali chegaram ao broker. Nos outros modos um crash entre o commit
+ * e o envio do lote perde os resultados dele; quem consome trata o pedido sem resultado como não reservado.
+ */
+@Component
+@ConditionalOnExpression("${app.stock.outcomes.enabled:false} and !${app.stock.transactions.enabled:false}")
+public class ReservationOutcomePublisher implements DurabilityBarrier {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReservationOutcomePublisher.class);
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final String topic;
+
+    private final Map<String, LongAdder> published = new ConcurrentHashMap<>();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicReference<Throwable> sendFailure = new AtomicReference<>();
+
+    public ReservationOutcomePublisher(@Qualifier("stockOutcomeTemplate") KafkaTemplate<String, Object> kafkaTemplate,
+                                       @Value("${app.stock.outcomes.topic:pedidos-stock-resultados}") String topic) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.topic = topic;
+        logger.info("Resultados de reserva publicados em {}", topic);
+    }
+
+
+    public void publish(Order order, String status, TopicPartition source, long offset) {
+        ReservationOutcome outcome = new ReservationOutcome(order.getId(), order.getCustomer(), status,
+                source.partition(), offset, Instant.now());
+        kafkaTemplate.send(topic, order.getId(), outcome).whenComplete((result, ex) -> {
+            if (ex != null) {
+                failures.increment();
+                sendFailure.compareAndSet(null, ex);
+                logger.error("Falha ao publicar resultado da reserva em {}: orderId={}, status={}, erro={}",
+                        topic, order.getId(), status, ex.getMessage());
+            }
+        });
+        published.computeIfAbsent(status, s -> new LongAdder()).increment();
+    }
+
+    @Override
+    public CompletableFuture<Void> flush() {
+        return CompletableFuture.runAsync(() -> {
+            kafkaTemplate.flush();
+            Throwable failure = sendFailure.getAndSet(null);
+            if (failure != null) {
+                throw new IllegalStateException("Falha ao publicar resultados de reserva em " + topic, failure);
+            }
+        });
+    }
+
+
+    public Map<String, Long> metrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        published.forEach((status, count) -> metrics.put(status, count.sum()));
+        metrics.put("failures", failures.sum());
+        return metrics;
+    }
+}
@@ -0,0 +1,248 @@
+package com.rairai.consumer_kafka_1.service;
+
+import com.rairai.consumer_kafka_1.changelog.StockChangelog;
+import com.rairai.consumer_kafka_1.dedup.OrderDeduplicator;
+import com.rairai.consumer_kafka_1.jfr.StockReserveEvent;
+import com.rairai.consumer_kafka_1.model.StockReservation;
+import com.rairai.consumer_kafka_1.snapshot.StockSnapshotPublisher;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Estoque particionado por produto: cada partição do tópico de reservas é dona de um subconjunto de produtos e só a
+ * thread do consumer que a recebeu escreve no seu mapa, então a reserva não precisa de lock. Ao receber uma partição
+ * o estado dos produtos que caem nela é carregado; na revogação ele volta para a área de handoff.
+ * <p>
+ * O estado inicial vem do {@link StockService}, que nesse modo não recebe mais escritas: ajustes e devoluções chegam
+ * pelo tópico de reservas ({@link StockReservation#ADJUST}, {@link StockReservation#COMPENSATE}) e são aplicados pelo
+ * dono do produto. Um pedido cujo item falhou tem os outros itens devolvidos por compensação; se a compensação chega
+ * antes da reserva, a reserva é descartada ao chegar.
+ */
+@Service
+@ConditionalOnProperty(name = "app.stock.mode", havingValue = "partitioned")
+public class PartitionedStockStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionedStockStore.class);
+
+    public static final String RELEASED = "RELEASED";
+    public static final String CANCELLED = "CANCELLED";
+    public static final String ADJUSTED = "ADJUSTED";
+
+    private final OrderDeduplicator deduplicator;
+    private final StockChangelog changelog;
+    private final StockSnapshotPublisher snapshots;
+
+    private final Map<Integer, Map<String, Integer>> owned = new ConcurrentHashMap<>();
+    private final Map<String, Integer> released;
+
+    public PartitionedStockStore(StockService stockService, OrderDeduplicator deduplicator,
+                                 ObjectProvider<StockChangelog> changelog, StockSnapshotPublisher snapshots) {
+        this.deduplicator = deduplicator;
+        this.snapshots = snapshots;
+        this.changelog = changelog.getIfAvailable();
+        this.released = new ConcurrentHashMap<>(stockService.snapshot());
+    }
+
+
+    public void load(Collection<Integer> partitions, int partitionCount) {
+        if (changelog != null) {
+            // o dono anterior (talvez outra instância) fez flush do changelog antes de liberar a partição
+            changelog.catchUp();
+            Map<String, Integer> restored = new HashMap<>();
+            changelog.restoredStock().forEach((productId, qty) -> {
+                if (partitions.contains(partitionFor(productId, partitionCount))) {
+                    restored.put(productId, qty);
+                }
+            });
+            released.putAll(restored);
+            snapshots.publish(restored);
+        }
+        for (int partition : partitions) {
+            Map<String, Integer> state = new ConcurrentHashMap<>();
+            Iterator<Map.Entry<String, Integer>> it = released.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Integer> entry = it.next();
+                if (partitionFor(entry.getKey(), partitionCount) == partition) {
+                    state.put(entry.getKey(), entry.getValue());
+                    it.remove();
+                }
+            }
+            owned.put(partition, state);
+            logger.info("Estado de estoque carregado: partition={}, produtos={}", partition, state.size());
+        }
+    }
+
+    public void release(Collection<Integer> partitions) {
+        if (changelog != null) {
+            try {
+                changelog.flush().join();
+            } catch (CompletionException e) {
+                logger.warn("Changelog não confirmou antes da liberação das partições {}: {}", partitions, e.getMessage());
+            }
+        }
+        for (int partition : partitions) {
+            Map<String, Integer> state = owned.remove(partition);
+            if (state != null) {
+                released.putAll(state);
+                logger.info("Estado de estoque liberado: partition={}, produtos={}", partition, state.size());
+            }
+        }
+    }
+
+
+    /**
+     * Aplica a operação e retorna o resultado (os de {@link StockService} mais RELEASED, CANCELLED e ADJUSTED). Deve ser
+     * chamado apenas pela thread do consumer dona da partição.
+     */
+    public String apply(int partition, StockReservation reservation) {
+        StockReserveEvent event = new StockReserveEvent();
+        event.begin();
+        String outcome = doApply(partition, reservation);
+        commitEvent(event, reservation, partition, outcome);
+        return outcome;
+    }
+
+    private String doApply(int partition, StockReservation reservation) {
+        Map<String, Integer> state = owned.get(partition);
+        if (state == null) {
+            throw new IllegalStateException("Partição " + partition + " não está atribuída a este consumer");
+        }
+        if (reservation == null || reservation.getProductId() == null || reservation.getOrderId() == null) {
+            logger.warn("Reserva inválida recebida na partição {}: {}", partition, reservation);
+            return StockService.INVALID;
+        }
+        return switch (reservation.getType()) {
+            case StockReservation.COMPENSATE -> compensate(state, reservation);
+            case StockReservation.ADJUST -> adjust(state, reservation);
+            default -> reserve(state, partition, reservation);
+        };
+    }
+
+    private String reserve(Map<String, Integer> state, int partition, StockReservation reservation) {
+        String dedupKey = reservation.getOrderId() + "/" + reservation.getProductId();
+        if (deduplicator.isDuplicate(dedupKey)) {
+            logger.atInfo().addKeyValue("orderId", reservation.getOrderId()).addKeyValue("productId", reservation.getProductId())
+                    .log("Item já reservado; reentrega ignorada");
+            return StockService.DUPLICATE;
+        }
+        if (deduplicator.isDuplicate(dedupKey + "/compensado")) {
+            logger.atInfo().addKeyValue("orderId", reservation.getOrderId()).addKeyValue("productId", reservation.getProductId())
+                    .log("Pedido já compensado antes da reserva do item; reserva descartada");
+            return CANCELLED;
+        }
+
+        String productId = reservation.getProductId();
+        int required = reservation.getQuantity() != null ? reservation.getQuantity() : 0;
+        int available = state.getOrDefault(productId, 0);
+        if (available < required) {
+            logger.atWarn().addKeyValue("orderId", reservation.getOrderId()).addKeyValue("productId", productId)
+                    .addKeyValue("required", required).addKeyValue("available", available).log("Sem estoque suficiente");
+            return StockService.INSUFFICIENT_STOCK;
+        }
+
+        write(state, productId, available - required);
+        deduplicator.record(dedupKey);
+        logger.atInfo().addKeyValue("orderId", reservation.getOrderId()).addKeyValue("productId", productId)
+                .addKeyValue("reserved", required).addKeyValue("stock", available - required).addKeyValue("partition", partition)
+                .log("Item reservado");
+        return StockService.RESERVED;
+    }
+
+    /** Devolve o item se ele foi reservado; se a reserva ainda não chegou, ela será descartada quando chegar. */
+    private String compensate(Map<String, Integer> state, StockReservation compensation) {
+        String dedupKey = compensation.getOrderId() + "/" + compensation.getProductId();
+        if (deduplicator.isDuplicate(dedupKey + "/compensado")) {
+            return StockService.DUPLICATE;
+        }
+        deduplicator.record(dedupKey + "/compensado");
+        if (!deduplicator.isDuplicate(dedupKey)) {
+            logger.atInfo().addKeyValue("orderId", compensation.getOrderId()).addKeyValue("productId", compensation.getProductId())
+                    .log("Compensação sem reserva aplicada; a reserva do item será descartada");
+            return CANCELLED;
+        }
+        String productId = compensation.getProductId();
+        int quantity = compensation.getQuantity() != null ? compensation.getQuantity() : 0;
+        int newQty = state.getOrDefault(productId, 0) + quantity;
+        write(state, productId, newQty);
+        logger.atWarn().addKeyValue("orderId", compensation.getOrderId()).addKeyValue("productId", productId)
+                .addKeyValue("released", quantity).addKeyValue("stock", newQty).log("Item devolvido por compensação");
+        return RELEASED;
+    }
+
+    private String adjust(Map<String, Integer> state, StockReservation adjustment) {
+        String dedupKey = adjustment.getOrderId() + "/" + adjustment.getProductId();
+        if (deduplicator.isDuplicate(dedupKey)) {
+            return StockService.DUPLICATE;
+        }
+        String productId = adjustment.getProductId();
+        int newQty = state.getOrDefault(productId, 0) + (adjustment.getQuantity() != null ? adjustment.getQuantity() : 0);
+        if (newQty < 0) {
+            logger.warn("Ajuste {} descartado: deixaria o estoque do produto {} negativo ({})",
+                    adjustment.getOrderId(), productId, newQty);
+            return StockService.INVALID;
+        }
+        write(state, productId, newQty);
+        deduplicator.record(dedupKey);
+        logger.info("Estoque do produto {} ajustado em {} (novo={})", productId, adjustment.getQuantity(), newQty);
+        return ADJUSTED;
+    }
+
+    private void write(Map<String, Integer> state, String productId, int quantity) {
+        state.put(productId, quantity);
+        snapshots.publish(productId, quantity);
+        if (changelog != null) {
+            changelog.publish(productId, quantity);
+        }
+    }
+
+
+    public int getStock(String productId) {
+        for (Map<String, Integer> state : owned.values()) {
+            Integer qty = state.get(productId);
+            if (qty != null) {
+                return qty;
+            }
+        }
+        return released.getOrDefault(productId, 0);
+    }
+
+    public Map<String, Integer> snapshot() {
+        Map<String, Integer> all = new HashMap<>(released);
+        owned.values().forEach(all::putAll);
+        return Collections.unmodifiableMap(all);
+    }
+
+
+    /** Mesma partição que o partitioner padrão do Kafka escolhe para a chave productId serializada em UTF-8. */
+    public static int partitionFor(String productId, int partitionCount) {
+        return Utils.toPositive(Utils.murmur2(productId.getBytes(StandardCharsets.UTF_8))) % partitionCount;
+    }
+
+    private static void commitEvent(StockReserveEvent event, StockReservation reservation, int partition, String outcome) {
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        if (reservation != null) {
+            event.orderId = reservation.getOrderId();
+            event.itemCount = 1;
+        }
+        event.partition = partition;
+        event.outcome = outcome;
+        event.commit();
+    }
+}
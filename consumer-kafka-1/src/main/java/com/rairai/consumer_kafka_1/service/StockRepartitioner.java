@@ -0,0 +1,118 @@
+package com.rairai.consumer_kafka_1.service;
+
+import com.rairai.consumer_kafka_1.logging.OrderLogSampler;
+import com.rairai.consumer_kafka_1.model.Order;
+import com.rairai.consumer_kafka_1.model.OrderItem;
+import com.rairai.consumer_kafka_1.model.StockReservation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Reparticiona os pedidos (chaveados por orderId) em reservas por item chaveadas por productId, para que o estoque
+ * de cada produto seja processado por uma única partição de {@code app.stock.reservations-topic}. Compensações e
+ * ajustes usam o mesmo tópico: toda escrita no estoque de um produto passa pela thread dona dele.
+ */
+@Service
+@ConditionalOnProperty(name = "app.stock.mode", havingValue = "partitioned")
+public class StockRepartitioner {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockRepartitioner.class);
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final String reservationsTopic;
+
+    public StockRepartitioner(KafkaTemplate<String, Object> kafkaTemplate,
+                              @Value("${app.stock.reservations-topic:pedidos-stock-reservas}") String reservationsTopic) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.reservationsTopic = reservationsTopic;
+    }
+
+
+    public CompletableFuture<Void> forward(Order order) {
+        if (order == null || order.getItems() == null || order.getItems().isEmpty()) {
+            logger.warn("Pedido sem itens não será reparticionado: {}", order != null ? order.getId() : null);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // itens repetidos do mesmo produto viram uma reserva só: o dono deduplica por orderId/productId
+        Map<String, Integer> items = new LinkedHashMap<>();
+        for (OrderItem item : order.getItems()) {
+            items.merge(item.getProductId(), item.getQuantity() != null ? item.getQuantity() : 0, Integer::sum);
+        }
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[items.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> item : items.entrySet()) {
+            StockReservation reservation = new StockReservation(order.getId(), item.getKey(), item.getValue(),
+                    StockReservation.RESERVE, items);
+            sends[i++] = kafkaTemplate.send(reservationsTopic, item.getKey(), reservation);
+        }
+        try (MDC.MDCCloseable ignored = MDC.putCloseable(OrderLogSampler.ORDER_ID, order.getId())) {
+            logger.atInfo().addKeyValue("orderId", order.getId()).addKeyValue("reservations", sends.length)
+                    .log("Pedido reparticionado por produto");
+        }
+        return CompletableFuture.allOf(sends);
+    }
+
+
+    /** Pede aos donos dos outros produtos do pedido que devolvam o que reservaram para ele. */
+    public CompletableFuture<Void> compensate(StockReservation failed) {
+        List<StockReservation> compensations = compensationsFor(failed);
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[compensations.size()];
+        for (int i = 0; i < sends.length; i++) {
+            StockReservation compensation = compensations.get(i);
+            sends[i] = kafkaTemplate.send(reservationsTopic, compensation.getProductId(), compensation);
+        }
+        if (sends.length > 0) {
+            logger.atWarn().addKeyValue("orderId", failed.getOrderId()).addKeyValue("failedProduct", failed.getProductId())
+                    .addKeyValue("compensations", sends.length).log("Item sem reserva; devolvendo os demais itens do pedido");
+        }
+        return CompletableFuture.allOf(sends);
+    }
+
+    /**
+     * Ajustes (quantidade a somar por produto), aplicados pelo dono de cada produto. Um ajuste que deixaria o estoque
+     * negativo só é detectado pelo dono, que o descarta.
+     */
+    public CompletableFuture<Void> adjust(Map<String, Integer> deltas) {
+        StockService.validate(deltas);
+        String adjustmentId = "ajuste-" + UUID.randomUUID();
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[deltas.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+            StockReservation adjustment = new StockReservation(adjustmentId, delta.getKey(), delta.getValue(),
+                    StockReservation.ADJUST, null);
+            sends[i++] = kafkaTemplate.send(reservationsTopic, delta.getKey(), adjustment);
+        }
+        logger.info("Ajuste em lote enviado aos donos dos produtos: id={}, produtos={}", adjustmentId, deltas.size());
+        return CompletableFuture.allOf(sends);
+    }
+
+
+    static List<StockReservation> compensationsFor(StockReservation failed) {
+        List<StockReservation> compensations = new ArrayList<>();
+        if (failed.getOrderItems() == null) {
+            return compensations;
+        }
+        failed.getOrderItems().forEach((productId, quantity) -> {
+            if (!Objects.equals(productId, failed.getProductId())) {
+                compensations.add(new StockReservation(failed.getOrderId(), productId, quantity,
+                        StockReservation.COMPENSATE, null));
+            }
+        });
+        return compensations;
+    }
+}
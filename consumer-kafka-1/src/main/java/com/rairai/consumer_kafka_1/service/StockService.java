@@ -1,14 +1,22 @@
 package com.rairai.consumer_kafka_1.service;
 
+import com.rairai.consumer_kafka_1.catalog.CatalogLoader;
+import com.rairai.consumer_kafka_1.changelog.StockChangelog;
+import com.rairai.consumer_kafka_1.dedup.OrderDeduplicator;
+import com.rairai.consumer_kafka_1.hold.ReservationHolds;
+import com.rairai.consumer_kafka_1.jfr.StockReserveEvent;
 import com.rairai.consumer_kafka_1.model.Order;
 import com.rairai.consumer_kafka_1.model.OrderItem;
+import com.rairai.consumer_kafka_1.snapshot.StockSnapshotPublisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 @Service
@@ -16,53 +24,266 @@ public class StockService {
 
     private static final Logger logger = LoggerFactory.getLogger(StockService.class);
 
+    public static final String RESERVED = "RESERVED";
+    public static final String INSUFFICIENT_STOCK = "INSUFFICIENT_STOCK";
+    public static final String INVALID = "INVALID";
+    public static final String DUPLICATE = "DUPLICATE";
+    /** Reentrega de um pedido cuja reserva já expirou ou foi cancelada: o estoque dele voltou ao saldo. */
+    public static final String RELEASED = "RELEASED";
+
     private final Map<String, Integer> stock = new ConcurrentHashMap<>();
 
-    public StockService() {
-        stock.put("p1", 10);
-        stock.put("p2", 5);
-        stock.put("p3", 0);
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final OrderDeduplicator deduplicator;
+    private final StockChangelog changelog;
+    private final ReservationHolds holds;
+    private final StockSnapshotPublisher snapshots;
+
+    public StockService(OrderDeduplicator deduplicator, ObjectProvider<StockChangelog> changelog,
+                        ObjectProvider<ReservationHolds> holds, StockSnapshotPublisher snapshots,
+                        CatalogLoader catalog) {
+        this.deduplicator = deduplicator;
+        this.snapshots = snapshots;
+        this.changelog = changelog.getIfAvailable();
+        this.holds = holds.getIfAvailable();
+        if (this.holds != null) {
+            this.holds.onExpire(this::releaseHold);
+        }
+        // roda no construtor: os listeners só sobem depois que todos os singletons existem
+        initialize(catalog);
+    }
+
+
+    private void initialize(CatalogLoader catalog) {
+        Map<String, Integer> restored = changelog != null ? changelog.restoredStock() : Map.of();
+        String fingerprint = catalog.isConfigured() ? catalog.fingerprint() : null;
+        boolean catalogApplied = fingerprint != null && changelog != null && fingerprint.equals(changelog.catalogFingerprint());
+
+        if (!restored.isEmpty() && (fingerprint == null || catalogApplied)) {
+            stock.putAll(restored);
+            snapshots.publish(restored);
+            logger.info("Estoque restaurado do changelog: {} produtos", restored.size());
+            return;
+        }
+
+        Map<String, Integer> initial;
+        if (fingerprint != null) {
+            initial = catalog.load();
+        } else {
+            initial = new HashMap<>();
+            initial.put("p1", 10);
+            initial.put("p2", 5);
+            initial.put("p3", 0);
+        }
+        stock.putAll(initial);
+        snapshots.publish(initial);
+        if (changelog != null) {
+            // produtos que saíram do catálogo novo ficam zerados no changelog em vez de voltarem num restart
+            restored.keySet().stream().filter(productId -> !initial.containsKey(productId))
+                    .forEach(productId -> changelog.publish(productId, 0));
+            initial.forEach(changelog::publish);
+            if (fingerprint != null) {
+                changelog.markCatalog(fingerprint);
+            }
+        }
+    }
+
+
+    public boolean reserve(Order order) {
+        return reserve(order, -1);
+    }
+
+
+    public boolean reserve(Order order, int partition) {
+        String outcome = reserveStatus(order, partition);
+        return RESERVED.equals(outcome) || DUPLICATE.equals(outcome);
     }
 
+    /**
+     * Como {@link #reserve(Order, int)}, mas retorna o resultado (RESERVED, INSUFFICIENT_STOCK, INVALID, DUPLICATE,
+     * RELEASED).
+     */
+    public String reserveStatus(Order order, int partition) {
+        return reserve(order, partition, true);
+    }
+
+
+    /**
+     * Reserva dentro de uma transação Kafka: retorna o resultado e não registra o pedido na deduplicação. Quem chama
+     * registra com {@link #markApplied(String)} depois do commit ou desfaz a reserva com {@link #revert(Order)} se a
+     * transação abortar, para que a reentrega do registro encontre o estado de antes.
+     */
+    public String reserveInTransaction(Order order, int partition) {
+        return reserve(order, partition, false);
+    }
+
+    public void markApplied(String orderId) {
+        deduplicator.record(orderId);
+    }
+
+    /**
+     * Devolve ao estoque os itens de uma reserva cuja transação abortou. Roda no {@code afterCompletion}, com o
+     * producer abortado ainda ligado à thread: o changelog recebe as quantidades fora da transação.
+     */
+    public void revert(Order order) {
+        ReservationHolds.Hold hold = holds != null ? holds.cancel(order.getId()) : null;
+        Map<String, Integer> items = hold != null ? hold.items() : quantities(order);
+        logger.atWarn().addKeyValue("orderId", order.getId()).addKeyValue("items", items)
+                .log("Transação abortada; reserva desfeita");
+        release(items, true);
+    }
+
+
+    private String reserve(Order order, int partition, boolean recordApplied) {
+        StockReserveEvent event = new StockReserveEvent();
+        event.begin();
 
-    public synchronized boolean reserve(Order order) {
+        long waitStart = System.nanoTime();
+        lock.lock();
+        try {
+            event.lockWait = System.nanoTime() - waitStart;
+            String outcome = doReserve(order, recordApplied);
+            commitEvent(event, order, partition, outcome);
+            return outcome;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private String doReserve(Order order, boolean recordApplied) {
         if (order == null) {
             logger.warn("Pedido nulo recebido para reserva.");
-            return false;
+            return INVALID;
         }
 
         if (order.getItems() == null || order.getItems().isEmpty()) {
             logger.warn("Pedido {} não contém itens para reserva.", order.getId());
-            return false;
+            return INVALID;
         }
 
-        logger.info("Tentando reservar estoque para pedido {}", order.getId());
+        if (deduplicator.isDuplicate(order.getId())) {
+            if (deduplicator.isReleased(order.getId())) {
+                logger.atInfo().addKeyValue("orderId", order.getId())
+                        .log("Reserva do pedido já devolvida ao estoque; reentrega ignorada");
+                return RELEASED;
+            }
+            logger.atInfo().addKeyValue("orderId", order.getId()).log("Pedido já reservado; reentrega ignorada");
+            return DUPLICATE;
+        }
 
         for (OrderItem item : order.getItems()) {
             String productId = item.getProductId();
             int required = item.getQuantity() != null ? item.getQuantity() : 0;
             int available = stock.getOrDefault(productId, 0);
             if (available < required) {
-                logger.warn("Sem estoque suficiente para produto {}: necessário={}, disponível={}",
-                        productId, required, available);
-                return false;
+                logger.atWarn().addKeyValue("orderId", order.getId()).addKeyValue("productId", productId)
+                        .addKeyValue("required", required).addKeyValue("available", available)
+                        .log("Sem estoque suficiente");
+                return INSUFFICIENT_STOCK;
             }
         }
 
+        Map<String, Integer> reserved = quantities(order);
+        Map<String, Integer> changes = new HashMap<>();
         for (OrderItem item : order.getItems()) {
             String productId = item.getProductId();
             int required = item.getQuantity() != null ? item.getQuantity() : 0;
             int available = stock.getOrDefault(productId, 0);
             int newQty = available - required;
             stock.put(productId, newQty);
-            logger.info("Reservado {} unidades do produto {} (novo estoque={})",
-                    required, productId, newQty);
+            changes.put(productId, newQty);
         }
 
-        logger.info("Reserva concluída para pedido {}", order.getId());
+        snapshots.publish(changes);
+        if (changelog != null) {
+            changelog.publish(changes);
+        }
+        if (recordApplied) {
+            deduplicator.record(order.getId());
+        }
+        if (holds != null) {
+            holds.hold(order.getId(), reserved);
+        }
+        // uma linha por pedido; itens e saldos vão como campos em vez de uma linha formatada por item
+        logger.atInfo().addKeyValue("orderId", order.getId()).addKeyValue("reserved", reserved)
+                .addKeyValue("stock", changes).addKeyValue("pending", holds != null).log("Reserva concluída");
+        return RESERVED;
+    }
+
+
+    private static Map<String, Integer> quantities(Order order) {
+        Map<String, Integer> quantities = new HashMap<>();
+        for (OrderItem item : order.getItems()) {
+            quantities.merge(item.getProductId(), item.getQuantity() != null ? item.getQuantity() : 0, Integer::sum);
+        }
+        return quantities;
+    }
+
+
+    private static void commitEvent(StockReserveEvent event, Order order, int partition, String outcome) {
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        if (order != null) {
+            event.orderId = order.getId();
+            event.itemCount = order.getItems() != null ? order.getItems().size() : 0;
+        }
+        event.partition = partition;
+        event.outcome = outcome;
+        event.commit();
+    }
+
+
+    /** Torna definitiva a reserva pendente do pedido. Sem {@code app.stock.hold.enabled} toda reserva já é definitiva. */
+    public boolean confirm(String orderId) {
+        return holds != null && holds.confirm(orderId);
+    }
+
+    /** Cancela a reserva pendente do pedido e devolve os itens ao estoque. */
+    public boolean cancel(String orderId) {
+        ReservationHolds.Hold hold = holds != null ? holds.cancel(orderId) : null;
+        if (hold == null) {
+            return false;
+        }
+        logger.info("Reserva do pedido {} cancelada; liberando {}", orderId, hold.items());
+        releaseHold(hold);
         return true;
     }
 
+    /** Marca o pedido na deduplicação sob o lock da reserva: uma reentrega concorrente não sai mais como DUPLICATE. */
+    private void releaseHold(ReservationHolds.Hold hold) {
+        lock.lock();
+        try {
+            deduplicator.release(hold.orderId());
+            release(hold.items(), false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Devolve todos os itens à memória antes de gravar: uma falha no changelog não deixa item sem devolver. */
+    private void release(Map<String, Integer> items, boolean outsideTransaction) {
+        lock.lock();
+        try {
+            Map<String, Integer> changes = new HashMap<>();
+            items.forEach((productId, amount) -> changes.put(productId, stock.merge(productId, amount, Integer::sum)));
+            snapshots.publish(changes);
+            if (changelog != null) {
+                if (outsideTransaction) {
+                    changelog.publishNonTransactional(changes);
+                } else {
+                    changelog.publish(changes);
+                }
+            }
+            logger.info("Itens devolvidos ao estoque: {} (novo={})", items, changes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
 
     public int getStock(String productId) {
         return stock.getOrDefault(productId, 0);
@@ -70,13 +291,65 @@ public class StockService {
 
 
     public void addStock(String productId, int amount) {
-        stock.merge(productId, amount, Integer::sum);
-        logger.info("Estoque do produto {} ajustado em {} (novo={})",
-                productId, amount, stock.getOrDefault(productId, 0));
+        // mesmo lock da reserva: snapshot e changelog precisam receber as quantidades na ordem em que foram aplicadas
+        lock.lock();
+        try {
+            int newQty = stock.merge(productId, amount, Integer::sum);
+            snapshots.publish(productId, newQty);
+            if (changelog != null) {
+                changelog.publish(productId, newQty);
+            }
+            logger.info("Estoque do produto {} ajustado em {} (novo={})", productId, amount, newQty);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Aplica um lote de ajustes (quantidade a somar por produto) como uma única versão do estoque. Retorna as novas
+     * quantidades dos produtos ajustados. Um produto ou quantidade nulo, ou um ajuste que deixaria o estoque negativo,
+     * rejeita o lote inteiro com {@link IllegalArgumentException} antes de qualquer mudança.
+     */
+    public Map<String, Integer> adjust(Map<String, Integer> deltas) {
+        validate(deltas);
+        lock.lock();
+        try {
+            Map<String, Integer> changes = new HashMap<>();
+            deltas.forEach((productId, amount) -> {
+                int newQty = stock.getOrDefault(productId, 0) + amount;
+                if (newQty < 0) {
+                    throw new IllegalArgumentException("Ajuste deixaria o estoque de " + productId + " negativo: " + newQty);
+                }
+                changes.put(productId, newQty);
+            });
+            stock.putAll(changes);
+            snapshots.publish(changes);
+            if (changelog != null) {
+                changelog.publish(changes);
+            }
+            logger.info("Ajuste em lote aplicado: {} produtos", changes.size());
+            return changes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Rejeita produtos e quantidades nulos de um lote de ajustes. */
+    public static void validate(Map<String, Integer> deltas) {
+        if (deltas == null) {
+            throw new IllegalArgumentException("Lote de ajustes vazio");
+        }
+        deltas.forEach((productId, amount) -> {
+            if (productId == null || productId.isBlank() || amount == null) {
+                throw new IllegalArgumentException("Ajuste inválido: produto=" + productId + ", quantidade=" + amount);
+            }
+        });
     }
 
 
+    /** Versão imutável publicada mais recente; não copia o estoque. */
     public Map<String, Integer> snapshot() {
-        return Collections.unmodifiableMap(new ConcurrentHashMap<>(stock));
+        return snapshots.current();
     }
 }
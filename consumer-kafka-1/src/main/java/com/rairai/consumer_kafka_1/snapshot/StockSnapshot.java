@@ -0,0 +1,203 @@
+package com.rairai.consumer_kafka_1.snapshot;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * Visão imutável do estoque numa versão. É uma trie de {@value #LEVELS} níveis com {@value #FANOUT} filhos por nó
+ * indexada pelo hash do productId: uma nova versão copia só o caminho até as folhas alteradas e compartilha o resto
+ * com a versão anterior, então publicar uma reserva não copia o catálogo inteiro e leitores nunca veem escrita parcial.
+ */
+public final class StockSnapshot extends AbstractMap<String, Integer> {
+
+    private static final int BITS = 5;
+    private static final int FANOUT = 1 << BITS;
+    private static final int MASK = FANOUT - 1;
+    private static final int LEVELS = 4;
+
+    static final StockSnapshot EMPTY = new StockSnapshot(0, newNode(null), 0);
+
+    private final long version;
+    private final Object[] root;
+    private final int size;
+
+    private StockSnapshot(long version, Object[] root, int size) {
+        this.version = version;
+        this.root = root;
+        this.size = size;
+    }
+
+
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if (!(key instanceof String productId)) {
+            return null;
+        }
+        int hash = hash(productId);
+        Object node = root;
+        for (int level = 0; level < LEVELS; level++) {
+            node = ((Object[]) node)[index(hash, level)];
+            if (node == null) {
+                return null;
+            }
+        }
+        return ((Leaf) node).get(productId);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Nova versão com as quantidades de {@code changes} aplicadas; esta instância não muda. */
+    StockSnapshot with(Map<String, Integer> changes, long newVersion) {
+        // a última posição de cada nó interno guarda o dono: nós já copiados para esta versão são alterados no lugar,
+        // então uma carga grande não copia o mesmo nó de novo a cada produto
+        Object owner = new Object();
+        Object[] newRoot = copy(root, owner);
+        int newSize = size;
+        for (Map.Entry<String, Integer> change : changes.entrySet()) {
+            String productId = change.getKey();
+            int hash = hash(productId);
+            Object[] node = newRoot;
+            for (int level = 0; level < LEVELS - 1; level++) {
+                int i = index(hash, level);
+                Object[] child = (Object[]) node[i];
+                if (child == null || child[FANOUT] != owner) {
+                    child = child != null ? copy(child, owner) : newNode(owner);
+                    node[i] = child;
+                }
+                node = child;
+            }
+            int i = index(hash, LEVELS - 1);
+            Leaf leaf = (Leaf) node[i];
+            if (leaf == null || leaf.get(productId) == null) {
+                newSize++;
+            }
+            node[i] = Leaf.with(leaf, owner, productId, change.getValue());
+        }
+        return new StockSnapshot(newVersion, newRoot, newSize);
+    }
+
+    private static Object[] newNode(Object owner) {
+        Object[] node = new Object[FANOUT + 1];
+        node[FANOUT] = owner;
+        return node;
+    }
+
+    private static Object[] copy(Object[] node, Object owner) {
+        Object[] copy = node.clone();
+        copy[FANOUT] = owner;
+        return copy;
+    }
+
+
+    @Override
+    public Set<Map.Entry<String, Integer>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Map.Entry<String, Integer>> iterator() {
+                List<Map.Entry<String, Integer>> entries = new ArrayList<>(size);
+                collect(root, 0, entries);
+                return entries.iterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static void collect(Object[] node, int level, List<Map.Entry<String, Integer>> entries) {
+        for (int slot = 0; slot < FANOUT; slot++) {
+            Object child = node[slot];
+            if (child == null) {
+                continue;
+            }
+            if (level == LEVELS - 1) {
+                Leaf leaf = (Leaf) child;
+                for (int i = 0; i < leaf.count; i++) {
+                    entries.add(Map.entry(leaf.keys[i], leaf.values[i]));
+                }
+            } else {
+                collect((Object[]) child, level + 1, entries);
+            }
+        }
+    }
+
+    private static int index(int hash, int level) {
+        return (hash >>> (level * BITS)) & MASK;
+    }
+
+    private static int hash(String productId) {
+        int h = productId.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+
+    /** Folha com os produtos que colidem nos bits do hash; só é alterada no lugar pela versão dona dela. */
+    private static final class Leaf {
+
+        private final Object owner;
+        private String[] keys;
+        private int[] values;
+        private int count;
+
+        private Leaf(Object owner, String[] keys, int[] values, int count) {
+            this.owner = owner;
+            this.keys = keys;
+            this.values = values;
+            this.count = count;
+        }
+
+        private Integer get(String productId) {
+            for (int i = 0; i < count; i++) {
+                if (keys[i].equals(productId)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        private static Leaf with(Leaf leaf, Object owner, String productId, int quantity) {
+            if (leaf == null) {
+                return new Leaf(owner, new String[]{productId, null}, new int[]{quantity, 0}, 1);
+            }
+            Leaf target = leaf.owner == owner ? leaf : new Leaf(owner, leaf.keys.clone(), leaf.values.clone(), leaf.count);
+            for (int i = 0; i < target.count; i++) {
+                if (target.keys[i].equals(productId)) {
+                    target.values[i] = quantity;
+                    return target;
+                }
+            }
+            if (target.count == target.keys.length) {
+                target.keys = Arrays.copyOf(target.keys, target.count * 2);
+                target.values = Arrays.copyOf(target.values, target.count * 2);
+            }
+            target.keys[target.count] = productId;
+            target.values[target.count] = quantity;
+            target.count++;
+            return target;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.rairai.consumer_kafka_1.snapshot;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Publica as versões do estoque para o caminho de leitura. Quem reserva chama {@link #publish(Map)} com as
+ * quantidades que mudaram; leitores só leem a referência volátil {@link #current()} e o histórico circular das últimas
+ * {@code app.stock.snapshot.delta-history} versões, sem lock, então consultas de alta frequência não disputam com a
+ * reserva.
+ */
+@Component
+public class StockSnapshotPublisher {
+
+    public record Delta(long fromVersion, long toVersion, boolean reset, Map<String, Integer> changes) {
+    }
+
+    private record ChangeSet(long version, Map<String, Integer> changes) {
+    }
+
+    private final int historySize;
+    private final AtomicReferenceArray<ChangeSet> history;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private volatile StockSnapshot current = StockSnapshot.EMPTY;
+
+    public StockSnapshotPublisher(@Value("${app.stock.snapshot.delta-history:65536}") int historySize) {
+        this.historySize = historySize;
+        this.history = new AtomicReferenceArray<>(historySize);
+    }
+
+
+    public StockSnapshot current() {
+        return current;
+    }
+
+    /**
+     * Aplica as mudanças numa nova versão. Só serializa escritores; retorna a versão publicada. O mapa é copiado para o
+     * histórico de deltas, então quem chamou pode continuar usando o seu.
+     */
+    public long publish(Map<String, Integer> changes) {
+        if (changes.isEmpty()) {
+            return current.version();
+        }
+        writeLock.lock();
+        try {
+            long version = current.version() + 1;
+            Map<String, Integer> copy = Map.copyOf(changes);
+            // o histórico é gravado antes da versão ficar visível, então quem lê a versão já encontra o delta dela
+            history.set(slot(version), new ChangeSet(version, copy));
+            current = current.with(copy, version);
+            return version;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public long publish(String productId, int quantity) {
+        return publish(Map.of(productId, quantity));
+    }
+
+    /**
+     * Última quantidade de cada produto alterado depois de {@code version}. Se a versão já saiu do histórico o delta
+     * vem com {@code reset=true} e o estoque completo.
+     */
+    public Delta changesSince(long version) {
+        StockSnapshot snapshot = current;
+        long to = snapshot.version();
+        if (version == to) {
+            return new Delta(version, to, false, Map.of());
+        }
+        // versão à frente da atual vem de antes de um restart: as versões recomeçam do zero a cada subida
+        if (version < 0 || version > to || to - version > historySize) {
+            return new Delta(version, to, true, snapshot);
+        }
+        Map<String, Integer> changes = new LinkedHashMap<>();
+        for (long v = version + 1; v <= to; v++) {
+            ChangeSet changeSet = history.get(slot(v));
+            if (changeSet == null || changeSet.version() != v) {
+                // sobrescrito por escritores mais novos durante a leitura
+                return new Delta(version, to, true, snapshot);
+            }
+            changes.putAll(changeSet.changes());
+        }
+        return new Delta(version, to, false, changes);
+    }
+
+
+    private int slot(long version) {
+        return (int) (version % historySize);
+    }
+}
@@ -0,0 +1,53 @@
+package com.rairai.consumer_kafka_1.catalog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CatalogLoaderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void csvChunksSplitOnLineBoundaries() throws IOException {
+        StringBuilder csv = new StringBuilder("productId,quantity\r\n");
+        for (int i = 0; i < 10_000; i++) {
+            csv.append("sku-").append(i).append(',').append(i % 97).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        csv.append("sku-1,-5");
+        Path file = Files.writeString(dir.resolve("catalog.csv"), csv);
+
+        Map<String, Integer> catalog = new CatalogLoader(file.toString(), 4, 256).load();
+
+        assertThat(catalog).hasSize(10_000)
+                .containsEntry("sku-0", 0)
+                .containsEntry("sku-9999", 9999 % 97)
+                .containsEntry("sku-1", -5);
+    }
+
+    @Test
+    void binaryRecordsHaveFixedWidth() throws IOException {
+        int idWidth = 12;
+        int records = 5_000;
+        ByteBuffer buffer = ByteBuffer.allocate(CatalogLoader.BINARY_HEADER + records * (idWidth + Integer.BYTES));
+        buffer.put(CatalogLoader.BINARY_MAGIC).putShort((short) idWidth);
+        for (int i = 0; i < records; i++) {
+            byte[] id = ("sku-" + i).getBytes(StandardCharsets.UTF_8);
+            buffer.put(id).put(new byte[idWidth - id.length]).putInt(i * 3);
+        }
+        Path file = Files.write(dir.resolve("catalog.bin"), buffer.array());
+
+        Map<String, Integer> catalog = new CatalogLoader(file.toString(), 4, 1024).load();
+
+        assertThat(catalog).hasSize(records).containsEntry("sku-0", 0).containsEntry("sku-4999", 4999 * 3);
+    }
+}
@@ -0,0 +1,134 @@
+package com.rairai.consumer_kafka_1.changelog;
+
+import com.rairai.consumer_kafka_1.service.StockService;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.stock.changelog.enabled=true"})
+@EmbeddedKafka(partitions = 3, topics = "pedidos")
+class StockChangelogTest {
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private StockChangelog changelog;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private KafkaAdmin kafkaAdmin;
+
+    @Test
+    void restartRestoresStockAndResumeOffsets() throws Exception {
+        try (KafkaProducer<String, String> producer = new KafkaProducer<>(
+                Map.of("bootstrap.servers", broker.getBrokersAsString()), new StringSerializer(), new StringSerializer())) {
+            for (int i = 0; i < 8; i++) {
+                producer.send(new ProducerRecord<>("pedidos", "o" + i, "{\"id\":\"o" + i + "\",\"customer\":\"c\","
+                        + "\"items\":[{\"productId\":\"p1\",\"quantity\":1,\"price\":1.0}],\"total\":1.0}"));
+            }
+        }
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (totalResumeOffset(changelog) < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        changelog.flush().get();
+
+        StockChangelog restarted = new StockChangelog(kafkaTemplate, kafkaAdmin, "pedidos-stock-changelog", 1,
+                broker.getBrokersAsString(), 30_000);
+        try {
+            restarted.bootstrap();
+
+            assertThat(restarted.restoredStock()).isEqualTo(stockService.snapshot());
+            assertThat(restarted.restoredStock()).containsEntry("p1", 2);
+            assertThat(totalResumeOffset(restarted)).isEqualTo(8);
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test
+    void markerCarriesTheStockChangesOfItsRecord() throws Exception {
+        String topic = "pedidos-stock-changelog-crash";
+        StockChangelog writer = new StockChangelog(kafkaTemplate, kafkaAdmin, topic, 1, broker.getBrokersAsString(), 30_000);
+        writer.bootstrap();
+        writer.close();
+        // crash simulado: o marcador do registro 4 chegou ao broker, os stock:<productId> dele não
+        kafkaTemplate.send(topic, "stock:p1", "10".getBytes(StandardCharsets.UTF_8));
+        kafkaTemplate.send(topic, "offset:pedidos:0", "5\np1=9\np2=4".getBytes(StandardCharsets.UTF_8));
+        kafkaTemplate.flush();
+
+        StockChangelog restarted = new StockChangelog(kafkaTemplate, kafkaAdmin, topic, 1, broker.getBrokersAsString(), 30_000);
+        try {
+            restarted.bootstrap();
+            assertThat(restarted.restoredStock()).containsEntry("p1", 9).containsEntry("p2", 4);
+            assertThat(restarted.resumeOffset(new TopicPartition("pedidos", 0))).isEqualTo(5);
+
+            TopicPartition source = new TopicPartition("pedidos", 1);
+            restarted.process(source, 8, () -> {
+                restarted.publish(Map.of("p3", 2));
+                return null;
+            });
+            restarted.process(source, 9, () -> null);
+            restarted.flush().get();
+        } finally {
+            restarted.close();
+        }
+
+        // a subida regravou os valores que só existiam no marcador; um registro sem mudanças grava só o offset
+        assertThat(lastValues(topic)).containsEntry("stock:p1", "9").containsEntry("stock:p2", "4")
+                .containsEntry("stock:p3", "2").containsEntry("offset:pedidos:1", "9");
+    }
+
+    /** Último valor de cada chave, lendo o tópico inteiro. */
+    private Map<String, String> lastValues(String topic) {
+        try (KafkaConsumer<String, String> reader = new KafkaConsumer<>(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()),
+                new StringDeserializer(), new StringDeserializer())) {
+            TopicPartition tp = new TopicPartition(topic, 0);
+            reader.assign(List.of(tp));
+            reader.seekToBeginning(List.of(tp));
+            long end = reader.endOffsets(List.of(tp)).get(tp);
+            Map<String, String> values = new HashMap<>();
+            while (reader.position(tp) < end) {
+                reader.poll(Duration.ofMillis(200)).forEach(r -> values.put(r.key(), r.value()));
+            }
+            return values;
+        }
+    }
+
+    private static long totalResumeOffset(StockChangelog changelog) {
+        long total = 0;
+        for (int partition = 0; partition < 3; partition++) {
+            Long offset = changelog.resumeOffset(new TopicPartition("pedidos", partition));
+            total += offset != null ? offset : 0;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,92 @@
+package com.rairai.consumer_kafka_1.commit;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffsetCommitManagerTest {
+
+    private static final TopicPartition TP = new TopicPartition("pedidos", 0);
+
+    @Test
+    void batchModeCommitsOnceWhenPollBatchCompletes() {
+        OffsetCommitManager manager = manager(OffsetCommitManager.MODE_BATCH, 1000, DurabilityBarrier.NONE);
+        MockConsumer<String, String> mock = mockWithRecords(3);
+        Consumer<String, String> consumer = manager.wrap(mock);
+
+        consumer.poll(Duration.ZERO);
+        consumer.commitSync(Map.of(TP, new OffsetAndMetadata(1)));
+        consumer.commitSync(Map.of(TP, new OffsetAndMetadata(2)));
+        assertThat(committed(mock)).isNull();
+
+        consumer.commitSync(Map.of(TP, new OffsetAndMetadata(3)));
+        assertThat(committed(mock)).isEqualTo(3);
+        assertThat(manager.requestedCommits()).isEqualTo(3);
+        assertThat(manager.committedCommits()).isEqualTo(1);
+    }
+
+    @Test
+    void timeModeDefersUntilIntervalOrRevoke() {
+        OffsetCommitManager manager = manager(OffsetCommitManager.MODE_TIME, 3_600_000, DurabilityBarrier.NONE);
+        MockConsumer<String, String> mock = mockWithRecords(3);
+        Consumer<String, String> consumer = manager.wrap(mock);
+
+        consumer.poll(Duration.ZERO);
+        consumer.commitSync(Map.of(TP, new OffsetAndMetadata(3)));
+        assertThat(committed(mock)).isNull();
+
+        manager.flush(consumer, List.of(TP));
+        assertThat(committed(mock)).isEqualTo(3);
+    }
+
+    @Test
+    void durableModeCommitsOnlyAfterBarrier() {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        OffsetCommitManager manager = manager(OffsetCommitManager.MODE_DURABLE, 1000, () -> durable);
+        MockConsumer<String, String> mock = mockWithRecords(2);
+        Consumer<String, String> consumer = manager.wrap(mock);
+
+        consumer.poll(Duration.ZERO);
+        consumer.commitSync(Map.of(TP, new OffsetAndMetadata(2)));
+        consumer.poll(Duration.ZERO);
+        assertThat(committed(mock)).isNull();
+
+        durable.complete(null);
+        consumer.poll(Duration.ZERO);
+        assertThat(committed(mock)).isEqualTo(2);
+    }
+
+
+    private static OffsetCommitManager manager(String mode, long intervalMs, DurabilityBarrier barrier) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("barrier", barrier);
+        return new OffsetCommitManager(mode, intervalMs, 1000, beans.getBeanProvider(DurabilityBarrier.class));
+    }
+
+    private static MockConsumer<String, String> mockWithRecords(int count) {
+        MockConsumer<String, String> mock = new MockConsumer<>("earliest");
+        mock.assign(List.of(TP));
+        mock.updateBeginningOffsets(Map.of(TP, 0L));
+        for (int offset = 0; offset < count; offset++) {
+            mock.addRecord(new ConsumerRecord<>(TP.topic(), TP.partition(), offset, "k" + offset, "v"));
+        }
+        return mock;
+    }
+
+    private static Long committed(MockConsumer<?, ?> mock) {
+        OffsetAndMetadata offset = mock.committed(Set.of(TP)).get(TP);
+        return offset != null ? offset.offset() : null;
+    }
+}
@@ -0,0 +1,35 @@
+package com.rairai.consumer_kafka_1.config;
+
+import com.rairai.consumer_kafka_1.model.OrderItem;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.Serializer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KafkaProducerConfigTest {
+
+    private final Serializer<Object> serializer = KafkaProducerConfig.valueSerializer();
+
+    @Test
+    void rawBytesFromFailedDeserializationArePublishedUnchanged() {
+        byte[] poison = "{nao-e-json".getBytes(StandardCharsets.UTF_8);
+        RecordHeaders headers = new RecordHeaders();
+
+        assertThat(serializer.serialize("pedidos-stock-dlt", headers, poison)).isEqualTo(poison);
+        assertThat(headers.toArray()).isEmpty();
+    }
+
+    @Test
+    void objectsAreSerializedAsJsonWithoutTypeHeaders() {
+        RecordHeaders headers = new RecordHeaders();
+
+        byte[] json = serializer.serialize("pedidos-stock-retry-0", headers, new OrderItem("p1", 2, 1.5));
+
+        assertThat(new String(json, StandardCharsets.UTF_8))
+                .contains("\"productId\":\"p1\"", "\"quantity\":2", "\"price\":1.5");
+        assertThat(headers.lastHeader("__TypeId__")).isNull();
+    }
+}
@@ -0,0 +1,221 @@
+package com.rairai.consumer_kafka_1.consumer;
+
+import com.rairai.consumer_kafka_1.changelog.StockChangelog;
+import com.rairai.consumer_kafka_1.model.Order;
+import com.rairai.consumer_kafka_1.model.OrderItem;
+import com.rairai.consumer_kafka_1.service.StockService;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.ListOffsetsOptions;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.IsolationLevel;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.transaction.KafkaTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.stock.transactions.enabled=true",
+        "app.stock.changelog.enabled=true"})
+@EmbeddedKafka(partitions = 3, topics = "pedidos", brokerProperties = {
+        "transaction.state.log.replication.factor=1", "transaction.state.log.min.isr=1"})
+class TransactionalStockConsumerTest {
+
+    private static final String OUTCOMES = "pedidos-stock-resultados";
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private TransactionalStockConsumer consumer;
+
+    @Autowired
+    private KafkaTransactionManager<String, Object> stockTransactionManager;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private KafkaAdmin kafkaAdmin;
+
+    @Test
+    void commitsOutcomeChangelogAndOffsetsTogether() throws Exception {
+        try (KafkaProducer<String, String> producer = new KafkaProducer<>(
+                Map.of("bootstrap.servers", broker.getBrokersAsString()), new StringSerializer(), new StringSerializer())) {
+            for (int i = 0; i < 8; i++) {
+                producer.send(new ProducerRecord<>("pedidos", "o" + i, "{\"id\":\"o" + i + "\",\"customer\":\"c\","
+                        + "\"items\":[{\"productId\":\"p1\",\"quantity\":1,\"price\":1.0}],\"total\":1.0}"));
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (committedOffsets() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertThat(committedOffsets()).isEqualTo(8);
+
+        List<String> outcomes = committedOutcomes("o", 8);
+        assertThat(outcomes).hasSize(8).allMatch(value -> value.contains("\"status\":\"RESERVED\""));
+        assertThat(stockService.getStock("p1")).isEqualTo(2);
+
+        assertThat(restoredChangelog()).containsEntry("p1", 2);
+    }
+
+    @Test
+    void abortedTransactionRevertsReservationAndHidesOutcome() throws Exception {
+        Order order = new Order("tx-abort", "c", List.of(new OrderItem("p2", 2, 1.0)), 2.0, Instant.now());
+        ConsumerRecord<String, Order> record = new ConsumerRecord<>("pedidos", 0, 1_000L, order.getId(), order);
+        TransactionTemplate transaction = new TransactionTemplate(stockTransactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            consumer.consume(record);
+            assertThat(stockService.getStock("p2")).isEqualTo(3);
+            status.setRollbackOnly();
+        });
+        assertThat(stockService.getStock("p2")).isEqualTo(5);
+
+        // a reentrega não é vista como duplicada: o pedido só entra na deduplicação depois do commit
+        transaction.executeWithoutResult(status -> consumer.consume(record));
+        assertThat(stockService.getStock("p2")).isEqualTo(3);
+
+        List<String> abortOutcomes = committedOutcomes("tx-abort", 2);
+        assertThat(abortOutcomes).hasSize(1).allMatch(value -> value.contains("\"status\":\"RESERVED\""));
+    }
+
+    @Test
+    void abortedTransactionReturnsEveryItemAndRecordsItInTheChangelog() throws Exception {
+        stockService.addStock("abort-a", 4);
+        stockService.addStock("abort-b", 6);
+        stockService.addStock("abort-c", 8);
+        Order order = new Order("tx-abort-multi", "c", List.of(new OrderItem("abort-a", 1, 1.0),
+                new OrderItem("abort-b", 2, 1.0), new OrderItem("abort-c", 3, 1.0)), 6.0, Instant.now());
+        ConsumerRecord<String, Order> record = new ConsumerRecord<>("pedidos", 0, 2_000L, order.getId(), order);
+
+        new TransactionTemplate(stockTransactionManager).executeWithoutResult(status -> {
+            consumer.consume(record);
+            status.setRollbackOnly();
+        });
+
+        assertThat(stockService.getStock("abort-a")).isEqualTo(4);
+        assertThat(stockService.getStock("abort-b")).isEqualTo(6);
+        assertThat(stockService.getStock("abort-c")).isEqualTo(8);
+        kafkaTemplate.flush();
+        assertThat(restoredChangelog()).containsEntry("abort-a", 4).containsEntry("abort-b", 6).containsEntry("abort-c", 8);
+    }
+
+    @Test
+    void reservationAfterAbortLandsAfterTheRestoredQuantities() throws Exception {
+        stockService.addStock("after-a", 4);
+        stockService.addStock("after-b", 6);
+        Order aborted = new Order("tx-abort-then", "c", List.of(new OrderItem("after-a", 1, 1.0),
+                new OrderItem("after-b", 2, 1.0)), 3.0, Instant.now());
+        Order next = new Order("tx-after-abort", "c", List.of(new OrderItem("after-a", 3, 1.0),
+                new OrderItem("after-b", 1, 1.0)), 4.0, Instant.now());
+        TransactionTemplate transaction = new TransactionTemplate(stockTransactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            consumer.consume(new ConsumerRecord<>("pedidos", 1, 3_000L, aborted.getId(), aborted));
+            status.setRollbackOnly();
+        });
+        // outra thread, outro producer transacional: a reserva não pode chegar ao changelog antes da devolução
+        Thread other = Thread.ofPlatform().start(() -> transaction.executeWithoutResult(status ->
+                consumer.consume(new ConsumerRecord<>("pedidos", 2, 3_000L, next.getId(), next))));
+        other.join(30_000);
+
+        assertThat(stockService.getStock("after-a")).isEqualTo(1);
+        assertThat(stockService.getStock("after-b")).isEqualTo(5);
+        assertThat(restoredChangelog()).containsEntry("after-a", 1).containsEntry("after-b", 5);
+    }
+
+
+    private long committedOffsets() throws Exception {
+        try (AdminClient admin = AdminClient.create(
+                Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()))) {
+            Map<TopicPartition, OffsetAndMetadata> offsets =
+                    admin.listConsumerGroupOffsets("consumer-group-1").partitionsToOffsetAndMetadata().get();
+            return offsets.entrySet().stream()
+                    .filter(entry -> entry.getKey().topic().equals("pedidos"))
+                    .mapToLong(entry -> entry.getValue().offset())
+                    .sum();
+        }
+    }
+
+    /**
+     * Estado que um restart restauraria. Espera o fim das transações em aberto no changelog (LSO igual ao fim do log):
+     * o coordinator grava os marcadores de commit de forma assíncrona, e antes disso a leitura read_committed para no
+     * primeiro registro não confirmado.
+     */
+    private Map<String, Integer> restoredChangelog() throws Exception {
+        TopicPartition changelog = new TopicPartition("pedidos-stock-changelog", 0);
+        try (AdminClient admin = AdminClient.create(
+                Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()))) {
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (endOffset(admin, changelog, IsolationLevel.READ_COMMITTED) < endOffset(admin, changelog, IsolationLevel.READ_UNCOMMITTED)) {
+                assertThat(System.currentTimeMillis()).as("transações do changelog em aberto").isLessThan(deadline);
+                Thread.sleep(50);
+            }
+        }
+        StockChangelog restarted = new StockChangelog(kafkaTemplate, kafkaAdmin, changelog.topic(), 1,
+                broker.getBrokersAsString(), 30_000);
+        try {
+            restarted.bootstrap();
+            return restarted.restoredStock();
+        } finally {
+            restarted.close();
+        }
+    }
+
+    private static long endOffset(AdminClient admin, TopicPartition partition, IsolationLevel isolation) throws Exception {
+        return admin.listOffsets(Map.of(partition, OffsetSpec.latest()), new ListOffsetsOptions(isolation))
+                .partitionResult(partition).get().offset();
+    }
+
+    /** Resultados visíveis com read_committed de pedidos com o prefixo; lê até {@code expected} ou por 10 s. */
+    private List<String> committedOutcomes(String orderIdPrefix, int expected) {
+        try (KafkaConsumer<String, String> reader = new KafkaConsumer<>(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString(),
+                ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed"), new StringDeserializer(), new StringDeserializer())) {
+            List<TopicPartition> partitions = reader.partitionsFor(OUTCOMES).stream()
+                    .map(info -> new TopicPartition(OUTCOMES, info.partition()))
+                    .toList();
+            reader.assign(partitions);
+            reader.seekToBeginning(partitions);
+            List<String> values = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (values.size() < expected && System.currentTimeMillis() < deadline) {
+                reader.poll(Duration.ofMillis(200)).forEach(r -> {
+                    if (r.key().startsWith(orderIdPrefix)) {
+                        values.add(r.value());
+                    }
+                });
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.rairai.consumer_kafka_1.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderDeduplicatorTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void recognizesRedeliveredOrders() {
+        OrderDeduplicator dedup = new OrderDeduplicator(true, 10_000, 0.001, 60_000, 10_000, now::get);
+
+        assertThat(dedup.isDuplicate("o1")).isFalse();
+        dedup.record("o1");
+
+        assertThat(dedup.isDuplicate("o1")).isTrue();
+        assertThat(dedup.isDuplicate("o2")).isFalse();
+        assertThat(dedup.duplicates()).isEqualTo(1);
+    }
+
+    @Test
+    void bloomFalsePositivesStayNearConfiguredRate() {
+        OrderDeduplicator dedup = new OrderDeduplicator(true, 10_000, 0.01, 60_000, 0, now::get);
+        for (int i = 0; i < 10_000; i++) {
+            dedup.record("seen-" + i);
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(dedup.isDuplicate("new-" + i)).isFalse();
+        }
+        assertThat(dedup.unconfirmed()).isLessThan(300);
+    }
+
+    @Test
+    void bloomOnlyHitIsNeverReportedAsDuplicate() {
+        // Bloom filter saturado: qualquer id novo é um falso positivo
+        OrderDeduplicator dedup = new OrderDeduplicator(true, 1, 0.5, 60_000, 10_000, now::get);
+        for (int i = 0; i < 200; i++) {
+            dedup.record("seen-" + i);
+        }
+
+        assertThat(dedup.isDuplicate("never-seen")).isFalse();
+        assertThat(dedup.falsePositives()).isEqualTo(1);
+        assertThat(dedup.isDuplicate("seen-7")).isTrue();
+        assertThat(dedup.duplicates()).isEqualTo(1);
+    }
+
+    @Test
+    void orderBeyondExactCapacityIsProcessedAgain() {
+        OrderDeduplicator dedup = new OrderDeduplicator(true, 10_000, 0.001, 60_000, 1, now::get);
+        dedup.record("o1");
+        dedup.record("o2");
+
+        assertThat(dedup.isDuplicate("o1")).isTrue();
+        assertThat(dedup.isDuplicate("o2")).isFalse();
+        assertThat(dedup.unconfirmed()).isEqualTo(1);
+    }
+
+    @Test
+    void forgetsOrdersAfterTwoWindows() {
+        OrderDeduplicator dedup = new OrderDeduplicator(true, 10_000, 0.001, 1_000, 10_000, now::get);
+        dedup.record("o1");
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1_500));
+        assertThat(dedup.isDuplicate("o1")).isTrue();
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1_000));
+        assertThat(dedup.isDuplicate("o1")).isFalse();
+    }
+}
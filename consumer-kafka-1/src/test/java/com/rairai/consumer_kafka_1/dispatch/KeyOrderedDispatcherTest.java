@@ -0,0 +1,87 @@
+package com.rairai.consumer_kafka_1.dispatch;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyOrderedDispatcherTest {
+
+    @Test
+    void preservesOrderPerKey() throws Exception {
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(KeyOrderedDispatcher.MODE_KEY, 100);
+        Map<String, List<Long>> seen = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (long offset = 0; offset < 300; offset++) {
+            String key = "k" + (offset % 7);
+            ConsumerRecord<String, String> record = new ConsumerRecord<>("pedidos", 0, offset, key, "v");
+            long current = offset;
+            futures.add(dispatcher.dispatch(record, () -> {
+                sleepQuietly(current % 3);
+                seen.computeIfAbsent(key, k -> Collections.synchronizedList(new ArrayList<>())).add(current);
+            }));
+        }
+
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+        dispatcher.shutdown();
+
+        assertThat(seen).hasSize(7);
+        seen.values().forEach(offsets -> assertThat(offsets).isSorted());
+        assertThat(dispatcher.inFlightCount()).isZero();
+    }
+
+    @Test
+    void runsDifferentKeysConcurrently() throws Exception {
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(KeyOrderedDispatcher.MODE_KEY, 100);
+        CountDownLatch bothRunning = new CountDownLatch(2);
+
+        CompletableFuture<Void> a = dispatcher.dispatch(new ConsumerRecord<>("pedidos", 0, 0L, "a", "v"),
+                () -> awaitQuietly(bothRunning));
+        CompletableFuture<Void> b = dispatcher.dispatch(new ConsumerRecord<>("pedidos", 0, 1L, "b", "v"),
+                () -> awaitQuietly(bothRunning));
+
+        CompletableFuture.allOf(a, b).get(5, TimeUnit.SECONDS);
+        dispatcher.shutdown();
+        assertThat(bothRunning.getCount()).isZero();
+    }
+
+    @Test
+    void partitionModeRunsInline() {
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(KeyOrderedDispatcher.MODE_PARTITION, 1);
+        Thread caller = Thread.currentThread();
+        List<Thread> threads = new ArrayList<>();
+
+        CompletableFuture<Void> future = dispatcher.dispatch(new ConsumerRecord<>("pedidos", 0, 0L, "a", "v"),
+                () -> threads.add(Thread.currentThread()));
+
+        assertThat(future).isCompleted();
+        assertThat(threads).containsExactly(caller);
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
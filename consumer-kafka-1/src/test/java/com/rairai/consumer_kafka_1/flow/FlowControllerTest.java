@@ -0,0 +1,148 @@
+package com.rairai.consumer_kafka_1.flow;
+
+import com.rairai.consumer_kafka_1.dispatch.KeyOrderedDispatcher;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FlowControllerTest {
+
+    private static final List<TopicPartition> ASSIGNED =
+            List.of(new TopicPartition("pedidos", 0), new TopicPartition("pedidos", 1));
+
+    private final Set<TopicPartition> pausedPartitions = ConcurrentHashMap.newKeySet();
+
+    @Test
+    void limitGrowsAdditivelyUnderLoadAndShrinksMultiplicativelyAboveTarget() throws Exception {
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(KeyOrderedDispatcher.MODE_KEY, 1000);
+        FlowController controller = controller(dispatcher, 20);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(dispatcher.dispatch(record(i), () -> await(release)));
+            }
+
+            // ocupação acima de resume-ratio sem latência medida: +increase-step
+            controller.adjust();
+            assertThat(controller.limit()).isEqualTo(30);
+            controller.adjust();
+            assertThat(controller.limit()).isEqualTo(40);
+
+            release.countDown();
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+            // latência média de 1 s contra alvo de 50 ms: limite * decrease-factor, sem passar de min-limit
+            controller.track(CompletableFuture.completedFuture(null), System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+            controller.adjust();
+            assertThat(controller.limit()).isEqualTo(20);
+            controller.track(CompletableFuture.completedFuture(null), System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+            controller.adjust();
+            assertThat(controller.limit()).isEqualTo(10);
+            controller.track(CompletableFuture.completedFuture(null), System.nanoTime() - TimeUnit.SECONDS.toNanos(1));
+            controller.adjust();
+            assertThat(controller.limit()).isEqualTo(10);
+        } finally {
+            release.countDown();
+            controller.shutdown();
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void pausesAssignedPartitionsWhenWindowFillsAndResumesWhenItDrains() throws Exception {
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(KeyOrderedDispatcher.MODE_KEY, 1000);
+        FlowController controller = controller(dispatcher, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                CompletableFuture<Void> future = dispatcher.dispatch(record(i), () -> await(release));
+                controller.track(future, System.nanoTime());
+                futures.add(future);
+            }
+            assertThat(controller.isPaused()).isTrue();
+            assertThat(pausedPartitions).containsExactlyInAnyOrderElementsOf(ASSIGNED);
+
+            release.countDown();
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (controller.isPaused() && System.currentTimeMillis() < deadline) {
+                controller.adjust();
+                Thread.sleep(10);
+            }
+            assertThat(controller.isPaused()).isFalse();
+            assertThat(pausedPartitions).isEmpty();
+        } finally {
+            release.countDown();
+            controller.shutdown();
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    void staysInactiveInPartitionMode() {
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(KeyOrderedDispatcher.MODE_PARTITION, 1000);
+        FlowController controller = controller(dispatcher, 10);
+        try {
+            assertThat(controller.isEnabled()).isFalse();
+            controller.track(CompletableFuture.completedFuture(null), System.nanoTime());
+            assertThat(controller.isPaused()).isFalse();
+        } finally {
+            controller.shutdown();
+            dispatcher.shutdown();
+        }
+    }
+
+
+    /** Agendador com intervalo longo: os testes chamam {@code adjust()} diretamente. */
+    private FlowController controller(KeyOrderedDispatcher dispatcher, int initialLimit) {
+        MessageListenerContainer container = container();
+        KafkaListenerEndpointRegistry registry = new KafkaListenerEndpointRegistry() {
+            @Override
+            public MessageListenerContainer getListenerContainer(String id) {
+                return "stock-pedidos".equals(id) ? container : null;
+            }
+        };
+        return new FlowController(registry, dispatcher, true, List.of("stock-pedidos"), 50, 10, 100, initialLimit,
+                10, 0.5, 0.5, 3_600_000);
+    }
+
+    private MessageListenerContainer container() {
+        return (MessageListenerContainer) Proxy.newProxyInstance(MessageListenerContainer.class.getClassLoader(),
+                new Class<?>[]{MessageListenerContainer.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getAssignedPartitions" -> ASSIGNED;
+                    case "pausePartition" -> pausedPartitions.add((TopicPartition) args[0]);
+                    case "resumePartition" -> pausedPartitions.remove((TopicPartition) args[0]);
+                    case "isPartitionPauseRequested" -> pausedPartitions.contains((TopicPartition) args[0]);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+
+    private static ConsumerRecord<String, String> record(int offset) {
+        return new ConsumerRecord<>("pedidos", offset % 2, offset, "k" + offset, "v");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
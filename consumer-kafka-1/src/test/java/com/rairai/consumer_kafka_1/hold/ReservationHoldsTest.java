@@ -0,0 +1,35 @@
+package com.rairai.consumer_kafka_1.hold;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReservationHoldsTest {
+
+    @Test
+    void unconfirmedHoldIsReleasedOnce() {
+        long[] now = {0};
+        ReservationHolds holds = new ReservationHolds(1_000, 10, 64, () -> now[0], false);
+        List<String> released = new ArrayList<>();
+        holds.onExpire(hold -> released.add(hold.orderId()));
+
+        holds.hold("o1", Map.of("p1", 2));
+        holds.hold("o2", Map.of("p1", 1));
+        assertThat(holds.confirm("o2")).isTrue();
+
+        now[0] = 990;
+        holds.expireDue();
+        assertThat(released).isEmpty();
+
+        now[0] = 1_000;
+        holds.expireDue();
+        assertThat(released).containsExactly("o1");
+        assertThat(holds.cancel("o1")).isNull();
+        assertThat(holds.metrics()).containsEntry("expired", 1L).containsEntry("expiredUnits", 2L)
+                .containsEntry("confirmed", 1L).containsEntry("pending", 0L);
+    }
+}
@@ -0,0 +1,46 @@
+package com.rairai.consumer_kafka_1.hold;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+
+    @Test
+    void expiresEachTimeoutAtItsTickAcrossLevels() {
+        TimingWheel<Long> wheel = new TimingWheel<>(10, 8, 0);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            long deadline = 10L * (1 + random.nextInt(8 * 8 * 8 * 8 * 3));
+            deadlines.add(deadline);
+            wheel.schedule(deadline, deadline);
+        }
+
+        List<Long> fired = new ArrayList<>();
+        for (long now = 0; now <= 8 * 8 * 8 * 8 * 10 * 3 + 20; now += 10) {
+            for (long deadline : wheel.advance(now)) {
+                assertThat(deadline).isEqualTo(now);
+                fired.add(deadline);
+            }
+        }
+        assertThat(fired).hasSameSizeAs(deadlines).isSorted();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void cancelledTimeoutNeverFires() {
+        TimingWheel<String> wheel = new TimingWheel<>(10, 8, 0);
+        TimingWheel.Timeout<String> kept = wheel.schedule("kept", 5_000);
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 5_000);
+
+        assertThat(wheel.cancel(cancelled)).isTrue();
+        assertThat(wheel.cancel(cancelled)).isFalse();
+        assertThat(wheel.advance(10_000)).containsExactly("kept");
+        assertThat(wheel.cancel(kept)).isFalse();
+    }
+}
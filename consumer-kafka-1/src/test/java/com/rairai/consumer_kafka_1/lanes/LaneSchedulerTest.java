@@ -0,0 +1,33 @@
+package com.rairai.consumer_kafka_1.lanes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LaneSchedulerTest {
+
+    @Test
+    void pausesBulkWhileExpressBacklogButGivesBulkItsTurn() {
+        LaneScheduler scheduler = new LaneScheduler(null, null, false, "pedidos", "pedidos-express",
+                List.of("stock-pedidos"), 3, 100);
+
+        List<Boolean> paused = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            paused.add(scheduler.shouldPauseBulk(500));
+        }
+        assertThat(paused).containsExactly(true, true, true, false, true, true, true, false);
+        assertThat(scheduler.metrics()).containsEntry("bulkTurns", 2L);
+
+        assertThat(scheduler.shouldPauseBulk(0)).isFalse();
+        assertThat(scheduler.shouldPauseBulk(10)).isTrue();
+    }
+
+    @Test
+    void subscribesExpressOnlyWhenEnabled() {
+        assertThat(new LaneScheduler(null, null, false, "pedidos", "pedidos-express", List.of(), 4, 100).topics())
+                .containsExactly("pedidos");
+    }
+}
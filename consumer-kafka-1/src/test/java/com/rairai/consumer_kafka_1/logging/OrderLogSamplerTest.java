@@ -0,0 +1,41 @@
+package com.rairai.consumer_kafka_1.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderLogSamplerTest {
+
+    private final OrderLogSampler sampler = new OrderLogSampler();
+
+    @AfterEach
+    void clearMdc() {
+        MDC.clear();
+    }
+
+    @Test
+    void samplesOrdersNearConfiguredRate() {
+        sampler.setRate(0.1);
+        int kept = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (sampler.sampled("pedido-" + i)) {
+                kept++;
+            }
+        }
+        assertThat(kept).isBetween(9_000, 11_000);
+    }
+
+    @Test
+    void keepsWarningsAndLogsOutsideAnOrder() {
+        sampler.setRate(0.0);
+        assertThat(sampler.decide(null, null, Level.INFO, "subiu", null, null)).isEqualTo(FilterReply.NEUTRAL);
+
+        MDC.put(OrderLogSampler.ORDER_ID, "o1");
+        assertThat(sampler.decide(null, null, Level.INFO, "reservado", null, null)).isEqualTo(FilterReply.DENY);
+        assertThat(sampler.decide(null, null, Level.WARN, "sem estoque", null, null)).isEqualTo(FilterReply.NEUTRAL);
+    }
+}
@@ -0,0 +1,138 @@
+package com.rairai.consumer_kafka_1.outcome;
+
+import com.rairai.consumer_kafka_1.commit.DurabilityBarrier;
+import com.rairai.consumer_kafka_1.commit.OffsetCommitManager;
+import com.rairai.consumer_kafka_1.model.Order;
+import com.rairai.consumer_kafka_1.model.OrderItem;
+import com.rairai.consumer_kafka_1.model.ReservationOutcome;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReservationOutcomePublisherTest {
+
+    private static final TopicPartition TP = new TopicPartition("pedidos", 0);
+    private static final String OUTCOMES = "pedidos-stock-resultados";
+
+    /** Sem conclusão automática: cada envio fica pendente até o flush ou um {@code errorNext}. */
+    private final MockProducer<String, Object> producer = new MockProducer<>(false, null, new StringSerializer(),
+            (topic, value) -> new byte[0]) {
+
+        // o KafkaTemplate fecha o producer depois de cada envio; o mock precisa continuar aberto
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(Duration timeout) {
+        }
+    };
+
+    private final ReservationOutcomePublisher publisher =
+            new ReservationOutcomePublisher(new KafkaTemplate<>(new MockProducerFactory<>(() -> producer)), OUTCOMES);
+
+    @Test
+    void durableCommitWaitsForOutcomesAndTheOtherBarrier() throws Exception {
+        CompletableFuture<Void> changelog = new CompletableFuture<>();
+        OffsetCommitManager manager = manager(publisher, () -> changelog);
+        MockConsumer<String, String> mock = mockWithRecord();
+        Consumer<String, String> consumer = manager.wrap(mock);
+
+        consumer.poll(Duration.ZERO);
+        publisher.publish(order("o-1"), "RESERVED", TP, 0);
+        consumer.commitSync(Map.of(TP, new OffsetAndMetadata(1)));
+
+        // o flush da barreira confirma o lote de resultados; o commit ainda espera o changelog
+        awaitFlushed();
+        consumer.poll(Duration.ZERO);
+        assertThat(committed(mock)).isNull();
+
+        changelog.complete(null);
+        awaitCommitted(consumer, mock, 1);
+        ReservationOutcome outcome = (ReservationOutcome) producer.history().get(0).value();
+        assertThat(producer.history().get(0).key()).isEqualTo("o-1");
+        assertThat(outcome.getStatus()).isEqualTo("RESERVED");
+        assertThat(outcome.getOffset()).isZero();
+        assertThat(publisher.metrics()).containsEntry("RESERVED", 1L).containsEntry("failures", 0L);
+    }
+
+    @Test
+    void failedOutcomeSendKeepsTheOffsetUncommitted() throws Exception {
+        OffsetCommitManager manager = manager(publisher, DurabilityBarrier.NONE);
+        MockConsumer<String, String> mock = mockWithRecord();
+        Consumer<String, String> consumer = manager.wrap(mock);
+
+        consumer.poll(Duration.ZERO);
+        publisher.publish(order("o-2"), "INSUFFICIENT_STOCK", TP, 0);
+        producer.errorNext(new IllegalStateException("broker indisponível"));
+        consumer.commitSync(Map.of(TP, new OffsetAndMetadata(1)));
+
+        for (int i = 0; i < 10; i++) {
+            consumer.poll(Duration.ZERO);
+            Thread.sleep(20);
+        }
+        assertThat(committed(mock)).isNull();
+        assertThat(publisher.metrics()).containsEntry("INSUFFICIENT_STOCK", 1L).containsEntry("failures", 1L);
+    }
+
+
+    private static OffsetCommitManager manager(DurabilityBarrier... barriers) {
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        for (int i = 0; i < barriers.length; i++) {
+            beans.addBean("barrier" + i, barriers[i]);
+        }
+        return new OffsetCommitManager(OffsetCommitManager.MODE_DURABLE, 1000, 1000,
+                beans.getBeanProvider(DurabilityBarrier.class));
+    }
+
+    private static MockConsumer<String, String> mockWithRecord() {
+        MockConsumer<String, String> mock = new MockConsumer<>("earliest");
+        mock.assign(List.of(TP));
+        mock.updateBeginningOffsets(Map.of(TP, 0L));
+        mock.addRecord(new ConsumerRecord<>(TP.topic(), TP.partition(), 0, "o", "v"));
+        return mock;
+    }
+
+    private static Order order(String id) {
+        return new Order(id, "c", List.of(new OrderItem("p1", 1, 1.0)), 1.0, Instant.now());
+    }
+
+    private void awaitFlushed() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!producer.flushed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(producer.flushed()).isTrue();
+    }
+
+    private static void awaitCommitted(Consumer<?, ?> consumer, MockConsumer<?, ?> mock, long offset) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!Long.valueOf(offset).equals(committed(mock)) && System.currentTimeMillis() < deadline) {
+            consumer.poll(Duration.ZERO);
+            Thread.sleep(10);
+        }
+        assertThat(committed(mock)).isEqualTo(offset);
+    }
+
+    private static Long committed(MockConsumer<?, ?> mock) {
+        OffsetAndMetadata offset = mock.committed(Set.of(TP)).get(TP);
+        return offset != null ? offset.offset() : null;
+    }
+}
@@ -0,0 +1,77 @@
+package com.rairai.consumer_kafka_1.retry;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * O destino do reprocessamento é um tópico sem listener, para que o registro reenviado não volte à DLT durante o
+ * teste e a segunda chamada possa confirmar que nada é reenviado duas vezes.
+ */
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.retry.replay-topic=pedidos-stock-replay-test"})
+@EmbeddedKafka(partitions = 3, topics = {"pedidos", "pedidos-stock-replay-test"})
+class DltReplayServiceTest {
+
+    private static final String POISON = "{nao-e-json";
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private DltReplayService replayService;
+
+    @Test
+    void poisonRecordGoesToDltAndIsReplayedOnce() {
+        try (KafkaProducer<String, String> producer = new KafkaProducer<>(
+                Map.of("bootstrap.servers", broker.getBrokersAsString()), new StringSerializer(), new StringSerializer())) {
+            producer.send(new ProducerRecord<>("pedidos", "poison-1", POISON));
+        }
+
+        assertThat(read("pedidos-stock-dlt", 1)).containsExactly("poison-1=" + POISON);
+
+        assertThat(replayService.replay(10)).isEqualTo(1);
+        assertThat(read("pedidos-stock-replay-test", 1)).containsExactly("poison-1=" + POISON);
+
+        assertThat(replayService.replay(10)).isZero();
+    }
+
+
+    /** Registros do tópico como {@code chave=valor}; lê até {@code expected} ou por 30 s. */
+    private List<String> read(String topic, int expected) {
+        try (KafkaConsumer<String, String> reader = new KafkaConsumer<>(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()),
+                new StringDeserializer(), new StringDeserializer())) {
+            List<TopicPartition> partitions = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (partitions.isEmpty() && System.currentTimeMillis() < deadline) {
+                reader.listTopics().getOrDefault(topic, List.of())
+                        .forEach(info -> partitions.add(new TopicPartition(topic, info.partition())));
+            }
+            reader.assign(partitions);
+            reader.seekToBeginning(partitions);
+            List<String> values = new ArrayList<>();
+            while (values.size() < expected && System.currentTimeMillis() < deadline) {
+                reader.poll(Duration.ofMillis(200)).forEach(r -> values.add(r.key() + "=" + r.value()));
+            }
+            return values;
+        }
+    }
+}
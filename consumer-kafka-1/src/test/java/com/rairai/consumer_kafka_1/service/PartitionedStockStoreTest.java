@@ -0,0 +1,97 @@
+package com.rairai.consumer_kafka_1.service;
+
+import com.rairai.consumer_kafka_1.catalog.CatalogLoader;
+import com.rairai.consumer_kafka_1.changelog.StockChangelog;
+import com.rairai.consumer_kafka_1.dedup.OrderDeduplicator;
+import com.rairai.consumer_kafka_1.hold.ReservationHolds;
+import com.rairai.consumer_kafka_1.model.StockReservation;
+import com.rairai.consumer_kafka_1.snapshot.StockSnapshotPublisher;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PartitionedStockStoreTest {
+
+    private static final int PARTITIONS = 6;
+
+    private final StockSnapshotPublisher snapshots = new StockSnapshotPublisher(1024);
+    private final PartitionedStockStore store = newStore(snapshots);
+
+    @Test
+    void ownerPartitionReservesAndHandsOffOnRelease() {
+        int owner = PartitionedStockStore.partitionFor("p1", PARTITIONS);
+
+        store.load(List.of(owner), PARTITIONS);
+        assertThat(store.apply(owner, new StockReservation("o1", "p1", 4))).isEqualTo(StockService.RESERVED);
+        assertThat(store.apply(owner, new StockReservation("o1", "p1", 4))).isEqualTo(StockService.DUPLICATE);
+        assertThat(store.getStock("p1")).isEqualTo(6);
+
+        store.release(List.of(owner));
+        assertThatThrownBy(() -> store.apply(owner, new StockReservation("o2", "p1", 1)))
+                .isInstanceOf(IllegalStateException.class);
+
+        store.load(List.of(owner), PARTITIONS);
+        assertThat(store.apply(owner, new StockReservation("o2", "p1", 7))).isEqualTo(StockService.INSUFFICIENT_STOCK);
+        assertThat(store.getStock("p1")).isEqualTo(6);
+        assertThat(snapshots.current()).containsEntry("p1", 6);
+    }
+
+    @Test
+    void failedItemCompensatesTheOtherItemsOfTheOrder() {
+        store.load(allPartitions(), PARTITIONS);
+        Map<String, Integer> items = Map.of("p1", 3, "p2", 4, "p3", 1);
+        StockReservation p1 = new StockReservation("o1", "p1", 3, StockReservation.RESERVE, items);
+        StockReservation p3 = new StockReservation("o1", "p3", 1, StockReservation.RESERVE, items);
+
+        assertThat(apply(p1)).isEqualTo(StockService.RESERVED);
+        assertThat(apply(p3)).isEqualTo(StockService.INSUFFICIENT_STOCK);
+
+        List<StockReservation> compensations = StockRepartitioner.compensationsFor(p3);
+        assertThat(compensations).extracting(StockReservation::getProductId).containsExactlyInAnyOrder("p1", "p2");
+        // a compensação de p2 chega antes da reserva dele, que então é descartada
+        compensations.forEach(this::apply);
+        compensations.forEach(this::apply);
+        assertThat(apply(new StockReservation("o1", "p2", 4, StockReservation.RESERVE, items)))
+                .isEqualTo(PartitionedStockStore.CANCELLED);
+        assertThat(apply(p1)).isEqualTo(StockService.DUPLICATE);
+
+        assertThat(store.getStock("p1")).isEqualTo(10);
+        assertThat(store.getStock("p2")).isEqualTo(5);
+        assertThat(snapshots.current()).containsEntry("p1", 10).containsEntry("p2", 5);
+    }
+
+    @Test
+    void adjustmentsAreAppliedOnceByTheOwner() {
+        store.load(allPartitions(), PARTITIONS);
+        StockReservation adjustment = new StockReservation("ajuste-1", "p3", 7, StockReservation.ADJUST, null);
+
+        assertThat(apply(adjustment)).isEqualTo(PartitionedStockStore.ADJUSTED);
+        assertThat(apply(adjustment)).isEqualTo(StockService.DUPLICATE);
+        assertThat(store.getStock("p3")).isEqualTo(7);
+    }
+
+
+    private String apply(StockReservation reservation) {
+        return store.apply(PartitionedStockStore.partitionFor(reservation.getProductId(), PARTITIONS), reservation);
+    }
+
+    private static List<Integer> allPartitions() {
+        return IntStream.range(0, PARTITIONS).boxed().toList();
+    }
+
+    private static PartitionedStockStore newStore(StockSnapshotPublisher snapshots) {
+        OrderDeduplicator dedup = new OrderDeduplicator(true, 1000, 0.001, 60_000, 1000);
+        StaticListableBeanFactory noBeans = new StaticListableBeanFactory();
+        ObjectProvider<StockChangelog> noChangelog = noBeans.getBeanProvider(StockChangelog.class);
+        StockService stockService = new StockService(dedup, noChangelog, noBeans.getBeanProvider(ReservationHolds.class),
+                snapshots, new CatalogLoader("", 0, 1024));
+        return new PartitionedStockStore(stockService, dedup, noChangelog, snapshots);
+    }
+}
@@ -0,0 +1,80 @@
+package com.rairai.consumer_kafka_1.service;
+
+import com.rairai.consumer_kafka_1.catalog.CatalogLoader;
+import com.rairai.consumer_kafka_1.changelog.StockChangelog;
+import com.rairai.consumer_kafka_1.dedup.OrderDeduplicator;
+import com.rairai.consumer_kafka_1.hold.ReservationHolds;
+import com.rairai.consumer_kafka_1.model.Order;
+import com.rairai.consumer_kafka_1.model.OrderItem;
+import com.rairai.consumer_kafka_1.snapshot.StockSnapshotPublisher;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StockServiceTest {
+
+    private final StockSnapshotPublisher snapshots = new StockSnapshotPublisher(16);
+    private final StockService stockService = newService(snapshots);
+
+    @Test
+    void adjustAppliesTheBatchAsOneVersion() {
+        long before = snapshots.current().version();
+
+        assertThat(stockService.adjust(Map.of("p1", 5, "p2", -5))).containsEntry("p1", 15).containsEntry("p2", 0);
+        assertThat(snapshots.current().version()).isEqualTo(before + 1);
+    }
+
+    @Test
+    void adjustRejectsNegativeStockAndNullQuantitiesWithoutApplyingAnything() {
+        long before = snapshots.current().version();
+        Map<String, Integer> nullQuantity = new HashMap<>();
+        nullQuantity.put("p1", 1);
+        nullQuantity.put("p2", null);
+
+        assertThatThrownBy(() -> stockService.adjust(Map.of("p1", 1, "p2", -6)))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("p2");
+        assertThatThrownBy(() -> stockService.adjust(nullQuantity)).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(stockService.getStock("p1")).isEqualTo(10);
+        assertThat(stockService.getStock("p2")).isEqualTo(5);
+        assertThat(snapshots.current().version()).isEqualTo(before);
+    }
+
+    @Test
+    void redeliveryOfACancelledHoldIsReleasedNotDuplicate() {
+        ReservationHolds holds = new ReservationHolds(60_000, 100, 64);
+        try {
+            StaticListableBeanFactory beans = new StaticListableBeanFactory();
+            beans.addBean("holds", holds);
+            StockService service = new StockService(new OrderDeduplicator(true, 1000, 0.001, 60_000, 1000),
+                    beans.getBeanProvider(StockChangelog.class), beans.getBeanProvider(ReservationHolds.class),
+                    new StockSnapshotPublisher(16), new CatalogLoader("", 0, 1024));
+            Order order = new Order("hold-1", "c", List.of(new OrderItem("p1", 4, 1.0)), 4.0, Instant.now());
+
+            assertThat(service.reserveStatus(order, 0)).isEqualTo(StockService.RESERVED);
+            assertThat(service.reserveStatus(order, 0)).isEqualTo(StockService.DUPLICATE);
+            assertThat(service.cancel("hold-1")).isTrue();
+
+            assertThat(service.reserveStatus(order, 0)).isEqualTo(StockService.RELEASED);
+            assertThat(service.reserve(order, 0)).isFalse();
+            assertThat(service.getStock("p1")).isEqualTo(10);
+        } finally {
+            holds.shutdown();
+        }
+    }
+
+
+    private static StockService newService(StockSnapshotPublisher snapshots) {
+        OrderDeduplicator dedup = new OrderDeduplicator(true, 1000, 0.001, 60_000, 1000);
+        StaticListableBeanFactory noBeans = new StaticListableBeanFactory();
+        return new StockService(dedup, noBeans.getBeanProvider(StockChangelog.class),
+                noBeans.getBeanProvider(ReservationHolds.class), snapshots, new CatalogLoader("", 0, 1024));
+    }
+}
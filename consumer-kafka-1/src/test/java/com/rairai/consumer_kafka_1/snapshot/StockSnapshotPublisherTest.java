@@ -0,0 +1,63 @@
+package com.rairai.consumer_kafka_1.snapshot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StockSnapshotPublisherTest {
+
+    @Test
+    void publishedVersionsAreImmutable() {
+        StockSnapshotPublisher publisher = new StockSnapshotPublisher(16);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            expected.put("p" + i, i);
+        }
+        publisher.publish(expected);
+        StockSnapshot before = publisher.current();
+
+        publisher.publish(Map.of("p1", 0, "novo", 7));
+
+        assertThat(before).isEqualTo(expected).containsEntry("p1", 1).doesNotContainKey("novo");
+        assertThat(publisher.current()).hasSize(5_001).containsEntry("p1", 0).containsEntry("novo", 7)
+                .containsEntry("p4999", 4999);
+        assertThat(publisher.current().version()).isEqualTo(before.version() + 1);
+    }
+
+    @Test
+    void deltaCollapsesChangesAndResetsWhenHistoryIsGone() {
+        StockSnapshotPublisher publisher = new StockSnapshotPublisher(4);
+        publisher.publish(Map.of("p1", 10, "p2", 5));
+        long seen = publisher.current().version();
+        publisher.publish("p1", 9);
+        publisher.publish("p1", 8);
+
+        StockSnapshotPublisher.Delta delta = publisher.changesSince(seen);
+        assertThat(delta.reset()).isFalse();
+        assertThat(delta.changes()).containsExactly(Map.entry("p1", 8));
+        assertThat(publisher.changesSince(delta.toVersion()).changes()).isEmpty();
+
+        for (int i = 0; i < 4; i++) {
+            publisher.publish("p2", i);
+        }
+        StockSnapshotPublisher.Delta stale = publisher.changesSince(seen);
+        assertThat(stale.reset()).isTrue();
+        assertThat(stale.changes()).containsEntry("p1", 8).containsEntry("p2", 3);
+    }
+
+    @Test
+    void deltaHistoryKeepsItsOwnCopyOfTheChanges() {
+        StockSnapshotPublisher publisher = new StockSnapshotPublisher(4);
+        long seen = publisher.current().version();
+        Map<String, Integer> changes = new HashMap<>(Map.of("p1", 3));
+        publisher.publish(changes);
+
+        changes.put("p1", 99);
+        changes.put("p2", 1);
+
+        assertThat(publisher.changesSince(seen).changes()).containsExactly(Map.entry("p1", 3));
+    }
+}
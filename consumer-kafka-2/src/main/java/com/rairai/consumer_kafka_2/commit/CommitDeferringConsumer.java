@@ -0,0 +1,291 @@
+package com.rairai.consumer_kafka_2.commit;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Intercepta os commits feitos pelo container e os acumula por partição. Tudo aqui roda na thread do consumer,
+ * exceto a conclusão do {@link DurabilityBarrier}, que só escreve nos mapas concorrentes lidos no próximo poll.
+ * Offsets acima do piso do {@link CommitHold} ficam em {@code held} e são reavaliados antes de cada poll.
+ */
+final class CommitDeferringConsumer implements InvocationHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommitDeferringConsumer.class);
+
+    private final Consumer<?, ?> delegate;
+    private final OffsetCommitManager manager;
+
+    private final Map<TopicPartition, OffsetAndMetadata> pending = new HashMap<>();
+    private final Map<TopicPartition, Long> batchEnds = new HashMap<>();
+    private final Map<TopicPartition, OffsetAndMetadata> durable = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, OffsetAndMetadata> notDurable = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, OffsetAndMetadata> held = new HashMap<>();
+    private final Map<TopicPartition, Long> committed = new HashMap<>();
+
+    private OffsetCommitCallback callback;
+    private long lastCommitNanos = System.nanoTime();
+
+    CommitDeferringConsumer(Consumer<?, ?> delegate, OffsetCommitManager manager) {
+        this.delegate = delegate;
+        this.manager = manager;
+    }
+
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "commitSync" -> {
+                if (args != null && args[0] instanceof Map<?, ?> offsets) {
+                    defer((Map<TopicPartition, OffsetAndMetadata>) offsets);
+                    return null;
+                }
+            }
+            case "commitAsync" -> {
+                if (args != null && args.length == 2 && args[0] instanceof Map<?, ?> offsets) {
+                    callback = (OffsetCommitCallback) args[1];
+                    defer((Map<TopicPartition, OffsetAndMetadata>) offsets);
+                    return null;
+                }
+            }
+            case "poll" -> {
+                beforePoll();
+                ConsumerRecords<?, ?> records = (ConsumerRecords<?, ?>) call(method, args);
+                afterPoll(records);
+                return records;
+            }
+            case "close" -> {
+                flush(new HashSet<>(pendingPartitions()));
+                return call(method, args);
+            }
+            case "equals" -> {
+                return proxy == args[0];
+            }
+            case "hashCode" -> {
+                return System.identityHashCode(proxy);
+            }
+            case "toString" -> {
+                return "CommitDeferringConsumer(" + delegate + ")";
+            }
+            default -> {
+            }
+        }
+        return call(method, args);
+    }
+
+
+    void flush(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition tp : partitions) {
+            batchEnds.remove(tp);
+            merge(offsets, tp, durable.remove(tp));
+            merge(offsets, tp, notDurable.remove(tp));
+            merge(offsets, tp, pending.remove(tp));
+            merge(offsets, tp, held.remove(tp));
+        }
+        offsets = clamp(offsets);
+        // o que ainda estava retido é relido pelo próximo dono a partir do piso
+        held.keySet().removeAll(partitions);
+        committed.keySet().removeAll(partitions);
+        if (offsets.isEmpty()) {
+            return;
+        }
+        try {
+            if (OffsetCommitManager.MODE_DURABLE.equals(manager.mode())) {
+                manager.barrier().flush().get(manager.flushTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            }
+            delegate.commitSync(offsets, manager.flushTimeout());
+            manager.onCommitted();
+            lastCommitNanos = System.nanoTime();
+            logger.info("Offsets confirmados na revogação/fechamento: {}", offsets);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Flush de offsets interrompido; os registros serão reprocessados pelo próximo dono: {}", offsets);
+        } catch (Exception e) {
+            logger.warn("Falha ao confirmar offsets na revogação; os registros serão reprocessados pelo próximo dono: {}. erro={}",
+                    offsets, e.getMessage());
+        }
+    }
+
+    void discard(Collection<TopicPartition> partitions) {
+        for (TopicPartition tp : partitions) {
+            batchEnds.remove(tp);
+            durable.remove(tp);
+            notDurable.remove(tp);
+            pending.remove(tp);
+            held.remove(tp);
+            committed.remove(tp);
+        }
+    }
+
+
+    private void defer(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        manager.onRequested();
+        offsets.forEach((tp, offset) -> merge(pending, tp, offset));
+        if (OffsetCommitManager.MODE_TIME.equals(manager.mode())) {
+            commitIfIntervalElapsed();
+        } else if (batchCompleted()) {
+            batchEnds.clear();
+            release();
+        }
+    }
+
+    private void beforePoll() {
+        if (!notDurable.isEmpty()) {
+            drainInto(notDurable, pending);
+        }
+        if (!durable.isEmpty()) {
+            Map<TopicPartition, OffsetAndMetadata> ready = new HashMap<>();
+            drainInto(durable, ready);
+            commitAsync(ready);
+        }
+        if (!held.isEmpty()) {
+            Map<TopicPartition, OffsetAndMetadata> released = new HashMap<>();
+            drainInto(held, released);
+            commitAsync(released);
+        }
+        if (OffsetCommitManager.MODE_TIME.equals(manager.mode())) {
+            commitIfIntervalElapsed();
+        }
+    }
+
+    private void afterPoll(ConsumerRecords<?, ?> records) {
+        if (records == null || records.isEmpty()) {
+            return;
+        }
+        // um lote novo chegou antes do anterior terminar (ex.: partição em backoff de retry): confirma o progresso parcial
+        if (!OffsetCommitManager.MODE_TIME.equals(manager.mode()) && !pending.isEmpty()) {
+            release();
+        }
+        batchEnds.clear();
+        for (TopicPartition tp : records.partitions()) {
+            var partitionRecords = records.records(tp);
+            batchEnds.put(tp, partitionRecords.get(partitionRecords.size() - 1).offset() + 1);
+        }
+    }
+
+    private boolean batchCompleted() {
+        if (pending.isEmpty()) {
+            return false;
+        }
+        for (Map.Entry<TopicPartition, Long> end : batchEnds.entrySet()) {
+            OffsetAndMetadata offset = pending.get(end.getKey());
+            if (offset == null || offset.offset() < end.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void commitIfIntervalElapsed() {
+        if (!pending.isEmpty() && System.nanoTime() - lastCommitNanos >= manager.interval().toNanos()) {
+            release();
+        }
+    }
+
+    private void release() {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>(pending);
+        pending.clear();
+        if (!OffsetCommitManager.MODE_DURABLE.equals(manager.mode())) {
+            commitAsync(offsets);
+            return;
+        }
+        manager.barrier().flush().whenComplete((r, ex) -> {
+            if (ex == null) {
+                offsets.forEach((tp, offset) -> merge(durable, tp, offset));
+            } else {
+                logger.warn("Estado local não ficou durável; commit adiado. offsets={}, erro={}", offsets, ex.getMessage());
+                offsets.forEach((tp, offset) -> merge(notDurable, tp, offset));
+            }
+        });
+    }
+
+    private void commitAsync(Map<TopicPartition, OffsetAndMetadata> requested) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = clamp(requested);
+        if (offsets.isEmpty()) {
+            return;
+        }
+        lastCommitNanos = System.nanoTime();
+        OffsetCommitCallback containerCallback = callback;
+        delegate.commitAsync(offsets, (committed, ex) -> {
+            if (ex != null) {
+                // o próximo commit da partição cobre este; na revogação o flush é síncrono
+                logger.warn("Commit assíncrono de offsets falhou: {}. erro={}", offsets, ex.getMessage());
+            } else {
+                manager.onCommitted();
+            }
+            if (containerCallback != null) {
+                containerCallback.onComplete(committed, ex);
+            }
+        });
+    }
+
+    /**
+     * Corta cada offset no piso do {@link CommitHold}; o pedido original fica em {@code held}. O piso só é confirmado
+     * quando avança, para não repetir o mesmo commit a cada poll enquanto a retenção durar.
+     */
+    private Map<TopicPartition, OffsetAndMetadata> clamp(Map<TopicPartition, OffsetAndMetadata> offsets) {
+        Map<TopicPartition, OffsetAndMetadata> allowed = new HashMap<>();
+        offsets.forEach((tp, offset) -> {
+            long floor = manager.hold().floor(tp);
+            if (offset.offset() <= floor) {
+                allowed.put(tp, offset);
+                return;
+            }
+            merge(held, tp, offset);
+            Long last = committed.get(tp);
+            if (last == null || floor > last) {
+                allowed.put(tp, new OffsetAndMetadata(floor, offset.metadata()));
+            }
+        });
+        allowed.forEach((tp, offset) -> committed.merge(tp, offset.offset(), Math::max));
+        return allowed;
+    }
+
+    private Set<TopicPartition> pendingPartitions() {
+        Set<TopicPartition> partitions = new HashSet<>(pending.keySet());
+        partitions.addAll(held.keySet());
+        partitions.addAll(durable.keySet());
+        partitions.addAll(notDurable.keySet());
+        return partitions;
+    }
+
+    private Object call(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+
+    private static void drainInto(Map<TopicPartition, OffsetAndMetadata> source,
+                                  Map<TopicPartition, OffsetAndMetadata> target) {
+        for (TopicPartition tp : Set.copyOf(source.keySet())) {
+            merge(target, tp, source.remove(tp));
+        }
+    }
+
+    private static void merge(Map<TopicPartition, OffsetAndMetadata> target, TopicPartition tp, OffsetAndMetadata offset) {
+        if (offset != null) {
+            target.merge(tp, offset, (a, b) -> a.offset() >= b.offset() ? a : b);
+        }
+    }
+}
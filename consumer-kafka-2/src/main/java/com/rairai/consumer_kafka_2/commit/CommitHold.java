@@ -0,0 +1,18 @@
+package com.rairai.consumer_kafka_2.commit;
+
+import org.apache.kafka.common.TopicPartition;
+
+
+/**
+ * Retém offsets de registros já processados cujo efeito ainda não foi concluído (ex.: pedidos numa janela de
+ * consolidação aberta). O {@link OffsetCommitManager} nunca confirma uma partição além de {@link #floor(TopicPartition)};
+ * o restante fica pendente e é reavaliado a cada poll.
+ */
+@FunctionalInterface
+public interface CommitHold {
+
+    CommitHold NONE = partition -> Long.MAX_VALUE;
+
+    /** Menor offset retido da partição, ou {@link Long#MAX_VALUE} quando nada está retido. */
+    long floor(TopicPartition partition);
+}
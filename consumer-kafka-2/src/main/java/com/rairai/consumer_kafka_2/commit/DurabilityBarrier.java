@@ -0,0 +1,16 @@
+package com.rairai.consumer_kafka_2.commit;
+
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Ponto de sincronização com o estado local: o future completa quando tudo que foi aplicado até a chamada está durável.
+ * Usado pelo {@link OffsetCommitManager} no modo {@code durable} antes de confirmar offsets.
+ */
+@FunctionalInterface
+public interface DurabilityBarrier {
+
+    DurabilityBarrier NONE = () -> CompletableFuture.completedFuture(null);
+
+    CompletableFuture<Void> flush();
+}
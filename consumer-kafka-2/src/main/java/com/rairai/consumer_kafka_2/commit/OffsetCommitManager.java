@@ -0,0 +1,142 @@
+package com.rairai.consumer_kafka_2.commit;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Controla quando os offsets chegam ao group coordinator. O container continua rastreando os acks fora de ordem e
+ * só entrega offsets contíguos já processados; cada consumer é embrulhado por um {@link CommitDeferringConsumer}
+ * que guarda o maior offset contíguo por partição e decide quando confirmá-lo:
+ * <ul>
+ *     <li>{@code batch}: um commit assíncrono quando o lote do último poll termina;</li>
+ *     <li>{@code time}: um commit assíncrono a cada {@code app.commit.interval-ms};</li>
+ *     <li>{@code durable}: ao fim do lote, espera o {@link DurabilityBarrier} e só então confirma.</li>
+ * </ul>
+ * Na revogação de partições e no close os offsets pendentes são confirmados de forma síncrona. Em todos os modos os
+ * {@link CommitHold} limitam o offset confirmado de cada partição ao menor registro ainda retido por algum deles.
+ */
+@Component
+public class OffsetCommitManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffsetCommitManager.class);
+
+    public static final String MODE_BATCH = "batch";
+    public static final String MODE_TIME = "time";
+    public static final String MODE_DURABLE = "durable";
+
+    private final String mode;
+    private final Duration interval;
+    private final Duration flushTimeout;
+    private final DurabilityBarrier barrier;
+    private final CommitHold hold;
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+
+    public OffsetCommitManager(@Value("${app.commit.mode:batch}") String mode,
+                               @Value("${app.commit.interval-ms:1000}") long intervalMs,
+                               @Value("${app.commit.flush-timeout-ms:10000}") long flushTimeoutMs,
+                               ObjectProvider<DurabilityBarrier> barrier,
+                               ObjectProvider<CommitHold> hold) {
+        this.mode = switch (mode.toLowerCase()) {
+            case MODE_BATCH, MODE_TIME, MODE_DURABLE -> mode.toLowerCase();
+            default -> throw new IllegalArgumentException("app.commit.mode inválido: " + mode);
+        };
+        this.interval = Duration.ofMillis(intervalMs);
+        this.flushTimeout = Duration.ofMillis(flushTimeoutMs);
+        this.barrier = barrier.getIfAvailable(() -> DurabilityBarrier.NONE);
+        this.hold = compose(hold.orderedStream().toList());
+        logger.info("Commit de offsets configurado: mode={}, intervalMs={}", this.mode, intervalMs);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public <K, V> Consumer<K, V> wrap(Consumer<K, V> consumer) {
+        return (Consumer<K, V>) Proxy.newProxyInstance(Consumer.class.getClassLoader(),
+                new Class<?>[]{Consumer.class}, new CommitDeferringConsumer(consumer, this));
+    }
+
+    /** Confirma de forma síncrona o que estiver pendente para as partições revogadas. Chamar na thread do consumer. */
+    public void flush(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        CommitDeferringConsumer deferring = unwrap(consumer);
+        if (deferring != null) {
+            deferring.flush(partitions);
+        }
+    }
+
+    /** Descarta o estado de partições perdidas, que já podem pertencer a outro membro do grupo. */
+    public void discard(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        CommitDeferringConsumer deferring = unwrap(consumer);
+        if (deferring != null) {
+            deferring.discard(partitions);
+        }
+    }
+
+    public long requestedCommits() {
+        return requested.get();
+    }
+
+    public long committedCommits() {
+        return committed.get();
+    }
+
+
+    String mode() {
+        return mode;
+    }
+
+    Duration interval() {
+        return interval;
+    }
+
+    Duration flushTimeout() {
+        return flushTimeout;
+    }
+
+    DurabilityBarrier barrier() {
+        return barrier;
+    }
+
+    CommitHold hold() {
+        return hold;
+    }
+
+    void onRequested() {
+        requested.incrementAndGet();
+    }
+
+    void onCommitted() {
+        committed.incrementAndGet();
+    }
+
+    /** Consolidação e espera pelo resultado da reserva podem reter o mesmo tópico: vale o menor piso. */
+    private static CommitHold compose(List<CommitHold> holds) {
+        if (holds.isEmpty()) {
+            return CommitHold.NONE;
+        }
+        if (holds.size() == 1) {
+            return holds.get(0);
+        }
+        return partition -> holds.stream().mapToLong(h -> h.floor(partition)).min().orElse(Long.MAX_VALUE);
+    }
+
+    private static CommitDeferringConsumer unwrap(Consumer<?, ?> consumer) {
+        if (consumer != null && Proxy.isProxyClass(consumer.getClass())
+                && Proxy.getInvocationHandler(consumer) instanceof CommitDeferringConsumer deferring) {
+            return deferring;
+        }
+        return null;
+    }
+}
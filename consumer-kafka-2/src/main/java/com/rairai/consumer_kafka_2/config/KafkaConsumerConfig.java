@@ -1,19 +1,31 @@
 package com.rairai.consumer_kafka_2.config;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
-import org.springframework.kafka.support.serializer.JsonDeserializer;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
 
+import com.rairai.consumer_kafka_2.commit.OffsetCommitManager;
+import com.rairai.consumer_kafka_2.consolidation.InvoiceConsolidator;
+import com.rairai.consumer_kafka_2.dispatch.KeyOrderedDispatcher;
 import com.rairai.consumer_kafka_2.model.Order;
+import com.rairai.consumer_kafka_2.outcome.ReservationGate;
 
 
 @Configuration
@@ -31,9 +43,21 @@ public class KafkaConsumerConfig {
     @Value("${spring.listener.concurrency:3}")
     private int concurrency;
 
+    @Value("${spring.kafka.consumer.max-poll-records:500}")
+    private int maxPollRecords;
+
+    @Value("${app.listener.poll-timeout-ms:3000}")
+    private long pollTimeoutMs;
+
+    @Value("${app.dispatch.revoke-timeout-ms:10000}")
+    private long revokeTimeoutMs;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
     @Bean
-    public ConsumerFactory<String, Order> consumerFactory() {
-        JsonDeserializer<Order> deserializer = new JsonDeserializer<>(Order.class);
+    public ConsumerFactory<String, Order> consumerFactory(OffsetCommitManager commitManager) {
+        JacksonJsonDeserializer<Order> deserializer = new JacksonJsonDeserializer<>(Order.class);
         deserializer.addTrustedPackages("*");
 
         Map<String, Object> props = new HashMap<>();
@@ -41,17 +65,65 @@ public class KafkaConsumerConfig {
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, autoOffsetReset);
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
 
-        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), deserializer);
+        // falhas de desserialização viram DeserializationException e seguem direto para a DLT
+        DefaultKafkaConsumerFactory<String, Order> factory = new DefaultKafkaConsumerFactory<>(props,
+                new StringDeserializer(), new ErrorHandlingDeserializer<>(deserializer));
+        factory.addPostProcessor(commitManager::wrap);
+        return factory;
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, Order> kafkaListenerContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, Order> kafkaListenerContainerFactory(
+            ConsumerFactory<String, Order> consumerFactory, KeyOrderedDispatcher dispatcher,
+            OffsetCommitManager commitManager, ObjectProvider<InvoiceConsolidator> consolidator,
+            ObjectProvider<ReservationGate> gate) {
         ConcurrentKafkaListenerContainerFactory<String, Order> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(consumerFactory());
+        factory.setConsumerFactory(consumerFactory);
         factory.setConcurrency(concurrency);
-        factory.getContainerProperties().setPollTimeout(3000);
+        factory.getContainerProperties().setPollTimeout(pollTimeoutMs);
+        useVirtualThreads(factory, virtualThreads, "invoice-listener-");
+        factory.getContainerProperties().setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
+
+            @Override
+            public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                dispatcher.awaitPartitions(partitions, Duration.ofMillis(revokeTimeoutMs));
+            }
+
+            @Override
+            public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                commitManager.flush(consumer, partitions);
+                consolidator.ifAvailable(c -> c.release(partitions));
+                gate.ifAvailable(g -> g.release(partitions));
+            }
+
+            @Override
+            public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                commitManager.discard(consumer, partitions);
+                consolidator.ifAvailable(c -> c.release(partitions));
+                gate.ifAvailable(g -> g.release(partitions));
+            }
+
+            @Override
+            public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                consolidator.ifAvailable(InvoiceConsolidator::onAssigned);
+            }
+        });
         return factory;
     }
+
+    /**
+     * Com {@code spring.threads.virtual.enabled} cada consumer do container roda numa virtual thread: o poll e o
+     * processamento no modo {@code partition}, que acontece na própria thread do consumer, podem bloquear no broker, em
+     * disco ou num lock sem prender uma thread de plataforma.
+     */
+    static void useVirtualThreads(ConcurrentKafkaListenerContainerFactory<?, ?> factory, boolean enabled, String threadPrefix) {
+        if (enabled) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadPrefix);
+            executor.setVirtualThreads(true);
+            factory.getContainerProperties().setListenerTaskExecutor(executor);
+        }
+    }
 }
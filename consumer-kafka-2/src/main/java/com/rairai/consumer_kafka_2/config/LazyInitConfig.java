@@ -0,0 +1,27 @@
+package com.rairai.consumer_kafka_2.config;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.util.ReflectionUtils;
+
+
+/**
+ * Com {@code spring.main.lazy-initialization=true} (imagem fast-start) as classes com {@code @KafkaListener}
+ * continuam sendo criadas na subida, senão os listeners nem seriam registrados; o que elas usam (serviço de NF,
+ * despacho, controle de fluxo) sobe junto. Ficam para o primeiro uso só os beans fora desse caminho, como controllers
+ * REST e o replay da DLT.
+ */
+@Configuration
+public class LazyInitConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter kafkaListenersAreEager() {
+        return (beanName, definition, type) -> type != null && (AnnotatedElementUtils.hasAnnotation(type, KafkaListener.class)
+                || !MethodIntrospector.selectMethods(type, (ReflectionUtils.MethodFilter) method ->
+                        AnnotatedElementUtils.hasAnnotation(method, KafkaListener.class)).isEmpty());
+    }
+}
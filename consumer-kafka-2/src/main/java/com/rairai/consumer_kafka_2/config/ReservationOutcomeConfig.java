@@ -0,0 +1,105 @@
+package com.rairai.consumer_kafka_2.config;
+
+import com.rairai.consumer_kafka_2.model.ReservationOutcome;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.IsolationLevel;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+
+/**
+ * Consumer dos resultados de reserva do modo {@code app.invoice.outcomes.enabled=true}. Cada instância lê o tópico
+ * inteiro num grupo próprio, sem confirmar offsets: o pedido pode cair em qualquer instância, e na subida o listener
+ * volta no tempo ({@code window-ms}, ou antes se houver pedido pendente mais antigo) em vez de retomar de um offset. Lê com {@code read_committed} para não enxergar
+ * resultados de transações abortadas no modo transacional do consumer-kafka-1.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.invoice.outcomes.enabled", havingValue = "true")
+public class ReservationOutcomeConfig {
+
+    @Value("${spring.kafka.bootstrap-servers:localhost:9092,localhost:9093,localhost:9094}")
+    private String bootstrapServers;
+
+    @Value("${spring.kafka.consumer.group-id:consumer-group-2}")
+    private String groupId;
+
+    @Value("${spring.kafka.consumer.max-poll-records:500}")
+    private int maxPollRecords;
+
+    @Value("${app.invoice.outcomes.topic:pedidos-stock-resultados}")
+    private String topic;
+
+    @Value("${app.invoice.outcomes.parking-topic:pedidos-invoice-sem-resultado}")
+    private String parkingTopic;
+
+    @Value("${app.retry.partitions:3}")
+    private int partitions;
+
+    @Value("${app.retry.replication-factor:1}")
+    private int replicationFactor;
+
+    @Value("${app.listener.poll-timeout-ms:3000}")
+    private long pollTimeoutMs;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Bean
+    public NewTopic reservationOutcomesTopic() {
+        return TopicBuilder.name(topic)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .build();
+    }
+
+    /** Pedidos que não receberam o resultado da reserva a tempo; reprocessados por {@code POST /api/reservas/sem-resultado/replay}. */
+    @Bean
+    public NewTopic reservationParkingTopic() {
+        return TopicBuilder.name(parkingTopic)
+                .partitions(partitions)
+                .replicas(replicationFactor)
+                .build();
+    }
+
+    @Bean
+    public ConsumerFactory<String, ReservationOutcome> outcomeConsumerFactory() {
+        JacksonJsonDeserializer<ReservationOutcome> deserializer = new JacksonJsonDeserializer<>(ReservationOutcome.class, false);
+        deserializer.addTrustedPackages("*");
+
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId + "-resultados-" + UUID.randomUUID());
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, IsolationLevel.READ_COMMITTED.toString());
+
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new ErrorHandlingDeserializer<>(deserializer));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, ReservationOutcome> outcomeContainerFactory(
+            @Qualifier("outcomeConsumerFactory") ConsumerFactory<String, ReservationOutcome> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<String, ReservationOutcome> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.getContainerProperties().setPollTimeout(pollTimeoutMs);
+        KafkaConsumerConfig.useVirtualThreads(factory, virtualThreads, "invoice-outcome-listener-");
+        return factory;
+    }
+}
@@ -0,0 +1,14 @@
+package com.rairai.consumer_kafka_2.consolidation;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * Registro do {@link WindowLedger} para uma janela já faturada: as NFs emitidas e todos os pedidos que elas cobrem.
+ * Uma janela pode fechar mais de uma vez (pedido atrasado, rebalance); cada fechamento acumula sobre o anterior.
+ */
+public record ClosedWindow(String windowId, String customer, Instant windowStart, Instant windowEnd,
+                           List<String> invoiceIds, Set<String> orderIds) {
+}
@@ -0,0 +1,332 @@
+package com.rairai.consumer_kafka_2.consolidation;
+
+import com.rairai.consumer_kafka_2.commit.CommitHold;
+import com.rairai.consumer_kafka_2.model.Invoice;
+import com.rairai.consumer_kafka_2.model.Order;
+import com.rairai.consumer_kafka_2.service.InvoiceService;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Consolidação de NFs por cliente ({@code app.invoice.consolidation.enabled=true}). Pedidos dos clientes configurados
+ * entram numa janela fixa de {@code window-ms} alinhada pelo {@code createdAt} do pedido; a janela vira uma única NF
+ * quando junta {@code max-orders} pedidos ou quando o fim dela passou e ela ficou {@code grace-ms} sem receber pedido.
+ * <p>
+ * O estado das janelas abertas não é gravado em lugar nenhum: ele é o próprio tópico. Como {@link CommitHold}, a
+ * consolidação impede que o offset de uma partição passe do primeiro pedido ainda numa janela aberta, então depois de
+ * um restart ou rebalance esses pedidos são relidos e a janela se refaz. Pedidos de janelas já fechadas relidos junto
+ * são descartados pelo {@link WindowLedger}.
+ * <p>
+ * Cada partição de origem tem as próprias janelas: pedidos de um cliente que caem em duas partições saem em NFs
+ * separadas, e cada janela tem um único dono. A retenção vale para a partição inteira, inclusive para os pedidos de
+ * clientes não consolidados que vêm depois do primeiro pedido retido, e dura até {@code window-ms + grace-ms};
+ * {@code max-hold-ms} fecha antes a janela que segura offsets há mais tempo que isso (uma janela pode sair em mais
+ * de uma NF).
+ */
+@Component
+@ConditionalOnProperty(name = "app.invoice.consolidation.enabled", havingValue = "true")
+public class InvoiceConsolidator implements CommitHold {
+
+    private static final Logger logger = LoggerFactory.getLogger(InvoiceConsolidator.class);
+
+    private final InvoiceService invoiceService;
+    private final WindowLedger ledger;
+    private final long windowMs;
+    private final long graceMs;
+    private final long maxHoldMs;
+    private final int maxOrders;
+    private final Set<String> customers;
+    private final ScheduledExecutorService scheduler;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Window> open = new HashMap<>();
+    private final Map<TopicPartition, TreeMap<Long, Integer>> held = new HashMap<>();
+
+    private final LongAdder ordersGrouped = new LongAdder();
+    private final LongAdder invoicesIssued = new LongAdder();
+    private final LongAdder replaysSkipped = new LongAdder();
+    private final LongAdder closeFailures = new LongAdder();
+
+    public InvoiceConsolidator(InvoiceService invoiceService, WindowLedger ledger,
+                               @Value("${app.invoice.consolidation.window-ms:3600000}") long windowMs,
+                               @Value("${app.invoice.consolidation.grace-ms:5000}") long graceMs,
+                               @Value("${app.invoice.consolidation.max-orders:500}") int maxOrders,
+                               @Value("${app.invoice.consolidation.customers:}") List<String> customers,
+                               @Value("${app.invoice.consolidation.tick-ms:1000}") long tickMs,
+                               @Value("${app.invoice.consolidation.max-hold-ms:0}") long maxHoldMs) {
+        this.invoiceService = invoiceService;
+        this.ledger = ledger;
+        this.windowMs = Math.max(1, windowMs);
+        this.graceMs = Math.max(0, graceMs);
+        this.maxHoldMs = Math.max(0, maxHoldMs);
+        this.maxOrders = Math.max(1, maxOrders);
+        this.customers = new LinkedHashSet<>();
+        customers.stream().map(String::trim).filter(c -> !c.isEmpty()).forEach(this.customers::add);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "invoice-consolidation");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        logger.info("Consolidação de NFs habilitada: janela={}ms, grace={}ms, maxPedidos={}, retençãoMáxima={}, clientes={}",
+                this.windowMs, this.graceMs, this.maxOrders, this.maxHoldMs > 0 ? this.maxHoldMs + "ms" : "janela+grace",
+                this.customers.isEmpty() ? "todos" : this.customers);
+    }
+
+
+    /** Se o pedido é faturado por janela em vez de individualmente. */
+    public boolean accepts(Order order) {
+        return order != null && order.getCustomer() != null
+                && (customers.isEmpty() || customers.contains(order.getCustomer()));
+    }
+
+    /**
+     * Coloca o pedido na janela dele e retém o offset do registro até a janela ser faturada. Chamado pelo listener
+     * depois de {@link #accepts(Order)}.
+     */
+    public void add(ConsumerRecord<String, Order> record) {
+        Order order = record.value();
+        long createdAt = order.getCreatedAt() != null ? order.getCreatedAt().toEpochMilli() : System.currentTimeMillis();
+        long start = Math.floorDiv(createdAt, windowMs) * windowMs;
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        String windowId = WindowLedger.windowId(order.getCustomer(), start, record.partition());
+        if (ledger.covers(windowId, order.getId())) {
+            replaysSkipped.increment();
+            logger.atDebug().addKeyValue("orderId", order.getId()).addKeyValue("window", windowId)
+                    .log("Pedido já faturado na janela; reentrega ignorada");
+            return;
+        }
+
+        Window full = null;
+        lock.lock();
+        try {
+            Window window = open.computeIfAbsent(windowId, id -> new Window(id, order.getCustomer(), start));
+            if (window.orders.putIfAbsent(order.getId(), new Entry(order, partition, record.offset())) != null) {
+                return;
+            }
+            hold(partition, record.offset());
+            window.lastAppendMs = System.currentTimeMillis();
+            if (window.firstAppendMs == 0) {
+                window.firstAppendMs = window.lastAppendMs;
+            }
+            ordersGrouped.increment();
+            if (window.orders.size() >= maxOrders) {
+                open.remove(windowId);
+                full = window;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            Window closing = full;
+            scheduler.execute(() -> close(closing));
+        }
+    }
+
+    /**
+     * Tira das janelas abertas os pedidos de partições revogadas ou perdidas, depois do flush dos offsets: o próximo
+     * dono relê esses pedidos a partir do piso confirmado.
+     */
+    public void release(Collection<TopicPartition> partitions) {
+        lock.lock();
+        try {
+            Iterator<Window> windows = open.values().iterator();
+            while (windows.hasNext()) {
+                Window window = windows.next();
+                window.orders.values().removeIf(entry -> partitions.contains(entry.partition()));
+                if (window.orders.isEmpty()) {
+                    windows.remove();
+                }
+            }
+            partitions.forEach(held::remove);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Atualiza as janelas faturadas antes de processar partições recém-atribuídas. */
+    public void onAssigned() {
+        ledger.catchUp();
+    }
+
+    @Override
+    public long floor(TopicPartition partition) {
+        lock.lock();
+        try {
+            TreeMap<Long, Integer> offsets = held.get(partition);
+            return offsets == null || offsets.isEmpty() ? Long.MAX_VALUE : offsets.firstKey();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            List<Window> due = new ArrayList<>();
+            lock.lock();
+            try {
+                Iterator<Window> windows = open.values().iterator();
+                while (windows.hasNext()) {
+                    Window window = windows.next();
+                    boolean ended = window.start + windowMs + graceMs <= now && window.lastAppendMs + graceMs <= now;
+                    boolean heldTooLong = maxHoldMs > 0 && window.firstAppendMs + maxHoldMs <= now;
+                    if (ended || heldTooLong) {
+                        windows.remove();
+                        due.add(window);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            due.forEach(this::close);
+            ledger.prune(Instant.ofEpochMilli(now));
+        } catch (Exception ex) {
+            logger.warn("Falha ao fechar janelas de consolidação: {}", ex.getMessage(), ex);
+        }
+    }
+
+    /** Só a thread do agendador chama: emite a NF, registra a janela e só então libera os offsets. */
+    private void close(Window window) {
+        List<Order> orders = window.orders.values().stream().map(Entry::order).toList();
+        if (orders.isEmpty()) {
+            return;
+        }
+        Instant windowStart = Instant.ofEpochMilli(window.start);
+        Instant windowEnd = Instant.ofEpochMilli(window.start + windowMs);
+        try {
+            Invoice invoice = invoiceService.generateConsolidatedInvoice(window.customer, orders, windowStart, windowEnd);
+            List<String> invoiceIds = invoice != null ? List.of(invoice.getInvoiceId()) : List.of();
+            Set<String> orderIds = new LinkedHashSet<>(window.orders.keySet());
+            ledger.record(new ClosedWindow(window.id, window.customer, windowStart, windowEnd, invoiceIds, orderIds));
+            invoicesIssued.increment();
+            logger.atInfo().addKeyValue("window", window.id).addKeyValue("orders", orders.size())
+                    .addKeyValue("invoiceId", invoice != null ? invoice.getInvoiceId() : null)
+                    .log("Janela de consolidação faturada");
+        } catch (Exception ex) {
+            // a NF é idempotente por pedido: a nova tentativa só regrava a janela e libera os offsets
+            closeFailures.increment();
+            logger.error("Falha ao faturar a janela {}; nova tentativa no próximo ciclo. erro={}", window.id, ex.getMessage(), ex);
+            reopen(window);
+            return;
+        }
+
+        lock.lock();
+        try {
+            window.orders.values().forEach(entry -> unhold(entry.partition(), entry.offset()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reopen(Window window) {
+        lock.lock();
+        try {
+            Window current = open.get(window.id);
+            if (current == null) {
+                open.put(window.id, window);
+            } else {
+                window.orders.forEach((orderId, entry) -> {
+                    if (current.orders.putIfAbsent(orderId, entry) != null) {
+                        unhold(entry.partition(), entry.offset());
+                    }
+                });
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void hold(TopicPartition partition, long offset) {
+        held.computeIfAbsent(partition, tp -> new TreeMap<>()).merge(offset, 1, Integer::sum);
+    }
+
+    private void unhold(TopicPartition partition, long offset) {
+        TreeMap<Long, Integer> offsets = held.get(partition);
+        if (offsets != null) {
+            offsets.computeIfPresent(offset, (o, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+
+    public Map<String, Object> metrics() {
+        long grouped = ordersGrouped.sum();
+        long issued = invoicesIssued.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            metrics.put("openWindows", open.size());
+            metrics.put("openOrders", open.values().stream().mapToInt(window -> window.orders.size()).sum());
+            Map<String, Long> floors = new LinkedHashMap<>();
+            held.forEach((tp, offsets) -> {
+                if (!offsets.isEmpty()) {
+                    floors.put(tp.toString(), offsets.firstKey());
+                }
+            });
+            metrics.put("heldOffsets", floors);
+        } finally {
+            lock.unlock();
+        }
+        metrics.put("ordersGrouped", grouped);
+        metrics.put("invoicesIssued", issued);
+        metrics.put("rendersAvoided", Math.max(0, grouped - issued));
+        metrics.put("replaysSkipped", replaysSkipped.sum());
+        metrics.put("closeFailures", closeFailures.sum());
+        metrics.put("closedWindows", ledger.size());
+        return metrics;
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        // janelas abertas não são faturadas aqui: os offsets delas não foram confirmados e o restart as refaz
+        scheduler.shutdownNow();
+    }
+
+
+    private record Entry(Order order, TopicPartition partition, long offset) {
+    }
+
+    /** Uma instância de janela; acessada sob {@code lock} até sair de {@code open}, depois só pela thread do agendador. */
+    private static final class Window {
+
+        private final String id;
+        private final String customer;
+        private final long start;
+        private final Map<String, Entry> orders = new LinkedHashMap<>();
+        private long firstAppendMs;
+        private long lastAppendMs;
+
+        private Window(String id, String customer, long start) {
+            this.id = id;
+            this.customer = customer;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.rairai.consumer_kafka_2.consolidation;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Tópico compactado com as janelas de consolidação já faturadas, chave {@code <cliente>@<início da janela>/<partição>}.
+ * Os offsets de {@code pedidos} só avançam até o primeiro pedido de uma janela aberta, então depois de um restart ou
+ * rebalance pedidos de janelas já fechadas são relidos junto; {@link #covers(String, String)} evita a segunda NF.
+ * <p>
+ * A partição de origem faz parte da chave porque cada partição tem um único dono por vez: cada chave tem um único
+ * escritor, e o acúmulo em {@link #record(ClosedWindow)} contra o mapa local (atualizado por {@link #catchUp()} a cada
+ * atribuição) nunca sobrescreve o fechamento que outra instância fez para o mesmo cliente a partir de outra partição.
+ * <p>
+ * O tópico usa {@code compact,delete}: cada janela guarda só o último registro e some depois de
+ * {@code app.invoice.consolidation.ledger-retention-ms}, bem depois do maior atraso em que um pedido dela pode ser
+ * relido.
+ */
+@Component
+@ConditionalOnProperty(name = "app.invoice.consolidation.enabled", havingValue = "true")
+public class WindowLedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(WindowLedger.class);
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final KafkaAdmin kafkaAdmin;
+    private final ObjectMapper objectMapper;
+    private final String topic;
+    private final int replicationFactor;
+    private final String bootstrapServers;
+    private final Duration retention;
+    private final Duration timeout;
+
+    private final Map<String, ClosedWindow> closed = new ConcurrentHashMap<>();
+
+    private final ReentrantLock readLock = new ReentrantLock();
+    private KafkaConsumer<String, String> reader;
+
+    public WindowLedger(KafkaTemplate<String, Object> kafkaTemplate, KafkaAdmin kafkaAdmin, ObjectMapper objectMapper,
+                        @Value("${app.invoice.consolidation.ledger-topic:pedidos-invoice-janelas}") String topic,
+                        @Value("${app.retry.replication-factor:1}") int replicationFactor,
+                        @Value("${spring.kafka.bootstrap-servers:localhost:9092,localhost:9093,localhost:9094}") String bootstrapServers,
+                        @Value("${app.invoice.consolidation.ledger-retention-ms:604800000}") long retentionMs,
+                        @Value("${app.invoice.consolidation.ledger-timeout-ms:10000}") long timeoutMs) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.kafkaAdmin = kafkaAdmin;
+        this.objectMapper = objectMapper;
+        this.topic = topic;
+        this.replicationFactor = replicationFactor;
+        this.bootstrapServers = bootstrapServers;
+        this.retention = Duration.ofMillis(retentionMs);
+        this.timeout = Duration.ofMillis(timeoutMs);
+    }
+
+
+    @PostConstruct
+    public void bootstrap() {
+        long start = System.nanoTime();
+        NewTopic ledgerTopic = TopicBuilder.name(topic)
+                .partitions(1)
+                .replicas(replicationFactor)
+                .config(TopicConfig.CLEANUP_POLICY_CONFIG,
+                        TopicConfig.CLEANUP_POLICY_COMPACT + "," + TopicConfig.CLEANUP_POLICY_DELETE)
+                .config(TopicConfig.RETENTION_MS_CONFIG, Long.toString(retention.toMillis()))
+                .build();
+        kafkaAdmin.createOrModifyTopics(ledgerTopic);
+
+        int read = catchUp();
+        logger.info("Janelas faturadas restauradas de {}: registros lidos={}, janelas={}, tempo={}ms",
+                topic, read, closed.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Lê o tópico do ponto atual até o fim. Chamado na subida e a cada atribuição de partições, para enxergar janelas
+     * fechadas pelo dono anterior.
+     */
+    public int catchUp() {
+        readLock.lock();
+        try {
+            if (reader == null) {
+                reader = openReader();
+            }
+            TopicPartition tp = new TopicPartition(topic, 0);
+            long end = reader.endOffsets(List.of(tp)).get(tp);
+            long deadline = System.nanoTime() + timeout.toNanos();
+            int read = 0;
+            while (reader.position(tp) < end) {
+                if (System.nanoTime() > deadline) {
+                    throw new IllegalStateException("Tempo esgotado lendo as janelas faturadas de " + topic + " até o offset " + end);
+                }
+                for (ConsumerRecord<String, String> record : reader.poll(Duration.ofMillis(200))) {
+                    apply(record.key(), record.value());
+                    read++;
+                }
+            }
+            return read;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+
+    /** Chave da janela do cliente que começa em {@code start} para os pedidos de uma partição de origem. */
+    public static String windowId(String customer, long start, int partition) {
+        return customer + "@" + start + "/" + partition;
+    }
+
+    /** Se o pedido já saiu numa NF desta janela. */
+    public boolean covers(String windowId, String orderId) {
+        ClosedWindow window = closed.get(windowId);
+        return window != null && window.orderIds().contains(orderId);
+    }
+
+    /**
+     * Acumula o fechamento sobre o registro anterior da janela e espera a confirmação do broker; só depois disso os
+     * offsets dos pedidos podem ser liberados.
+     */
+    public void record(ClosedWindow window) throws Exception {
+        ClosedWindow merged = closed.get(window.windowId());
+        if (merged != null) {
+            List<String> invoiceIds = new ArrayList<>(merged.invoiceIds());
+            invoiceIds.addAll(window.invoiceIds());
+            Set<String> orderIds = new LinkedHashSet<>(merged.orderIds());
+            orderIds.addAll(window.orderIds());
+            merged = new ClosedWindow(window.windowId(), window.customer(), window.windowStart(), window.windowEnd(),
+                    invoiceIds, orderIds);
+        } else {
+            merged = window;
+        }
+        kafkaTemplate.send(topic, merged.windowId(), merged).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        closed.put(merged.windowId(), merged);
+    }
+
+    /** Esquece janelas mais antigas que a retenção do tópico. */
+    public void prune(Instant now) {
+        Instant limit = now.minus(retention);
+        closed.values().removeIf(window -> window.windowEnd() != null && window.windowEnd().isBefore(limit));
+    }
+
+    public int size() {
+        return closed.size();
+    }
+
+
+    private void apply(String key, String value) {
+        if (key == null) {
+            return;
+        }
+        if (value == null) {
+            closed.remove(key);
+            return;
+        }
+        try {
+            closed.put(key, objectMapper.readValue(value, ClosedWindow.class));
+        } catch (JsonProcessingException e) {
+            logger.warn("Registro inválido em {} ignorado: key={}, erro={}", topic, key, e.getMessage());
+        }
+    }
+
+    private KafkaConsumer<String, String> openReader() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 5000);
+        KafkaConsumer<String, String> consumer = new KafkaConsumer<>(props, new StringDeserializer(), new StringDeserializer());
+        TopicPartition tp = new TopicPartition(topic, 0);
+        consumer.assign(List.of(tp));
+        consumer.seekToBeginning(List.of(tp));
+        return consumer;
+    }
+
+    @PreDestroy
+    public void close() {
+        readLock.lock();
+        try {
+            if (reader != null) {
+                reader.close();
+                reader = null;
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+}
@@ -1,52 +1,144 @@
 package com.rairai.consumer_kafka_2.consumer;
 
+import com.rairai.consumer_kafka_2.consolidation.InvoiceConsolidator;
+import com.rairai.consumer_kafka_2.dispatch.KeyOrderedDispatcher;
+import com.rairai.consumer_kafka_2.flow.FlowController;
+import com.rairai.consumer_kafka_2.logging.OrderLogSampler;
 import com.rairai.consumer_kafka_2.model.Order;
 import com.rairai.consumer_kafka_2.model.Invoice;
+import com.rairai.consumer_kafka_2.outcome.ReservationGate;
 import com.rairai.consumer_kafka_2.service.InvoiceService;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.kafka.annotation.BackOff;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.retrytopic.DltStrategy;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.stereotype.Component;
 
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 
 @Component
 public class InvoiceConsumer {
 
     private static final Logger logger = LoggerFactory.getLogger(InvoiceConsumer.class);
 
+    public static final String LISTENER_ID = "invoice-pedidos";
+
     private final InvoiceService invoiceService;
+    private final KeyOrderedDispatcher dispatcher;
+    private final FlowController flowController;
+    private final InvoiceConsolidator consolidator;
+    private final ReservationGate gate;
+    private final AtomicBoolean firstRecord = new AtomicBoolean();
 
-    public InvoiceConsumer(InvoiceService invoiceService) {
+    public InvoiceConsumer(InvoiceService invoiceService, KeyOrderedDispatcher dispatcher, FlowController flowController,
+                           ObjectProvider<InvoiceConsolidator> consolidator, ObjectProvider<ReservationGate> gate) {
         this.invoiceService = invoiceService;
+        this.dispatcher = dispatcher;
+        this.flowController = flowController;
+        this.consolidator = consolidator.getIfAvailable();
+        this.gate = gate.getIfAvailable();
+        if (this.gate != null) {
+            this.gate.onReserved(this::invoiceReserved);
+        }
+    }
+
+    @RetryableTopic(
+            attempts = "${app.retry.attempts:4}",
+            backOff = @BackOff(delayString = "${app.retry.delay-ms:1000}",
+                    multiplierString = "${app.retry.multiplier:5}",
+                    maxDelayString = "${app.retry.max-delay-ms:60000}"),
+            retryTopicSuffix = "-invoice-retry",
+            dltTopicSuffix = "-invoice-dlt",
+            topicSuffixingStrategy = TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE,
+            dltStrategy = DltStrategy.FAIL_ON_ERROR,
+            numPartitions = "${app.retry.partitions:3}",
+            replicationFactor = "${app.retry.replication-factor:1}",
+            concurrency = "${app.retry.concurrency:1}",
+            kafkaTemplate = "kafkaTemplate")
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = "#{@laneScheduler.topics()}", groupId = "${spring.kafka.consumer.group-id}")
+    public CompletableFuture<Void> consume(ConsumerRecord<String, Order> record) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> future = dispatcher.dispatch(record, () -> process(record));
+        flowController.track(future, start);
+        if (!firstRecord.get()) {
+            future.thenRun(this::logFirstRecord);
+        }
+        return future;
+    }
+
+    /** Tempo da subida até o primeiro registro processado; é o número a comparar entre a imagem normal e a fast-start. */
+    private void logFirstRecord() {
+        if (firstRecord.compareAndSet(false, true)) {
+            logger.info("Primeiro registro processado {} ms após o início da JVM",
+                    ManagementFactory.getRuntimeMXBean().getUptime());
+        }
     }
 
-    @KafkaListener(topics = "pedidos", groupId = "${spring.kafka.consumer.group-id}")
-    public void consume(ConsumerRecord<String, Order> record) {
-        try {
-            String key = record.key();
-            Order order = record.value();
+    @DltHandler
+    public void consumeDlt(ConsumerRecord<String, Order> record) {
+        Header header = record.headers().lastHeader(KafkaHeaders.DLT_EXCEPTION_MESSAGE);
+        String error = header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+        logger.error("Pedido enviado para a DLT após esgotar as tentativas. topic={}, partition={}, offset={}, key={}, erro={}",
+                record.topic(), record.partition(), record.offset(), record.key(), error);
+    }
+
+    private void process(ConsumerRecord<String, Order> record) {
+        Order order = record.value();
+        if (order == null) {
+            logger.warn("Recebido registro com valor nulo. partition={}, offset={}, key={}",
+                    record.partition(), record.offset(), record.key());
+            return;
+        }
 
-            if (order == null) {
-                logger.warn("Recebido registro com valor nulo. partition={}, offset={}, key={}",
-                        record.partition(), record.offset(), key);
+        try (MDC.MDCCloseable ignored = MDC.putCloseable(OrderLogSampler.ORDER_ID, order.getId())) {
+            if (gate != null) {
+                // a NF só sai com o resultado da reserva; até ele chegar o offset do registro fica retido
+                gate.admit(record);
                 return;
             }
+            invoice(record);
 
-            logger.info("Recebendo pedido para emissão de NF. key={}, orderId={}, partition={}, offset={}",
-                    key, order.getId(), record.partition(), record.offset());
+        } catch (RuntimeException ex) {
+            logger.error("Erro ao processar mensagem de NF, encaminhando para retry. topic={}, partition={}, offset={}, error={}",
+                    record.topic(), record.partition(), record.offset(), ex.getMessage(), ex);
+            throw ex;
+        }
+    }
 
-            Invoice invoice = invoiceService.generateInvoice(order);
-            if (invoice != null) {
-                logger.info("NF emitida com sucesso. orderId={}, invoiceId={}, issuedAt={}",
-                        order.getId(), invoice.getInvoiceId(), invoice.getIssuedAt());
-            } else {
-                logger.warn("A geração da NF retornou null para orderId={}. Verifique o serviço.", order.getId());
-            }
+    /** Pedido liberado pelo {@link ReservationGate} na thread do listener de resultados. */
+    private void invoiceReserved(ConsumerRecord<String, Order> record) {
+        try (MDC.MDCCloseable ignored = MDC.putCloseable(OrderLogSampler.ORDER_ID, record.value().getId())) {
+            invoice(record);
+        }
+    }
 
-        } catch (Exception ex) {
-            logger.error("Erro ao processar mensagem de NF. partition={}, offset={}, error={}",
-                    record.partition(), record.offset(), ex.getMessage(), ex);
+    private void invoice(ConsumerRecord<String, Order> record) {
+        Order order = record.value();
+        if (consolidator != null && consolidator.accepts(order)) {
+            // a NF sai quando a janela do cliente fechar; até lá o offset do registro fica retido
+            consolidator.add(record);
+            return;
+        }
+        Invoice invoice = invoiceService.generateInvoice(order, record.partition());
+        if (invoice != null) {
+            logger.atInfo().addKeyValue("orderId", order.getId()).addKeyValue("invoiceId", invoice.getInvoiceId())
+                    .addKeyValue("partition", record.partition()).addKeyValue("offset", record.offset())
+                    .log("NF emitida");
+        } else {
+            logger.warn("A geração da NF retornou null para orderId={}. Verifique o serviço.", order.getId());
         }
     }
 }
@@ -0,0 +1,62 @@
+package com.rairai.consumer_kafka_2.consumer;
+
+import com.rairai.consumer_kafka_2.model.ReservationOutcome;
+import com.rairai.consumer_kafka_2.outcome.ReservationGate;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.AbstractConsumerSeekAware;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+
+
+@Component
+@ConditionalOnProperty(name = "app.invoice.outcomes.enabled", havingValue = "true")
+public class ReservationOutcomeConsumer extends AbstractConsumerSeekAware {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReservationOutcomeConsumer.class);
+
+    public static final String LISTENER_ID = "invoice-resultados";
+
+    private final ReservationGate gate;
+
+    public ReservationOutcomeConsumer(ReservationGate gate) {
+        this.gate = gate;
+        gate.onRewind(this::rewind);
+    }
+
+    @KafkaListener(id = LISTENER_ID, idIsGroup = false, topics = "${app.invoice.outcomes.topic:pedidos-stock-resultados}",
+            containerFactory = "outcomeContainerFactory")
+    public void consume(ConsumerRecord<String, ReservationOutcome> record) {
+        if (record.value() == null) {
+            logger.warn("Resultado de reserva nulo ignorado. partition={}, offset={}, key={}",
+                    record.partition(), record.offset(), record.key());
+            return;
+        }
+        gate.accept(record.value());
+    }
+
+    /**
+     * Os offsets não são confirmados: a cada atribuição o listener relê os resultados desde {@code window-ms} antes de
+     * agora ou do pedido pendente mais antigo.
+     */
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        super.onPartitionsAssigned(assignments, callback);
+        long now = System.currentTimeMillis();
+        long from = gate.outcomesFrom(now);
+        logger.info("Relendo resultados de reserva desde {} ms atrás: partições={}", now - from, assignments.keySet());
+        callback.seekToTimestamp(assignments.keySet(), from);
+    }
+
+    /** Pedido relido mais antigo que os resultados já lidos; a busca roda na thread do consumer no próximo poll. */
+    private void rewind(long from) {
+        logger.info("Pedido anterior aos resultados lidos; relendo resultados de reserva desde {}", Instant.ofEpochMilli(from));
+        seekToTimestamp(from);
+    }
+}
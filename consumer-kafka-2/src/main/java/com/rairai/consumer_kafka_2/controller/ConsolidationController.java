@@ -0,0 +1,27 @@
+package com.rairai.consumer_kafka_2.controller;
+
+import com.rairai.consumer_kafka_2.consolidation.InvoiceConsolidator;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/consolidacao")
+@ConditionalOnProperty(name = "app.invoice.consolidation.enabled", havingValue = "true")
+public class ConsolidationController {
+
+    private final InvoiceConsolidator consolidator;
+
+    public ConsolidationController(InvoiceConsolidator consolidator) {
+        this.consolidator = consolidator;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> consolidacao() {
+        return ResponseEntity.ok(consolidator.metrics());
+    }
+}
@@ -0,0 +1,25 @@
+package com.rairai.consumer_kafka_2.controller;
+
+import com.rairai.consumer_kafka_2.lanes.LaneScheduler;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/filas")
+public class LaneController {
+
+    private final LaneScheduler laneScheduler;
+
+    public LaneController(LaneScheduler laneScheduler) {
+        this.laneScheduler = laneScheduler;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> filas() {
+        return ResponseEntity.ok(laneScheduler.metrics());
+    }
+}
@@ -0,0 +1,38 @@
+package com.rairai.consumer_kafka_2.controller;
+
+import com.rairai.consumer_kafka_2.outcome.ReservationGate;
+import com.rairai.consumer_kafka_2.retry.DltReplayService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/reservas")
+@ConditionalOnProperty(name = "app.invoice.outcomes.enabled", havingValue = "true")
+public class ReservationGateController {
+
+    private final ReservationGate gate;
+    private final DltReplayService replayService;
+
+    public ReservationGateController(ReservationGate gate, DltReplayService replayService) {
+        this.gate = gate;
+        this.replayService = replayService;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> reservas() {
+        return ResponseEntity.ok(gate.metrics());
+    }
+
+    /** Devolve ao fluxo de NF os pedidos que expiraram sem resultado de reserva; eles passam pelo gate de novo. */
+    @PostMapping("/sem-resultado/replay")
+    public ResponseEntity<Map<String, Integer>> replay(@RequestParam(defaultValue = "100") int max) {
+        return ResponseEntity.ok(Map.of("replayed", replayService.replay(gate.parkingTopic(), max)));
+    }
+}
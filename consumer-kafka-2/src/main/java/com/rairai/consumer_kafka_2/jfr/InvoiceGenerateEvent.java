@@ -0,0 +1,31 @@
+package com.rairai.consumer_kafka_2.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+@Name("com.rairai.invoice.Generate")
+@Label("Geração de NF")
+@Category({"Pedidos", "Invoice"})
+@Description("Geração da nota fiscal de um pedido, do build até o armazenamento")
+@Enabled(false)
+@StackTrace(false)
+public class InvoiceGenerateEvent extends Event {
+
+    @Label("Order Id")
+    public String orderId;
+
+    @Label("Item Count")
+    public int itemCount;
+
+    @Label("Partition")
+    public int partition = -1;
+
+    @Label("Outcome")
+    public String outcome;
+}
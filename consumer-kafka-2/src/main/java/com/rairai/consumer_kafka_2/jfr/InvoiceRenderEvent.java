@@ -0,0 +1,33 @@
+package com.rairai.consumer_kafka_2.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+@Name("com.rairai.invoice.RenderPdf")
+@Label("Renderização de NF")
+@Category({"Pedidos", "Invoice"})
+@Description("Renderização do documento da nota fiscal")
+@Enabled(false)
+@StackTrace(false)
+public class InvoiceRenderEvent extends Event {
+
+    @Label("Order Id")
+    public String orderId;
+
+    @Label("Invoice Id")
+    public String invoiceId;
+
+    @Label("Item Count")
+    public int itemCount;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+}
@@ -0,0 +1,181 @@
+package com.rairai.consumer_kafka_2.lanes;
+
+import com.rairai.consumer_kafka_2.flow.FlowController;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+
+/**
+ * Prioridade entre as filas express e bulk no mesmo listener. A cada {@code app.lanes.interval-ms} lê o lag das
+ * partições express nas métricas do consumer; com backlog express as partições de bulk ficam pausadas, então o poll só
+ * traz express. Para o bulk não morrer de fome, depois de {@code app.lanes.express-weight} intervalos seguidos pausado
+ * ele ganha um intervalo de vez mesmo com backlog express.
+ * <p>
+ * Convive com o {@link FlowController}: o bulk só é retomado aqui se o controle de fluxo não estiver pausando tudo, e
+ * uma retomada do controle de fluxo é desfeita no intervalo seguinte se ainda houver backlog express.
+ */
+@Component
+public class LaneScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(LaneScheduler.class);
+
+    private static final String LAG_METRIC = "records-lag";
+
+    private final boolean enabled;
+    private final String bulkTopic;
+    private final String expressTopic;
+    private final List<String> listenerIds;
+    private final int expressWeight;
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final FlowController flowController;
+    private final ScheduledExecutorService scheduler;
+
+    private final LongAdder bulkTurns = new LongAdder();
+    private volatile boolean bulkPaused;
+    private volatile long lastExpressBacklog;
+    private int pausedTicks;
+
+    public LaneScheduler(KafkaListenerEndpointRegistry registry, FlowController flowController,
+                         @Value("${app.lanes.enabled:false}") boolean enabled,
+                         @Value("${app.lanes.bulk-topic:pedidos}") String bulkTopic,
+                         @Value("${app.lanes.express-topic:pedidos-express}") String expressTopic,
+                         @Value("${app.lanes.listener-ids:invoice-pedidos}") List<String> listenerIds,
+                         @Value("${app.lanes.express-weight:4}") int expressWeight,
+                         @Value("${app.lanes.interval-ms:100}") long intervalMs) {
+        this.registry = registry;
+        this.flowController = flowController;
+        this.enabled = enabled;
+        this.bulkTopic = bulkTopic;
+        this.expressTopic = expressTopic;
+        this.listenerIds = listenerIds;
+        this.expressWeight = Math.max(1, expressWeight);
+
+        if (enabled) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "lane-scheduler");
+                t.setDaemon(true);
+                return t;
+            });
+            this.scheduler.scheduleWithFixedDelay(this::tick, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+            logger.info("Filas de prioridade: express={}, bulk={}, peso express={}", expressTopic, bulkTopic,
+                    this.expressWeight);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+
+    /** Tópicos do listener principal (usado no {@code @KafkaListener}). */
+    public String[] topics() {
+        return enabled ? new String[]{expressTopic, bulkTopic} : new String[]{bulkTopic};
+    }
+
+
+    void tick() {
+        try {
+            long backlog = expressBacklog();
+            lastExpressBacklog = backlog;
+            if (shouldPauseBulk(backlog)) {
+                if (!bulkPaused) {
+                    logger.info("Backlog express={}; pausando partições de {}", backlog, bulkTopic);
+                }
+                bulkPaused = true;
+                forEachBulkPartition((container, tp) -> {
+                    if (!container.isPartitionPauseRequested(tp)) {
+                        container.pausePartition(tp);
+                    }
+                });
+            } else if (bulkPaused && !flowController.isPaused()) {
+                bulkPaused = false;
+                forEachBulkPartition(MessageListenerContainer::resumePartition);
+            }
+        } catch (Exception ex) {
+            logger.warn("Falha ao escalonar filas de prioridade: {}", ex.getMessage(), ex);
+        }
+    }
+
+    /** Só a thread do agendador chama; {@code pausedTicks} não precisa de sincronização. */
+    boolean shouldPauseBulk(long expressBacklog) {
+        if (expressBacklog <= 0) {
+            pausedTicks = 0;
+            return false;
+        }
+        if (pausedTicks >= expressWeight) {
+            pausedTicks = 0;
+            bulkTurns.increment();
+            return false;
+        }
+        pausedTicks++;
+        return true;
+    }
+
+
+    private long expressBacklog() {
+        String topicTag = expressTopic.replace('.', '_');
+        long backlog = 0;
+        for (String listenerId : listenerIds) {
+            MessageListenerContainer container = registry.getListenerContainer(listenerId);
+            if (container == null) {
+                continue;
+            }
+            for (Map<MetricName, ? extends Metric> metrics : container.metrics().values()) {
+                for (Map.Entry<MetricName, ? extends Metric> metric : metrics.entrySet()) {
+                    MetricName name = metric.getKey();
+                    if (LAG_METRIC.equals(name.name()) && topicTag.equals(name.tags().get("topic"))
+                            && metric.getValue().metricValue() instanceof Number lag && lag.doubleValue() > 0) {
+                        backlog += lag.longValue();
+                    }
+                }
+            }
+        }
+        return backlog;
+    }
+
+    private void forEachBulkPartition(BiConsumer<MessageListenerContainer, TopicPartition> action) {
+        for (String listenerId : listenerIds) {
+            MessageListenerContainer container = registry.getListenerContainer(listenerId);
+            Collection<TopicPartition> assigned = container != null ? container.getAssignedPartitions() : null;
+            if (assigned != null) {
+                assigned.stream().filter(tp -> tp.topic().equals(bulkTopic)).forEach(tp -> action.accept(container, tp));
+            }
+        }
+    }
+
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("expressBacklog", lastExpressBacklog);
+        metrics.put("bulkPaused", bulkPaused);
+        metrics.put("bulkTurns", bulkTurns.sum());
+        return metrics;
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.rairai.consumer_kafka_2.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+import java.util.Iterator;
+
+
+/**
+ * Appender do {@code logback-spring.xml} que segue {@code app.logging.mode}: em {@code async} os eventos passam por um
+ * {@link AsyncAppender} do logback (fila limitada, descarta INFO/DEBUG abaixo do discardingThreshold e mantém
+ * WARN/ERROR); em {@code sync} vão direto para os appenders filhos na thread que logou. Existe porque o {@code <if>}
+ * do logback exige Janino no classpath.
+ */
+public class OrderLogAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
+        implements AppenderAttachable<ILoggingEvent> {
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    private final AsyncAppender queue = new AsyncAppender();
+    private boolean async;
+
+    public void setMode(String mode) {
+        this.async = "async".equalsIgnoreCase(mode);
+    }
+
+    public void setQueueSize(int queueSize) {
+        queue.setQueueSize(queueSize);
+    }
+
+    public void setDiscardingThreshold(int discardingThreshold) {
+        queue.setDiscardingThreshold(discardingThreshold);
+    }
+
+    public void setNeverBlock(boolean neverBlock) {
+        queue.setNeverBlock(neverBlock);
+    }
+
+    public void setIncludeCallerData(boolean includeCallerData) {
+        queue.setIncludeCallerData(includeCallerData);
+    }
+
+
+    @Override
+    public void start() {
+        if (async) {
+            queue.setContext(getContext());
+            queue.setName(getName() + "-async");
+            appenders.iteratorForAppenders().forEachRemaining(queue::addAppender);
+            queue.start();
+        }
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (async) {
+            // o AsyncAppender esvazia a fila (até maxFlushTime) antes de parar
+            queue.stop();
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (async) {
+            queue.doAppend(event);
+        } else {
+            appenders.appendLoopOnAppenders(event);
+        }
+    }
+
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> appender) {
+        appenders.addAppender(appender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
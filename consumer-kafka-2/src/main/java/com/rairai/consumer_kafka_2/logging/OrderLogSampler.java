@@ -0,0 +1,44 @@
+package com.rairai.consumer_kafka_2.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+
+/**
+ * Amostragem dos logs por pedido (configurada no {@code logback-spring.xml} por {@code app.logging.sample-rate}).
+ * Só eventos abaixo de WARN emitidos com {@value #ORDER_ID} no MDC são amostrados, e a decisão usa o hash do orderId:
+ * um pedido amostrado mantém todas as suas linhas. WARN/ERROR e logs fora do processamento de um pedido sempre passam.
+ * Como é um TurboFilter, o evento descartado não chega a ser formatado.
+ */
+public class OrderLogSampler extends TurboFilter {
+
+    public static final String ORDER_ID = "orderId";
+
+    private volatile long threshold = 1L << 32;
+
+    public void setRate(double rate) {
+        this.threshold = (long) (Math.max(0.0, Math.min(1.0, rate)) * (1L << 32));
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (level == null || level.isGreaterOrEqual(Level.WARN) || threshold >= 1L << 32) {
+            return FilterReply.NEUTRAL;
+        }
+        String orderId = MDC.get(ORDER_ID);
+        if (orderId == null) {
+            return FilterReply.NEUTRAL;
+        }
+        return sampled(orderId) ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    boolean sampled(String orderId) {
+        int h = orderId.hashCode() * 0x9E3779B9;
+        h ^= h >>> 16;
+        return (h & 0xffffffffL) < threshold;
+    }
+}
@@ -6,6 +6,7 @@ import java.util.List;
 public class Invoice {
     private String invoiceId;
     private String orderId;
+    private List<String> orderIds;
     private String customer;
     private List<InvoiceItem> items;
     private double total;
@@ -15,6 +16,8 @@ public class Invoice {
     private Instant issuedAt;
     private InvoiceStatus status = InvoiceStatus.PENDING;
     private byte[] pdfContent;
+    private Instant windowStart;
+    private Instant windowEnd;
 
     public String getInvoiceId() {
         return invoiceId;
@@ -32,6 +35,15 @@ public class Invoice {
         this.orderId = orderId;
     }
 
+    /** Pedidos cobertos por uma NF consolidada; nulo na NF de um único pedido, que usa {@code orderId}. */
+    public List<String> getOrderIds() {
+        return orderIds;
+    }
+
+    public void setOrderIds(List<String> orderIds) {
+        this.orderIds = orderIds;
+    }
+
     public String getCustomer() {
         return customer;
     }
@@ -103,4 +115,20 @@ public class Invoice {
     public void setPdfContent(byte[] pdfContent) {
         this.pdfContent = pdfContent;
     }
-}
\ No newline at end of file
+
+    public Instant getWindowStart() {
+        return windowStart;
+    }
+
+    public void setWindowStart(Instant windowStart) {
+        this.windowStart = windowStart;
+    }
+
+    public Instant getWindowEnd() {
+        return windowEnd;
+    }
+
+    public void setWindowEnd(Instant windowEnd) {
+        this.windowEnd = windowEnd;
+    }
+}
@@ -0,0 +1,444 @@
+package com.rairai.consumer_kafka_2.outcome;
+
+import com.rairai.consumer_kafka_2.commit.CommitHold;
+import com.rairai.consumer_kafka_2.model.Order;
+import com.rairai.consumer_kafka_2.model.ReservationOutcome;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+
+/**
+ * Só deixa faturar pedidos que o consumer-kafka-1 reservou ({@code app.invoice.outcomes.enabled=true}). Pedido e
+ * resultado da reserva chegam por tópicos diferentes e em qualquer ordem, então o lado que chega primeiro espera o
+ * outro por até {@code window-ms}:
+ * <ul>
+ *     <li>pedido com resultado RESERVED ou DUPLICATE já recebido: segue para o faturamento na thread do listener;</li>
+ *     <li>pedido sem resultado: fica pendente e, como {@link CommitHold}, retém o offset do registro até o resultado
+ *     chegar; o faturamento roda então na thread do listener de resultados;</li>
+ *     <li>resultado INSUFFICIENT_STOCK, INVALID ou RELEASED: o pedido é descartado sem renderizar nem guardar NF.</li>
+ * </ul>
+ * As duas esperas são limitadas: pedidos pendentes por mais de {@code window-ms} ou além de {@code max-pending} não
+ * são faturados (na dúvida, não emite); vão para {@code parking-topic} e só depois liberam o offset, para poderem ser
+ * reprocessados. Resultados guardados saem depois de {@code window-ms} ou, acima de {@code max-outcomes}, do mais
+ * antigo para o mais novo.
+ * <p>
+ * Depois de um restart os pedidos são relidos desde o piso confirmado, que pode ser bem mais antigo que a última
+ * janela de resultados. Um pedido pendente criado antes do ponto até onde os resultados foram relidos pede ao listener
+ * de resultados que volte até {@code window-ms} antes do {@code createdAt} dele.
+ * <p>
+ * Resultados não são removidos quando o pedido casa: uma reentrega pelos tópicos de retry ou depois de um restart
+ * encontra o resultado de novo, e a NF é idempotente por pedido.
+ */
+@Component
+@ConditionalOnProperty(name = "app.invoice.outcomes.enabled", havingValue = "true")
+public class ReservationGate implements CommitHold {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReservationGate.class);
+
+    /**
+     * DUPLICATE só sai para pedidos cuja reserva continua valendo; se ela já expirou ou foi cancelada a reentrega sai
+     * como RELEASED e o pedido é descartado.
+     */
+    private static final Set<String> INVOICEABLE = Set.of("RESERVED", "DUPLICATE");
+
+    private final long windowMs;
+    private final int maxPending;
+    private final int maxOutcomes;
+    private final ScheduledExecutorService scheduler;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final String parkingTopic;
+    private final long parkingTimeoutMs;
+    private volatile Consumer<ConsumerRecord<String, Order>> onReserved = record -> { };
+    private volatile LongConsumer onRewind = from -> { };
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Pending> pending = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Received> outcomes = new LinkedHashMap<>();
+    private final Map<TopicPartition, TreeMap<Long, Integer>> held = new HashMap<>();
+    private final List<Pending> toPark = new ArrayList<>();
+    private long outcomesFrom = Long.MAX_VALUE;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder waited = new LongAdder();
+    private final Map<String, LongAdder> rejected = new ConcurrentHashMap<>();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder outcomesExpired = new LongAdder();
+    private final LongAdder parked = new LongAdder();
+    private final LongAdder rewinds = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public ReservationGate(KafkaTemplate<String, Object> kafkaTemplate,
+                           @Value("${app.invoice.outcomes.window-ms:300000}") long windowMs,
+                           @Value("${app.invoice.outcomes.max-pending:100000}") int maxPending,
+                           @Value("${app.invoice.outcomes.max-outcomes:200000}") int maxOutcomes,
+                           @Value("${app.invoice.outcomes.tick-ms:1000}") long tickMs,
+                           @Value("${app.invoice.outcomes.parking-topic:pedidos-invoice-sem-resultado}") String parkingTopic,
+                           @Value("${app.invoice.outcomes.parking-timeout-ms:10000}") long parkingTimeoutMs) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.parkingTopic = parkingTopic;
+        this.parkingTimeoutMs = parkingTimeoutMs;
+        this.windowMs = Math.max(1, windowMs);
+        this.maxPending = Math.max(1, maxPending);
+        this.maxOutcomes = Math.max(1, maxOutcomes);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "invoice-outcome-gate");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        logger.info("Faturamento condicionado à reserva: janela={}ms, maxPendentes={}, maxResultados={}, sem resultado em {}",
+                this.windowMs, this.maxPending, this.maxOutcomes, parkingTopic);
+    }
+
+
+    /** Quem fatura um pedido liberado; registrado pelo listener de pedidos. */
+    public void onReserved(Consumer<ConsumerRecord<String, Order>> onReserved) {
+        this.onReserved = onReserved;
+    }
+
+    /** Quem relê os resultados a partir de um instante; registrado pelo listener de resultados. */
+    public void onRewind(LongConsumer onRewind) {
+        this.onRewind = onRewind;
+    }
+
+    public long windowMs() {
+        return windowMs;
+    }
+
+    public String parkingTopic() {
+        return parkingTopic;
+    }
+
+    /**
+     * Instante a partir do qual o listener de resultados relê o tópico numa atribuição: {@code window-ms} antes de
+     * agora ou do pedido pendente mais antigo, o que vier primeiro.
+     */
+    public long outcomesFrom(long now) {
+        lock.lock();
+        try {
+            long from = now - windowMs;
+            for (Pending entry : pending.values()) {
+                from = Math.min(from, rewindPoint(entry.record()));
+            }
+            outcomesFrom = from;
+            return from;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Chamado pelo listener de pedidos. Com o resultado já recebido o pedido é faturado ou descartado aqui mesmo, e uma
+     * falha no faturamento segue para os tópicos de retry como antes; sem resultado o registro fica pendente.
+     */
+    public void admit(ConsumerRecord<String, Order> record) {
+        Order order = record.value();
+        String status;
+        long rewindTo = Long.MAX_VALUE;
+        lock.lock();
+        try {
+            Received outcome = outcomes.get(order.getId());
+            status = outcome != null ? outcome.status() : null;
+            if (status == null) {
+                TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                Pending previous = pending.put(order.getId(), new Pending(record, partition, System.currentTimeMillis()));
+                if (previous != null) {
+                    unhold(previous.partition(), previous.record().offset());
+                }
+                hold(partition, record.offset());
+                waited.increment();
+                evictPending();
+                long from = rewindPoint(record);
+                if (from < outcomesFrom) {
+                    outcomesFrom = from;
+                    rewindTo = from;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (status != null) {
+            settle(record, status);
+        } else if (rewindTo != Long.MAX_VALUE) {
+            rewinds.increment();
+            onRewind.accept(rewindTo);
+        }
+    }
+
+    /** Chamado pelo listener de resultados; fatura ou descarta o pedido que estava esperando por ele. */
+    public void accept(ReservationOutcome outcome) {
+        if (outcome == null || outcome.getOrderId() == null || outcome.getStatus() == null) {
+            return;
+        }
+        Pending waiting;
+        lock.lock();
+        try {
+            outcomes.remove(outcome.getOrderId());
+            outcomes.put(outcome.getOrderId(), new Received(outcome.getStatus(), System.currentTimeMillis()));
+            while (outcomes.size() > maxOutcomes) {
+                Iterator<Received> oldest = outcomes.values().iterator();
+                oldest.next();
+                oldest.remove();
+                outcomesExpired.increment();
+            }
+            waiting = pending.remove(outcome.getOrderId());
+        } finally {
+            lock.unlock();
+        }
+        if (waiting != null) {
+            invoiceWaiting(waiting, outcome.getStatus());
+        }
+    }
+
+    /**
+     * Tira os pedidos pendentes de partições revogadas ou perdidas, depois do flush dos offsets: o próximo dono relê
+     * esses pedidos a partir do piso confirmado. Os resultados ficam, porque valem para qualquer partição.
+     */
+    public void release(Collection<TopicPartition> partitions) {
+        lock.lock();
+        try {
+            pending.values().removeIf(entry -> partitions.contains(entry.partition()));
+            toPark.removeIf(entry -> partitions.contains(entry.partition()));
+            partitions.forEach(held::remove);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long floor(TopicPartition partition) {
+        lock.lock();
+        try {
+            TreeMap<Long, Integer> offsets = held.get(partition);
+            return offsets == null || offsets.isEmpty() ? Long.MAX_VALUE : offsets.firstKey();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    void tick() {
+        try {
+            long limit = System.currentTimeMillis() - windowMs;
+            List<Map.Entry<Pending, String>> retry = new ArrayList<>();
+            List<Pending> parking = new ArrayList<>();
+            lock.lock();
+            try {
+                Iterator<Map.Entry<String, Pending>> waiting = pending.entrySet().iterator();
+                while (waiting.hasNext()) {
+                    Map.Entry<String, Pending> entry = waiting.next();
+                    Received outcome = outcomes.get(entry.getKey());
+                    if (outcome != null) {
+                        // só acontece depois de uma falha no faturamento disparado pelo resultado
+                        waiting.remove();
+                        retry.add(Map.entry(entry.getValue(), outcome.status()));
+                    } else if (entry.getValue().arrivedMs() <= limit) {
+                        waiting.remove();
+                        expire(entry.getValue(), "janela");
+                    }
+                }
+                outcomes.values().removeIf(outcome -> {
+                    boolean old = outcome.receivedMs() <= limit;
+                    if (old) {
+                        outcomesExpired.increment();
+                    }
+                    return old;
+                });
+                for (Pending entry : toPark) {
+                    // o resultado pode ter chegado enquanto o pedido esperava para ser estacionado
+                    Received outcome = outcomes.get(entry.record().value().getId());
+                    if (outcome != null) {
+                        retry.add(Map.entry(entry, outcome.status()));
+                    } else {
+                        parking.add(entry);
+                    }
+                }
+                toPark.clear();
+            } finally {
+                lock.unlock();
+            }
+            retry.forEach(entry -> invoiceWaiting(entry.getKey(), entry.getValue()));
+            parking.forEach(this::park);
+        } catch (Exception ex) {
+            logger.warn("Falha ao expirar pedidos sem resultado de reserva: {}", ex.getMessage(), ex);
+        }
+    }
+
+    /** Fatura um pedido que estava pendente; se falhar ele volta a esperar com o offset retido e o ciclo tenta de novo. */
+    private void invoiceWaiting(Pending entry, String status) {
+        try {
+            settle(entry.record(), status);
+        } catch (RuntimeException ex) {
+            failures.increment();
+            logger.error("Falha ao faturar pedido reservado; nova tentativa no próximo ciclo. orderId={}, erro={}",
+                    entry.record().value().getId(), ex.getMessage(), ex);
+            lock.lock();
+            try {
+                pending.putIfAbsent(entry.record().value().getId(), entry);
+            } finally {
+                lock.unlock();
+            }
+            return;
+        }
+        lock.lock();
+        try {
+            unhold(entry.partition(), entry.record().offset());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void settle(ConsumerRecord<String, Order> record, String status) {
+        if (INVOICEABLE.contains(status)) {
+            admitted.increment();
+            onReserved.accept(record);
+            return;
+        }
+        rejected.computeIfAbsent(status, s -> new LongAdder()).increment();
+        logger.atInfo().addKeyValue("orderId", record.value().getId()).addKeyValue("status", status)
+                .log("Pedido não reservado; NF não emitida");
+    }
+
+    /** Chamar com {@code lock}. */
+    private void evictPending() {
+        while (pending.size() > maxPending) {
+            Iterator<Pending> oldest = pending.values().iterator();
+            Pending entry = oldest.next();
+            oldest.remove();
+            evicted.increment();
+            expire(entry, "limite de pendentes");
+        }
+    }
+
+    /** Chamar com {@code lock}. O offset continua retido até o pedido chegar ao {@code parking-topic}. */
+    private void expire(Pending entry, String reason) {
+        expired.increment();
+        toPark.add(entry);
+        logger.atWarn().addKeyValue("orderId", entry.record().value().getId()).addKeyValue("partition", entry.partition())
+                .addKeyValue("offset", entry.record().offset()).addKeyValue("reason", reason)
+                .addKeyValue("parkingTopic", parkingTopic).log("Resultado da reserva não chegou; NF não emitida");
+    }
+
+    /** Só a thread do agendador chama. Se o envio falhar o pedido volta para a fila e o offset segue retido. */
+    private void park(Pending entry) {
+        ConsumerRecord<String, Order> record = entry.record();
+        try {
+            kafkaTemplate.send(parkingTopic, record.key(), record.value()).get(parkingTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception ex) {
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            failures.increment();
+            logger.error("Falha ao enviar pedido sem resultado para {}; nova tentativa no próximo ciclo. orderId={}, erro={}",
+                    parkingTopic, record.value().getId(), ex.getMessage());
+            lock.lock();
+            try {
+                toPark.add(entry);
+            } finally {
+                lock.unlock();
+            }
+            return;
+        }
+        parked.increment();
+        lock.lock();
+        try {
+            unhold(entry.partition(), record.offset());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** {@code window-ms} antes da criação do pedido: o resultado dele só pode ter sido publicado depois disso. */
+    private long rewindPoint(ConsumerRecord<String, Order> record) {
+        Instant createdAt = record.value().getCreatedAt();
+        long created = createdAt != null ? createdAt.toEpochMilli()
+                : record.timestamp() >= 0 ? record.timestamp() : System.currentTimeMillis();
+        return created - windowMs;
+    }
+
+    private void hold(TopicPartition partition, long offset) {
+        held.computeIfAbsent(partition, tp -> new TreeMap<>()).merge(offset, 1, Integer::sum);
+    }
+
+    private void unhold(TopicPartition partition, long offset) {
+        TreeMap<Long, Integer> offsets = held.get(partition);
+        if (offsets != null) {
+            offsets.computeIfPresent(offset, (o, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            metrics.put("pendingOrders", pending.size());
+            metrics.put("bufferedOutcomes", outcomes.size());
+            metrics.put("parkingQueue", toPark.size());
+            Map<String, Long> floors = new LinkedHashMap<>();
+            held.forEach((tp, offsets) -> {
+                if (!offsets.isEmpty()) {
+                    floors.put(tp.toString(), offsets.firstKey());
+                }
+            });
+            metrics.put("heldOffsets", floors);
+        } finally {
+            lock.unlock();
+        }
+        Map<String, Long> rejectedByStatus = new LinkedHashMap<>();
+        rejected.forEach((status, count) -> rejectedByStatus.put(status, count.sum()));
+        metrics.put("admitted", admitted.sum());
+        metrics.put("waited", waited.sum());
+        metrics.put("rejected", rejectedByStatus);
+        metrics.put("rendersAvoided", rejectedByStatus.values().stream().mapToLong(Long::longValue).sum());
+        metrics.put("expired", expired.sum());
+        metrics.put("evicted", evicted.sum());
+        metrics.put("outcomesExpired", outcomesExpired.sum());
+        metrics.put("parked", parked.sum());
+        metrics.put("outcomeRewinds", rewinds.sum());
+        metrics.put("failures", failures.sum());
+        return metrics;
+    }
+
+
+    @PreDestroy
+    public void shutdown() {
+        // pedidos pendentes não são faturados aqui: os offsets deles não foram confirmados e o restart os relê
+        scheduler.shutdownNow();
+    }
+
+
+    private record Pending(ConsumerRecord<String, Order> record, TopicPartition partition, long arrivedMs) {
+    }
+
+    private record Received(String status, long receivedMs) {
+    }
+}
@@ -0,0 +1,130 @@
+package com.rairai.consumer_kafka_2.retry;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Reprocessa registros da DLT republicando o payload original no primeiro tópico de retry. O progresso é guardado
+ * em um consumer group próprio, então cada registro da DLT é reenviado uma única vez. Também reprocessa outros tópicos
+ * de estacionamento, como o dos pedidos que ficaram sem resultado de reserva, cada um com o próprio grupo.
+ */
+@Service
+public class DltReplayService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DltReplayService.class);
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ReentrantLock replayLock = new ReentrantLock();
+
+    @Value("${spring.kafka.bootstrap-servers:localhost:9092,localhost:9093,localhost:9094}")
+    private String bootstrapServers;
+
+    @Value("${spring.kafka.consumer.group-id:consumer-group-2}")
+    private String groupId;
+
+    @Value("${app.retry.dlt-topic:pedidos-invoice-dlt}")
+    private String dltTopic;
+
+    @Value("${app.retry.replay-topic:pedidos-invoice-retry-0}")
+    private String replayTopic;
+
+    public DltReplayService(KafkaTemplate<String, Object> kafkaTemplate) {
+        this.kafkaTemplate = kafkaTemplate;
+    }
+
+
+    /**
+     * Um reprocessamento por vez. Lock e não {@code synchronized}: a chamada espera o broker e, numa virtual thread,
+     * um monitor prenderia a thread portadora durante toda a espera.
+     */
+    public int replay(int max) {
+        return replay(dltTopic, max);
+    }
+
+    /** Como {@link #replay(int)}, lendo de {@code source} em vez da DLT. */
+    public int replay(String source, int max) {
+        replayLock.lock();
+        try {
+            return replayRecords(source, max);
+        } finally {
+            replayLock.unlock();
+        }
+    }
+
+    private int replayRecords(String source, int max) {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, source.equals(dltTopic) ? groupId + "-dlt-replay" : groupId + "-replay-" + source);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+
+        try (KafkaConsumer<String, byte[]> consumer =
+                     new KafkaConsumer<>(props, new StringDeserializer(), new ByteArrayDeserializer())) {
+            List<TopicPartition> partitions = new ArrayList<>();
+            for (PartitionInfo info : consumer.partitionsFor(source)) {
+                partitions.add(new TopicPartition(info.topic(), info.partition()));
+            }
+            consumer.assign(partitions);
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+
+            Map<TopicPartition, OffsetAndMetadata> toCommit = new HashMap<>();
+            List<CompletableFuture<SendResult<String, Object>>> sends = new ArrayList<>();
+
+            while (sends.size() < max && !reachedEnd(consumer, partitions, endOffsets)) {
+                for (ConsumerRecord<String, byte[]> record : consumer.poll(Duration.ofMillis(500))) {
+                    TopicPartition tp = new TopicPartition(record.topic(), record.partition());
+                    if (sends.size() >= max || record.offset() >= endOffsets.getOrDefault(tp, 0L)) {
+                        continue;
+                    }
+                    sends.add(kafkaTemplate.send(replayTopic, record.key(), record.value()));
+                    toCommit.put(tp, new OffsetAndMetadata(record.offset() + 1));
+                }
+            }
+
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get(30, TimeUnit.SECONDS);
+            if (!toCommit.isEmpty()) {
+                consumer.commitSync(toCommit);
+            }
+            logger.info("Reprocessamento concluído: topic={}, destino={}, registros={}", source, replayTopic, sends.size());
+            return sends.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Reprocessamento de " + source + " interrompido", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Falha ao reprocessar " + source + ": " + e.getMessage(), e);
+        }
+    }
+
+
+    private static boolean reachedEnd(KafkaConsumer<?, ?> consumer, List<TopicPartition> partitions,
+                                      Map<TopicPartition, Long> endOffsets) {
+        for (TopicPartition tp : partitions) {
+            if (consumer.position(tp) < endOffsets.getOrDefault(tp, 0L)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,5 +1,7 @@
 package com.rairai.consumer_kafka_2.service;
 
+import com.rairai.consumer_kafka_2.jfr.InvoiceGenerateEvent;
+import com.rairai.consumer_kafka_2.jfr.InvoiceRenderEvent;
 import com.rairai.consumer_kafka_2.model.Invoice;
 import com.rairai.consumer_kafka_2.model.Order;
 import com.rairai.consumer_kafka_2.model.OrderItem;
@@ -27,20 +29,29 @@ public class InvoiceService {
 
 
     public Invoice generateInvoice(Order order) {
+        return generateInvoice(order, -1);
+    }
+
+
+    public Invoice generateInvoice(Order order, int partition) {
+        InvoiceGenerateEvent event = new InvoiceGenerateEvent();
+        event.begin();
+
         if (order == null) {
             logger.warn("Tentativa de gerar NF para pedido nulo.");
+            commitEvent(event, null, partition, "INVALID");
             return null;
         }
 
         String orderId = order.getId();
         Invoice existing = invoicesByOrderId.get(orderId);
         if (existing != null) {
-            logger.info("Invoice já existente encontrada para orderId={} invoiceId={}", orderId, existing.getInvoiceId());
+            logger.atInfo().addKeyValue("orderId", orderId).addKeyValue("invoiceId", existing.getInvoiceId())
+                    .log("Invoice já existente; reentrega ignorada");
+            commitEvent(event, order, partition, "EXISTING");
             return existing;
         }
 
-        logger.info("Gerando invoice para orderId={} customer={}", orderId, order.getCustomer());
-
         Invoice invoice = buildInvoiceFromOrder(order);
 
         byte[] pdfBytes = renderPdf(invoice);
@@ -51,19 +62,80 @@ public class InvoiceService {
 
         invoicesByOrderId.put(orderId, invoice);
 
-        logger.info("Invoice gerada: invoiceId={} orderId={} total={}", invoice.getInvoiceId(), orderId, invoice.getTotal());
+        logger.atInfo().addKeyValue("orderId", orderId).addKeyValue("invoiceId", invoice.getInvoiceId())
+                .addKeyValue("customer", order.getCustomer()).addKeyValue("total", invoice.getTotal()).log("Invoice gerada");
 
+        commitEvent(event, order, partition, "ISSUED");
         return invoice;
     }
 
-   
+
+    /**
+     * Uma NF para todos os pedidos de uma janela de consolidação do cliente: um render e uma gravação no lugar de um
+     * por pedido. Pedidos que já têm NF ficam de fora; se nenhum sobrar, devolve a NF existente do primeiro.
+     */
+    public Invoice generateConsolidatedInvoice(String customer, List<Order> orders, Instant windowStart, Instant windowEnd) {
+        InvoiceGenerateEvent event = new InvoiceGenerateEvent();
+        event.begin();
+
+        List<Order> pending = new ArrayList<>();
+        for (Order order : orders) {
+            if (order != null && !invoicesByOrderId.containsKey(order.getId())) {
+                pending.add(order);
+            }
+        }
+        if (pending.isEmpty()) {
+            Invoice existing = orders.isEmpty() ? null : invoicesByOrderId.get(orders.get(0).getId());
+            commitEvent(event, null, -1, "EXISTING");
+            return existing;
+        }
+
+        Invoice invoice = new Invoice();
+        invoice.setInvoiceId(UUID.randomUUID().toString());
+        invoice.setCustomer(customer);
+        invoice.setCreatedAt(Instant.now());
+        invoice.setWindowStart(windowStart);
+        invoice.setWindowEnd(windowEnd);
+
+        List<InvoiceItem> items = new ArrayList<>();
+        List<String> orderIds = new ArrayList<>(pending.size());
+        double total = 0.0;
+        for (Order order : pending) {
+            double calculated = appendItems(order, items);
+            total += order.getTotal() != null ? order.getTotal() : calculated;
+            orderIds.add(order.getId());
+        }
+        invoice.setItems(items);
+        invoice.setOrderIds(orderIds);
+        invoice.setTotal(round(total));
+        invoice.setTax( round(invoice.getTotal() * 0.1) );
+        invoice.setTotalWithTax( round(invoice.getTotal() + invoice.getTax()) );
+
+        invoice.setPdfContent(renderPdf(invoice));
+        invoice.setStatus(InvoiceStatus.ISSUED);
+        invoice.setIssuedAt(Instant.now());
+
+        for (String orderId : orderIds) {
+            invoicesByOrderId.put(orderId, invoice);
+        }
+
+        logger.atInfo().addKeyValue("invoiceId", invoice.getInvoiceId()).addKeyValue("customer", customer)
+                .addKeyValue("orders", orderIds.size()).addKeyValue("total", invoice.getTotal())
+                .log("Invoice consolidada gerada");
+
+        commitEvent(event, null, -1, "CONSOLIDATED");
+        return invoice;
+    }
+
+
     public Invoice getInvoiceByOrderId(String orderId) {
         return invoicesByOrderId.get(orderId);
     }
 
    
     public List<Invoice> listInvoices() {
-        return Collections.unmodifiableList(new ArrayList<>(invoicesByOrderId.values()));
+        // uma NF consolidada aparece uma vez, mesmo indexada por vários pedidos
+        return Collections.unmodifiableList(invoicesByOrderId.values().stream().distinct().toList());
     }
 
     private Invoice buildInvoiceFromOrder(Order order) {
@@ -74,6 +146,18 @@ public class InvoiceService {
         invoice.setCreatedAt(Instant.now());
 
         List<InvoiceItem> items = new ArrayList<>();
+        double calculatedTotal = appendItems(order, items);
+
+        invoice.setItems(items);
+        invoice.setTotal(order.getTotal() != null ? order.getTotal() : calculatedTotal);
+
+        invoice.setTax( round(invoice.getTotal() * 0.1) ); // exemplo: 10% imposto
+        invoice.setTotalWithTax( round(invoice.getTotal() + invoice.getTax()) );
+
+        return invoice;
+    }
+
+    private static double appendItems(Order order, List<InvoiceItem> items) {
         double calculatedTotal = 0.0;
         if (order.getItems() != null) {
             for (OrderItem oi : order.getItems()) {
@@ -86,21 +170,22 @@ public class InvoiceService {
                 items.add(ii);
             }
         }
-
-        invoice.setItems(items);
-        invoice.setTotal(order.getTotal() != null ? order.getTotal() : calculatedTotal);
-
-        invoice.setTax( round(invoice.getTotal() * 0.1) ); // exemplo: 10% imposto
-        invoice.setTotalWithTax( round(invoice.getTotal() + invoice.getTax()) );
-
-        return invoice;
+        return calculatedTotal;
     }
 
     private byte[] renderPdf(Invoice invoice) {
+        InvoiceRenderEvent event = new InvoiceRenderEvent();
+        event.begin();
+
         StringBuilder sb = new StringBuilder();
         sb.append("NOTA FISCAL SIMULADA\n");
         sb.append("InvoiceId: ").append(invoice.getInvoiceId()).append("\n");
-        sb.append("OrderId: ").append(invoice.getOrderId()).append("\n");
+        if (invoice.getOrderIds() != null) {
+            sb.append("Orders: ").append(String.join(", ", invoice.getOrderIds())).append("\n");
+            sb.append("Window: ").append(invoice.getWindowStart()).append(" - ").append(invoice.getWindowEnd()).append("\n");
+        } else {
+            sb.append("OrderId: ").append(invoice.getOrderId()).append("\n");
+        }
         sb.append("Customer: ").append(invoice.getCustomer()).append("\n");
         sb.append("Total: ").append(invoice.getTotal()).append("\n");
         sb.append("Tax: ").append(invoice.getTax()).append("\n");
@@ -113,7 +198,31 @@ public class InvoiceService {
               .append(" @").append(it.getUnitPrice())
               .append(" = ").append(it.getLineTotal()).append("\n");
         }
-        return sb.toString().getBytes();
+        byte[] pdf = sb.toString().getBytes();
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.orderId = invoice.getOrderId();
+            event.invoiceId = invoice.getInvoiceId();
+            event.itemCount = invoice.getItems().size();
+            event.size = pdf.length;
+            event.commit();
+        }
+        return pdf;
+    }
+
+    private static void commitEvent(InvoiceGenerateEvent event, Order order, int partition, String outcome) {
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        if (order != null) {
+            event.orderId = order.getId();
+            event.itemCount = order.getItems() != null ? order.getItems().size() : 0;
+        }
+        event.partition = partition;
+        event.outcome = outcome;
+        event.commit();
     }
 
     private static double round(double value) {
@@ -0,0 +1,166 @@
+package com.rairai.consumer_kafka_2.consolidation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rairai.consumer_kafka_2.model.Invoice;
+import com.rairai.consumer_kafka_2.service.InvoiceService;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.invoice.consolidation.enabled=true",
+        "app.invoice.consolidation.customers=rapido,lento,antigo",
+        "app.invoice.consolidation.max-orders=3",
+        "app.invoice.consolidation.grace-ms=200",
+        "app.invoice.consolidation.tick-ms=100"})
+@EmbeddedKafka(partitions = 3, topics = "pedidos")
+class InvoiceConsolidatorTest {
+
+    private static final long WINDOW_MS = 3_600_000;
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private InvoiceService invoiceService;
+
+    @Autowired
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Autowired
+    private KafkaAdmin kafkaAdmin;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void fullWindowBecomesOneInvoiceWhileOpenWindowHoldsItsPartition() throws Exception {
+        Instant now = Instant.now();
+        try (KafkaProducer<String, String> producer = producer()) {
+            producer.send(new ProducerRecord<>("pedidos", 0, "lento-1", order("lento-1", "lento", now)));
+            producer.send(new ProducerRecord<>("pedidos", 0, "avulso-1", order("avulso-1", "avulso", now)));
+            for (int i = 1; i <= 3; i++) {
+                producer.send(new ProducerRecord<>("pedidos", 1, "rapido-" + i, order("rapido-" + i, "rapido", now)));
+            }
+        }
+
+        await(() -> invoiceService.getInvoiceByOrderId("rapido-3") != null
+                && invoiceService.getInvoiceByOrderId("avulso-1") != null && committed(1) == 3);
+        Invoice invoice = invoiceService.getInvoiceByOrderId("rapido-1");
+        assertThat(invoice.getOrderIds()).containsExactly("rapido-1", "rapido-2", "rapido-3");
+        assertThat(invoiceService.getInvoiceByOrderId("rapido-3")).isSameAs(invoice);
+        assertThat(invoiceService.getInvoiceByOrderId("lento-1")).isNull();
+
+        // o pedido avulso já tem NF, mas a partição 0 continua presa no pedido da janela aberta
+        Thread.sleep(500);
+        assertThat(committed(0)).isZero();
+
+        WindowLedger restarted = new WindowLedger(kafkaTemplate, kafkaAdmin, objectMapper, "pedidos-invoice-janelas", 1,
+                broker.getBrokersAsString(), WINDOW_MS * 24, 10_000);
+        try {
+            restarted.bootstrap();
+            String windowId = WindowLedger.windowId("rapido", Math.floorDiv(now.toEpochMilli(), WINDOW_MS) * WINDOW_MS, 1);
+            assertThat(restarted.covers(windowId, "rapido-2")).isTrue();
+            assertThat(restarted.covers(windowId, "lento-1")).isFalse();
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test
+    void expiredWindowClosesAfterGraceAndReleasesOffsets() throws Exception {
+        Instant createdAt = Instant.now().minus(Duration.ofHours(2));
+        try (KafkaProducer<String, String> producer = producer()) {
+            producer.send(new ProducerRecord<>("pedidos", 2, "antigo-1", order("antigo-1", "antigo", createdAt)));
+            producer.send(new ProducerRecord<>("pedidos", 2, "antigo-2", order("antigo-2", "antigo", createdAt)));
+        }
+
+        await(() -> invoiceService.getInvoiceByOrderId("antigo-2") != null && committed(2) == 2);
+        assertThat(invoiceService.getInvoiceByOrderId("antigo-1").getOrderIds()).containsExactly("antigo-1", "antigo-2");
+    }
+
+    @Test
+    void windowsClosedByTwoInstancesFromDifferentPartitionsAreBothKept() throws Exception {
+        String topic = "pedidos-invoice-janelas-instancias";
+        long start = Math.floorDiv(Instant.now().toEpochMilli(), WINDOW_MS) * WINDOW_MS;
+        Instant windowStart = Instant.ofEpochMilli(start);
+        Instant windowEnd = windowStart.plusMillis(WINDOW_MS);
+        WindowLedger first = ledger(topic);
+        WindowLedger second = ledger(topic);
+        WindowLedger restarted = ledger(topic);
+        try {
+            first.bootstrap();
+            second.bootstrap();
+            // cada instância só conhece o próprio fechamento: a chave com a partição evita que o segundo apague o primeiro
+            first.record(new ClosedWindow(WindowLedger.windowId("dividido", start, 0), "dividido", windowStart, windowEnd,
+                    List.of("nf-0"), Set.of("dividido-0")));
+            second.record(new ClosedWindow(WindowLedger.windowId("dividido", start, 1), "dividido", windowStart, windowEnd,
+                    List.of("nf-1"), Set.of("dividido-1")));
+
+            restarted.bootstrap();
+            assertThat(restarted.covers(WindowLedger.windowId("dividido", start, 0), "dividido-0")).isTrue();
+            assertThat(restarted.covers(WindowLedger.windowId("dividido", start, 1), "dividido-1")).isTrue();
+        } finally {
+            first.close();
+            second.close();
+            restarted.close();
+        }
+    }
+
+
+    private WindowLedger ledger(String topic) {
+        return new WindowLedger(kafkaTemplate, kafkaAdmin, objectMapper, topic, 1, broker.getBrokersAsString(),
+                WINDOW_MS * 24, 10_000);
+    }
+
+    private KafkaProducer<String, String> producer() {
+        return new KafkaProducer<>(Map.of("bootstrap.servers", broker.getBrokersAsString()),
+                new StringSerializer(), new StringSerializer());
+    }
+
+    private static String order(String id, String customer, Instant createdAt) {
+        return "{\"id\":\"" + id + "\",\"customer\":\"" + customer + "\",\"createdAt\":\"" + createdAt + "\","
+                + "\"items\":[{\"productId\":\"p1\",\"quantity\":2,\"price\":5.0}],\"total\":10.0}";
+    }
+
+    private long committed(int partition) {
+        try (AdminClient admin = AdminClient.create(
+                Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()))) {
+            Map<TopicPartition, OffsetAndMetadata> offsets =
+                    admin.listConsumerGroupOffsets("consumer-group-2").partitionsToOffsetAndMetadata().get();
+            OffsetAndMetadata offset = offsets.get(new TopicPartition("pedidos", partition));
+            return offset != null ? offset.offset() : 0;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
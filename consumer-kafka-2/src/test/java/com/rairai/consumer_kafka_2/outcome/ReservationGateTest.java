@@ -0,0 +1,179 @@
+package com.rairai.consumer_kafka_2.outcome;
+
+import com.rairai.consumer_kafka_2.consumer.ReservationOutcomeConsumer;
+import com.rairai.consumer_kafka_2.service.InvoiceService;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.invoice.outcomes.enabled=true",
+        "app.invoice.outcomes.window-ms=4000",
+        "app.invoice.outcomes.tick-ms=100"})
+@EmbeddedKafka(partitions = 3, topics = {"pedidos", "pedidos-stock-resultados"})
+class ReservationGateTest {
+
+    private static final String OUTCOMES = "pedidos-stock-resultados";
+    private static final String PARKING = "pedidos-invoice-sem-resultado";
+
+    @Autowired
+    private EmbeddedKafkaBroker broker;
+
+    @Autowired
+    private InvoiceService invoiceService;
+
+    @Autowired
+    private ReservationGate gate;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Test
+    void invoicesOnlyReservedOrdersInEitherArrivalOrder() throws Exception {
+        awaitOutcomeListener();
+        Map<String, Object> before = gate.metrics();
+
+        try (KafkaProducer<String, String> producer = producer()) {
+            // resultado antes do pedido
+            producer.send(new ProducerRecord<>(OUTCOMES, "antes-1", outcome("antes-1", "RESERVED")));
+            producer.flush();
+            await(() -> ((Number) gate.metrics().get("bufferedOutcomes")).intValue() >= 1);
+
+            producer.send(new ProducerRecord<>("pedidos", 0, "antes-1", order("antes-1")));
+            producer.send(new ProducerRecord<>("pedidos", 0, "depois-1", order("depois-1")));
+            producer.send(new ProducerRecord<>("pedidos", 0, "sem-estoque-1", order("sem-estoque-1")));
+            producer.send(new ProducerRecord<>("pedidos", 0, "perdido-1", order("perdido-1")));
+            producer.flush();
+            await(() -> ((Number) gate.metrics().get("pendingOrders")).intValue() == 3);
+
+            // resultados depois dos pedidos
+            producer.send(new ProducerRecord<>(OUTCOMES, "depois-1", outcome("depois-1", "RESERVED")));
+            producer.send(new ProducerRecord<>(OUTCOMES, "sem-estoque-1", outcome("sem-estoque-1", "INSUFFICIENT_STOCK")));
+        }
+
+        await(() -> invoiceService.getInvoiceByOrderId("depois-1") != null);
+        assertThat(invoiceService.getInvoiceByOrderId("antes-1")).isNotNull();
+        assertThat(committed(0)).isLessThanOrEqualTo(3);
+
+        // sem resultado dentro da janela o pedido não é faturado: vai para o tópico de estacionamento e libera o offset
+        await(() -> committed(0) == 4);
+        assertThat(invoiceService.getInvoiceByOrderId("sem-estoque-1")).isNull();
+        assertThat(invoiceService.getInvoiceByOrderId("perdido-1")).isNull();
+        assertThat(parkedKeys()).contains("perdido-1").doesNotContain("sem-estoque-1", "depois-1");
+        Map<String, Object> metrics = gate.metrics();
+        assertThat(delta(before, metrics, "admitted")).isEqualTo(2);
+        assertThat(delta(before, metrics, "expired")).isEqualTo(1);
+        assertThat(delta(before, metrics, "parked")).isEqualTo(1);
+        assertThat(delta(before, metrics, "rendersAvoided")).isEqualTo(1);
+    }
+
+    @Test
+    void orderOlderThanTheReadOutcomesRewindsTheOutcomeListener() throws Exception {
+        awaitOutcomeListener();
+        long rewindsBefore = ((Number) gate.metrics().get("outcomeRewinds")).longValue();
+        try (KafkaProducer<String, String> producer = producer()) {
+            producer.send(new ProducerRecord<>(OUTCOMES, "relido-1", outcome("relido-1", "RESERVED")));
+            producer.flush();
+            // o resultado sai da memória antes do pedido chegar, como depois de um restart que relê um piso antigo
+            await(() -> ((Number) gate.metrics().get("outcomesExpired")).longValue() > 0
+                    && ((Number) gate.metrics().get("bufferedOutcomes")).intValue() == 0);
+
+            producer.send(new ProducerRecord<>("pedidos", 1, "relido-1",
+                    order("relido-1", Instant.now().minus(Duration.ofMinutes(10)))));
+        }
+
+        await(() -> invoiceService.getInvoiceByOrderId("relido-1") != null);
+        assertThat(((Number) gate.metrics().get("outcomeRewinds")).longValue()).isGreaterThan(rewindsBefore);
+    }
+
+
+    private KafkaProducer<String, String> producer() {
+        return new KafkaProducer<>(Map.of("bootstrap.servers", broker.getBrokersAsString()),
+                new StringSerializer(), new StringSerializer());
+    }
+
+    private void awaitOutcomeListener() throws InterruptedException {
+        MessageListenerContainer outcomeListener = registry.getListenerContainer(ReservationOutcomeConsumer.LISTENER_ID);
+        await(() -> outcomeListener.getAssignedPartitions() != null && !outcomeListener.getAssignedPartitions().isEmpty());
+    }
+
+    private static long delta(Map<String, Object> before, Map<String, Object> after, String metric) {
+        return ((Number) after.get(metric)).longValue() - ((Number) before.get(metric)).longValue();
+    }
+
+    private static String order(String id) {
+        return order(id, Instant.now());
+    }
+
+    private static String order(String id, Instant createdAt) {
+        return "{\"id\":\"" + id + "\",\"customer\":\"c\",\"createdAt\":\"" + createdAt + "\","
+                + "\"items\":[{\"productId\":\"p1\",\"quantity\":1,\"price\":5.0}],\"total\":5.0}";
+    }
+
+    private static String outcome(String orderId, String status) {
+        return "{\"orderId\":\"" + orderId + "\",\"customer\":\"c\",\"status\":\"" + status + "\",\"partition\":0,"
+                + "\"offset\":0,\"processedAt\":\"" + Instant.now() + "\"}";
+    }
+
+    private List<String> parkedKeys() {
+        try (KafkaConsumer<String, String> reader = new KafkaConsumer<>(Map.of(
+                ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()), new StringDeserializer(), new StringDeserializer())) {
+            List<TopicPartition> partitions = reader.partitionsFor(PARKING).stream()
+                    .map(info -> new TopicPartition(PARKING, info.partition()))
+                    .toList();
+            reader.assign(partitions);
+            reader.seekToBeginning(partitions);
+            Map<TopicPartition, Long> end = reader.endOffsets(partitions);
+            List<String> keys = new ArrayList<>();
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (partitions.stream().anyMatch(tp -> reader.position(tp) < end.get(tp)) && System.currentTimeMillis() < deadline) {
+                reader.poll(Duration.ofMillis(200)).forEach(r -> keys.add(r.key()));
+            }
+            return keys;
+        }
+    }
+
+    private long committed(int partition) {
+        try (AdminClient admin = AdminClient.create(
+                Map.of(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, broker.getBrokersAsString()))) {
+            Map<TopicPartition, OffsetAndMetadata> offsets =
+                    admin.listConsumerGroupOffsets("consumer-group-2").partitionsToOffsetAndMetadata().get();
+            OffsetAndMetadata offset = offsets.get(new TopicPartition("pedidos", partition));
+            return offset != null ? offset.offset() : 0;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,177 @@
+package com.rairai.producer_kafka.admission;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Controle de admissão do {@code POST /api/pedidos}: um token bucket por cliente ({@code Order.customer}) e um limite
+ * global de envios em voo (aceitos e ainda sem resposta do broker).
+ * <p>
+ * Os baldes ficam numa tabela de tamanho fixo ({@code app.admission.max-customers}) com sondagem linear curta e CAS,
+ * sem lock. Um cliente novo ocupa um slot vazio ou o de um balde já cheio (que não perde nada ao sair); se todos os
+ * slots sondados estão em uso, substitui o que está mais perto de encher. A memória fica limitada mesmo com muitos
+ * clientes distintos, ao custo de um cliente despejado recomeçar com o balde cheio.
+ */
+@Component
+public class AdmissionControl {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private static final int PROBES = 8;
+    static final String ANONYMOUS = "";
+
+    public enum Verdict { ADMITTED, CUSTOMER_RATE, CONCURRENCY }
+
+    /** Resultado da admissão; {@code retryAfterSeconds} só vale para recusas. */
+    public record Decision(Verdict verdict, long retryAfterSeconds) {
+
+        private static final Decision ADMITTED = new Decision(Verdict.ADMITTED, 0);
+
+        public boolean admitted() {
+            return verdict == Verdict.ADMITTED;
+        }
+    }
+
+    private final boolean enabled;
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int maxInFlight;
+    private final LongSupplier clock;
+
+    private final AtomicReferenceArray<TokenBucket> buckets;
+    private final int mask;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedRate = new LongAdder();
+    private final LongAdder rejectedConcurrency = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Autowired
+    public AdmissionControl(@Value("${app.admission.enabled:true}") boolean enabled,
+                            @Value("${app.admission.customer-rate:50}") double customerRate,
+                            @Value("${app.admission.customer-burst:100}") int customerBurst,
+                            @Value("${app.admission.max-customers:65536}") int maxCustomers,
+                            @Value("${app.admission.max-in-flight:1000}") int maxInFlight) {
+        this(enabled, customerRate, customerBurst, maxCustomers, maxInFlight, System::nanoTime);
+    }
+
+    AdmissionControl(boolean enabled, double customerRate, int customerBurst, int maxCustomers, int maxInFlight,
+                     LongSupplier clock) {
+        this.enabled = enabled;
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / customerRate);
+        this.burstNanos = intervalNanos * Math.max(1, customerBurst);
+        this.maxInFlight = maxInFlight;
+        this.clock = clock;
+        int capacity = Integer.highestOneBit(Math.max(PROBES, maxCustomers - 1)) << 1;
+        this.buckets = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        if (enabled) {
+            logger.info("Admissão de pedidos: {} pedidos/s por cliente (rajada {}), {} envios em voo, {} clientes",
+                    customerRate, customerBurst, maxInFlight, capacity);
+        }
+    }
+
+
+    /**
+     * Decide se o pedido do cliente entra. Um pedido admitido ocupa uma vaga do limite global até
+     * {@link #release()}, que deve ser chamado quando o envio terminar.
+     */
+    public Decision admit(String customer) {
+        if (!enabled) {
+            return Decision.ADMITTED;
+        }
+        long now = clock.getAsLong();
+        long wait = bucket(customer != null ? customer : ANONYMOUS, now).tryAcquire(now, intervalNanos, burstNanos);
+        if (wait > 0) {
+            rejectedRate.increment();
+            return new Decision(Verdict.CUSTOMER_RATE, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999)));
+        }
+        // o token já foi gasto; uma recusa por concorrência não o devolve, o que também freia quem insiste
+        if (!tryEnter()) {
+            rejectedConcurrency.increment();
+            return new Decision(Verdict.CONCURRENCY, 1);
+        }
+        admitted.increment();
+        return Decision.ADMITTED;
+    }
+
+    public void release() {
+        if (enabled) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("admitted", admitted.sum());
+        metrics.put("rejectedCustomerRate", rejectedRate.sum());
+        metrics.put("rejectedConcurrency", rejectedConcurrency.sum());
+        metrics.put("inFlight", inFlight.get());
+        metrics.put("maxInFlight", maxInFlight);
+        metrics.put("evictions", evictions.sum());
+        return metrics;
+    }
+
+
+    private boolean tryEnter() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    TokenBucket bucket(String customer, long now) {
+        int hash = customer.hashCode();
+        int start = (hash ^ (hash >>> 16)) & mask;
+        while (true) {
+            int empty = -1;
+            int victim = -1;
+            TokenBucket victimBucket = null;
+            for (int probe = 0; probe < PROBES; probe++) {
+                int slot = (start + probe) & mask;
+                TokenBucket bucket = buckets.get(slot);
+                if (bucket == null) {
+                    // o cliente ainda pode estar mais adiante na sondagem, então segue procurando
+                    empty = empty < 0 ? slot : empty;
+                } else if (bucket.customer.equals(customer)) {
+                    return bucket;
+                } else if (victimBucket == null || (!victimBucket.isIdle(now)
+                        && (bucket.isIdle(now) || bucket.fullAt() - victimBucket.fullAt() < 0))) {
+                    victim = slot;
+                    victimBucket = bucket;
+                }
+            }
+            TokenBucket fresh = new TokenBucket(customer, now);
+            if (empty >= 0) {
+                if (buckets.compareAndSet(empty, null, fresh)) {
+                    return fresh;
+                }
+            } else if (buckets.compareAndSet(victim, victimBucket, fresh)) {
+                if (!victimBucket.isIdle(now)) {
+                    evictions.increment();
+                }
+                return fresh;
+            }
+            // outra thread ocupou o slot; sonda de novo
+        }
+    }
+}
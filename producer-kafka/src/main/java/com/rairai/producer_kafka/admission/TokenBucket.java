@@ -0,0 +1,46 @@
+package com.rairai.producer_kafka.admission;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Token bucket de um cliente guardado num único {@code long}: o instante teórico em que o balde volta a ficar cheio
+ * (GCRA). Retirar um token é um CAS que avança esse instante em {@code 1/rate}; o pedido é recusado quando ele passaria
+ * de {@code agora + burst/rate}. Equivale a um balde de {@code burst} tokens reabastecido a {@code rate} por segundo,
+ * sem lock e sem thread de reabastecimento.
+ */
+final class TokenBucket {
+
+    final String customer;
+    private final AtomicLong fullAt;
+
+    TokenBucket(String customer, long now) {
+        this.customer = customer;
+        this.fullAt = new AtomicLong(now);
+    }
+
+
+    /** Retorna 0 se o token foi retirado, ou quantos nanos faltam para o próximo token. */
+    long tryAcquire(long now, long intervalNanos, long burstNanos) {
+        while (true) {
+            long current = fullAt.get();
+            long base = Math.max(current, now);
+            long next = base + intervalNanos;
+            if (next - now > burstNanos) {
+                return next - now - burstNanos;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /** Balde cheio: descartá-lo não muda nada para o cliente, que recomeça com um balde cheio. */
+    boolean isIdle(long now) {
+        return fullAt.get() - now <= 0;
+    }
+
+    long fullAt() {
+        return fullAt.get();
+    }
+}
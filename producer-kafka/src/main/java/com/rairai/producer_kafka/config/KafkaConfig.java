@@ -1,6 +1,8 @@
 package com.rairai.producer_kafka.config;
 
 import org.apache.kafka.clients.admin.NewTopic;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.TopicBuilder;
@@ -15,4 +17,13 @@ public class KafkaConfig {
                 .replicas(1)
                 .build();
     }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.lanes.enabled", havingValue = "true")
+    public NewTopic pedidosExpressTopic(@Value("${app.lanes.express-topic:pedidos-express}") String expressTopic) {
+        return TopicBuilder.name(expressTopic)
+                .partitions(3)
+                .replicas(1)
+                .build();
+    }
 }
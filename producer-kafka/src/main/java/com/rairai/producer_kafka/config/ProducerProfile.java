@@ -0,0 +1,75 @@
+package com.rairai.producer_kafka.config;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+
+/**
+ * Conjuntos de configuração do produtor escolhidos por {@code app.producer.profile}. Cada perfil define juntos linger,
+ * tamanho de lote e compressão, que só fazem sentido combinados: lote grande sem linger não enche, e compressão em lote
+ * de um registro só gasta CPU. Todos mantêm idempotência, que junto com {@code acks=all} evita duplicar pedido quando
+ * o produtor reenvia.
+ */
+public enum ProducerProfile {
+
+    /** Envia assim que o registro chega; lotes só se formam quando já há um envio em voo. */
+    LOW_LATENCY("low-latency", 0, 16_384, "none", 33_554_432),
+    /** Poucos milissegundos de espera e lz4, barato em CPU. */
+    BALANCED("balanced", 5, 65_536, "lz4", 33_554_432),
+    /** Lotes grandes com zstd: menos bytes e requisições por pedido em troca de latência. */
+    MAX_THROUGHPUT("max-throughput", 50, 262_144, "zstd", 67_108_864);
+
+    private final String name;
+    private final int lingerMs;
+    private final int batchSize;
+    private final String compression;
+    private final long bufferMemory;
+
+    ProducerProfile(String name, int lingerMs, int batchSize, String compression, long bufferMemory) {
+        this.name = name;
+        this.lingerMs = lingerMs;
+        this.batchSize = batchSize;
+        this.compression = compression;
+        this.bufferMemory = bufferMemory;
+    }
+
+
+    public static ProducerProfile of(String name) {
+        return Arrays.stream(values())
+                .filter(profile -> profile.name.equalsIgnoreCase(name.trim()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Perfil de produtor desconhecido: " + name
+                        + " (use " + Arrays.stream(values()).map(ProducerProfile::profileName)
+                        .collect(Collectors.joining(", ")) + ")"));
+    }
+
+    public String profileName() {
+        return name;
+    }
+
+    public int lingerMs() {
+        return lingerMs;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    public String compression() {
+        return compression;
+    }
+
+    /** Propriedades do {@link ProducerConfig} que o perfil controla. */
+    public Map<String, Object> settings() {
+        return Map.of(
+                ProducerConfig.LINGER_MS_CONFIG, lingerMs,
+                ProducerConfig.BATCH_SIZE_CONFIG, batchSize,
+                ProducerConfig.COMPRESSION_TYPE_CONFIG, compression,
+                ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory,
+                ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true,
+                ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, 5);
+    }
+}
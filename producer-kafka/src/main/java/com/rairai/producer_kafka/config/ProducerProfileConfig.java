@@ -0,0 +1,29 @@
+package com.rairai.producer_kafka.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.kafka.autoconfigure.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+
+/**
+ * Aplica o {@link ProducerProfile} escolhido na fábrica de produtores do Spring Boot. As chaves do perfil prevalecem
+ * sobre as mesmas chaves em {@code spring.kafka.producer.*}; acks, retries e serializadores continuam vindo de lá.
+ */
+@Configuration
+public class ProducerProfileConfig {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProducerProfileConfig.class);
+
+    @Bean
+    public DefaultKafkaProducerFactoryCustomizer producerProfileCustomizer(
+            @Value("${app.producer.profile:balanced}") String profileName) {
+        ProducerProfile profile = ProducerProfile.of(profileName);
+        return factory -> {
+            factory.updateConfigs(profile.settings());
+            logger.info("Perfil do produtor {}: {}", profile.profileName(), profile.settings());
+        };
+    }
+}
@@ -1,27 +1,118 @@
 package com.rairai.producer_kafka.controller;
 
+import com.rairai.producer_kafka.admission.AdmissionControl;
+import com.rairai.producer_kafka.idempotency.IdempotencyCache;
+import com.rairai.producer_kafka.lanes.PriorityLanes;
 import com.rairai.producer_kafka.model.Order;
+import com.rairai.producer_kafka.outbox.OutboxRelay;
+import com.rairai.producer_kafka.partitioning.PartitionLoadMonitor;
+import com.rairai.producer_kafka.partitioning.PartitionRouter;
 import com.rairai.producer_kafka.services.ProducerService;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.validation.Valid;
 
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/pedidos")
 public class OrderController {
 
     private final ProducerService producerService;
+    private final PartitionRouter partitionRouter;
+    private final PartitionLoadMonitor partitionLoadMonitor;
+    private final AdmissionControl admissionControl;
+    private final IdempotencyCache idempotencyCache;
+    private final PriorityLanes lanes;
+    private final ObjectProvider<OutboxRelay> outboxRelay;
 
-    public OrderController(ProducerService producerService) {
+    public OrderController(ProducerService producerService, PartitionRouter partitionRouter,
+                           PartitionLoadMonitor partitionLoadMonitor, AdmissionControl admissionControl,
+                           IdempotencyCache idempotencyCache, PriorityLanes lanes,
+                           ObjectProvider<OutboxRelay> outboxRelay) {
         this.producerService = producerService;
+        this.partitionRouter = partitionRouter;
+        this.partitionLoadMonitor = partitionLoadMonitor;
+        this.admissionControl = admissionControl;
+        this.idempotencyCache = idempotencyCache;
+        this.lanes = lanes;
+        this.outboxRelay = outboxRelay;
     }
 
     @PostMapping
-    public ResponseEntity<Order> criarPedido(@Valid @RequestBody Order order) {
-        producerService.sendOrder(order);
+    public ResponseEntity<Order> criarPedido(
+            @RequestHeader(name = IdempotencyCache.HEADER, required = false) String idempotencyKey,
+            @RequestHeader(name = PriorityLanes.HEADER, required = false) String priority,
+            @Valid @RequestBody Order order) {
+        lanes.applyHeader(order, priority);
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return publicar(order, null);
+        }
+        // a repetição recebe a resposta original (com o id gerado na primeira vez) antes de gastar token de admissão
+        IdempotencyCache.Claim claim = idempotencyCache.claim(idempotencyKey, IdempotencyCache.fingerprint(order));
+        if (!claim.owner()) {
+            return claim.response();
+        }
+        ResponseEntity<Order> response;
+        try {
+            response = publicar(order, claim);
+        } catch (RuntimeException e) {
+            idempotencyCache.abandon(claim);
+            throw e;
+        }
+        idempotencyCache.complete(claim, response);
+        return response;
+    }
+
+    private ResponseEntity<Order> publicar(Order order, IdempotencyCache.Claim claim) {
+        AdmissionControl.Decision decision = admissionControl.admit(order.getCustomer());
+        if (!decision.admitted()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(decision.retryAfterSeconds()))
+                    .build();
+        }
+        try {
+            // a vaga do limite global só é devolvida quando o broker responde (ou o pedido fica durável no outbox)
+            producerService.sendOrder(order).whenComplete((result, ex) -> {
+                admissionControl.release();
+                if (ex != null && claim != null) {
+                    // o pedido não chegou ao broker: a próxima tentativa com a mesma chave publica de novo
+                    idempotencyCache.abandon(claim);
+                }
+            });
+        } catch (RuntimeException e) {
+            admissionControl.release();
+            throw e;
+        }
         return ResponseEntity.status(HttpStatus.CREATED).body(order);
     }
+
+    @GetMapping("/admissao")
+    public ResponseEntity<Map<String, Object>> admissao() {
+        return ResponseEntity.ok(admissionControl.metrics());
+    }
+
+    @GetMapping("/idempotencia")
+    public ResponseEntity<Map<String, Object>> idempotencia() {
+        return ResponseEntity.ok(idempotencyCache.metrics());
+    }
+
+    @GetMapping("/outbox")
+    public ResponseEntity<Map<String, Object>> outbox() {
+        OutboxRelay relay = outboxRelay.getIfAvailable();
+        return ResponseEntity.ok(relay != null ? relay.metrics() : Map.of("enabled", false));
+    }
+
+    @GetMapping("/particoes")
+    public ResponseEntity<Map<String, Object>> particoes() {
+        return ResponseEntity.ok(Map.of(
+                "strategy", partitionRouter.strategyName(),
+                "skew", partitionLoadMonitor.lastSkew(),
+                "ratesPerSecond", partitionLoadMonitor.lastRates()));
+    }
 }
@@ -0,0 +1,243 @@
+package com.rairai.producer_kafka.idempotency;
+
+import com.rairai.producer_kafka.model.Order;
+import com.rairai.producer_kafka.model.OrderItem;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Respostas do {@code POST /api/pedidos} por {@code Idempotency-Key}. A primeira requisição de uma chave vira dona
+ * ({@link Claim#owner()}) e publica o pedido; as repetidas recebem a mesma resposta, esperando por ela se a primeira
+ * ainda estiver em andamento. Só respostas 2xx ficam guardadas: uma recusa (429) ou falha libera a chave para a próxima
+ * tentativa. A chave guarda o hash do corpo que a criou: reusá-la com outro pedido responde 422 em vez da resposta
+ * do primeiro.
+ * <p>
+ * Como o TTL é o mesmo para todas, a ordem de criação é a ordem de expiração: uma fila FIFO de chaves basta para
+ * despejar as vencidas e manter no máximo {@code app.idempotency.max-entries}, sem lock. Uma chave em andamento nunca
+ * é despejada (a repetição viraria dona e publicaria de novo): ao chegar à cabeça ela sai da fila para um conjunto à
+ * parte, e o despejo segue para as seguintes. Quando a resposta sai a chave volta ao fim da fila, ou é removida se o
+ * TTL já passou. Além do limite ficam só as chaves em andamento, no máximo uma por requisição aberta.
+ */
+@Component
+public class IdempotencyCache {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    /** Dona da chave ({@code response == null}) ou resposta já produzida para ela. */
+    public record Claim(String key, Entry entry, ResponseEntity<Order> response) {
+
+        public boolean owner() {
+            return response == null;
+        }
+    }
+
+    public static final class Entry {
+
+        private final long createdAt;
+        private final String fingerprint;
+        private final CompletableFuture<ResponseEntity<Order>> response = new CompletableFuture<>();
+
+        private Entry(long createdAt, String fingerprint) {
+            this.createdAt = createdAt;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private record Queued(String key, Entry entry) {
+    }
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final long waitMs;
+    private final LongSupplier clock;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Queued> order = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Map<Entry, Queued> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder mismatches = new LongAdder();
+
+    @Autowired
+    public IdempotencyCache(@Value("${app.idempotency.ttl-ms:600000}") long ttlMs,
+                            @Value("${app.idempotency.max-entries:100000}") int maxEntries,
+                            @Value("${app.idempotency.in-flight-wait-ms:5000}") long waitMs) {
+        this(ttlMs, maxEntries, waitMs, System::nanoTime);
+    }
+
+    IdempotencyCache(long ttlMs, int maxEntries, long waitMs, LongSupplier clock) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.maxEntries = maxEntries;
+        this.waitMs = waitMs;
+        this.clock = clock;
+    }
+
+
+    /**
+     * Reivindica a chave para o corpo com o {@link #fingerprint} dado. Se outra requisição com a mesma chave está em
+     * andamento, espera a resposta dela por até {@code app.idempotency.in-flight-wait-ms}; se ela desistir, tenta de
+     * novo e pode virar a dona. A chave já usada com outro corpo responde 422.
+     */
+    public Claim claim(String key, String fingerprint) {
+        while (true) {
+            long now = clock.getAsLong();
+            Entry fresh = new Entry(now, fingerprint);
+            Entry existing = entries.putIfAbsent(key, fresh);
+            if (existing == null) {
+                misses.increment();
+                order.add(new Queued(key, fresh));
+                queued.incrementAndGet();
+                evict(now);
+                return new Claim(key, fresh, null);
+            }
+            if (now - existing.createdAt >= ttlNanos && existing.response.isDone()) {
+                entries.remove(key, existing);
+                continue;
+            }
+            if (!existing.fingerprint.equals(fingerprint)) {
+                mismatches.increment();
+                throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_CONTENT,
+                        "Idempotency-Key já usada com outro corpo de pedido");
+            }
+            if (!existing.response.isDone()) {
+                coalesced.increment();
+            }
+            ResponseEntity<Order> response = await(existing);
+            if (response != null) {
+                hits.increment();
+                return new Claim(key, existing, response);
+            }
+        }
+    }
+
+    /** Guarda a resposta da dona; respostas que não são 2xx não ficam no cache. */
+    public void complete(Claim claim, ResponseEntity<Order> response) {
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            abandon(claim);
+            return;
+        }
+        claim.entry().response.complete(response);
+        requeue(claim.entry());
+    }
+
+    /**
+     * Libera a chave: quem esperava por ela tenta de novo. Depois de {@link #complete} tira a resposta do cache (envio
+     * que falhou no broker).
+     */
+    public void abandon(Claim claim) {
+        entries.remove(claim.key(), claim.entry());
+        claim.entry().response.complete(null);
+        inFlight.remove(claim.entry());
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("entries", entries.size());
+        metrics.put("inFlightOutOfQueue", inFlight.size());
+        metrics.put("hits", hits.sum());
+        metrics.put("coalesced", coalesced.sum());
+        metrics.put("misses", misses.sum());
+        metrics.put("mismatches", mismatches.sum());
+        return metrics;
+    }
+
+    /** Hash do conteúdo do pedido enviado pelo cliente; id e createdAt gerados no servidor ficam de fora. */
+    public static String fingerprint(Order order) {
+        StringBuilder body = new StringBuilder()
+                .append(order.getCustomer()).append('|')
+                .append(order.getTotal()).append('|')
+                .append(order.getPriority());
+        if (order.getItems() != null) {
+            for (OrderItem item : order.getItems()) {
+                body.append('|').append(item.getProductId()).append(',').append(item.getQuantity())
+                        .append(',').append(item.getPrice());
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(body.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+
+    private ResponseEntity<Order> await(Entry entry) {
+        try {
+            return entry.response.get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Requisição com a mesma Idempotency-Key ainda em andamento");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrompido", e);
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+
+    private void evict(long now) {
+        while (true) {
+            Queued head = order.peek();
+            if (head == null || (queued.get() <= maxEntries && now - head.entry().createdAt < ttlNanos)) {
+                return;
+            }
+            Queued oldest = order.poll();
+            if (oldest == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            if (oldest.entry().response.isDone()) {
+                entries.remove(oldest.key(), oldest.entry());
+                continue;
+            }
+            // em andamento: despejar deixaria a repetição publicar o pedido de novo. Sai da fila até a resposta sair;
+            // se ela saiu entre o isDone e o put, quem chega primeiro ao remove devolve a chave à fila
+            inFlight.put(oldest.entry(), oldest);
+            if (oldest.entry().response.isDone()) {
+                requeue(oldest.entry());
+            }
+        }
+    }
+
+    /** Devolve à fila uma chave tirada dela em andamento, ou a remove se o TTL já passou. */
+    private void requeue(Entry entry) {
+        Queued parked = inFlight.remove(entry);
+        if (parked == null || entries.get(parked.key()) != entry) {
+            return;
+        }
+        long now = clock.getAsLong();
+        if (now - entry.createdAt >= ttlNanos) {
+            entries.remove(parked.key(), entry);
+            return;
+        }
+        order.add(parked);
+        queued.incrementAndGet();
+        evict(now);
+    }
+}
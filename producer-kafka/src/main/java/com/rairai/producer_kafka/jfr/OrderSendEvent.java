@@ -0,0 +1,34 @@
+package com.rairai.producer_kafka.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+@Name("com.rairai.producer.OrderSend")
+@Label("Envio de Pedido")
+@Category({"Pedidos", "Producer"})
+@Description("Envio de um pedido para o Kafka, do send até a confirmação do broker")
+@Enabled(false)
+@StackTrace(false)
+public class OrderSendEvent extends Event {
+
+    @Label("Order Id")
+    public String orderId;
+
+    @Label("Item Count")
+    public int itemCount;
+
+    @Label("Partition")
+    public int partition = -1;
+
+    @Label("Offset")
+    public long offset = -1;
+
+    @Label("Success")
+    public boolean success;
+}
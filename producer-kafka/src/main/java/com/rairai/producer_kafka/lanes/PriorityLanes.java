@@ -0,0 +1,48 @@
+package com.rairai.producer_kafka.lanes;
+
+import com.rairai.producer_kafka.model.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Escolhe o tópico do pedido pela prioridade: {@code express} vai para {@code app.lanes.express-topic}, o resto
+ * (importações em lote, pedidos sem prioridade) continua em {@code pedidos}. Tópicos separados deixam os consumidores
+ * pausarem só as partições de bulk enquanto houver backlog express.
+ */
+@Component
+public class PriorityLanes {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriorityLanes.class);
+
+    public static final String HEADER = "X-Order-Priority";
+    public static final String EXPRESS = "express";
+    public static final String BULK = "bulk";
+    public static final String BULK_TOPIC = "pedidos";
+
+    private final boolean enabled;
+    private final String expressTopic;
+
+    public PriorityLanes(@Value("${app.lanes.enabled:false}") boolean enabled,
+                         @Value("${app.lanes.express-topic:pedidos-express}") String expressTopic) {
+        this.enabled = enabled;
+        this.expressTopic = expressTopic;
+        if (enabled) {
+            logger.info("Filas de prioridade habilitadas: express={}, bulk={}", expressTopic, BULK_TOPIC);
+        }
+    }
+
+
+    public String topicFor(Order order) {
+        return enabled && EXPRESS.equalsIgnoreCase(order.getPriority()) ? expressTopic : BULK_TOPIC;
+    }
+
+    /** O header, quando presente, prevalece sobre o campo {@code priority} do corpo. */
+    public void applyHeader(Order order, String header) {
+        if (header != null && !header.isBlank()) {
+            order.setPriority(header.trim().toLowerCase());
+        }
+    }
+}
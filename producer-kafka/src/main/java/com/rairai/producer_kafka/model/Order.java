@@ -10,6 +10,7 @@ public class Order {
     private List<OrderItem> items;
     private Double total;
     private Instant createdAt;
+    private String priority;
 
     public Order() {
         this.id = UUID.randomUUID().toString();
@@ -55,4 +56,13 @@ public class Order {
     public void setCreatedAt(Instant createdAt) {
         this.createdAt = createdAt;
     }
+
+    /** Fila de prioridade do pedido: {@code express} ou {@code bulk} (padrão quando vazio). */
+    public String getPriority() {
+        return priority;
+    }
+
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
 }
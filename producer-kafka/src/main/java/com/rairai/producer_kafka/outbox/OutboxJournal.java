@@ -0,0 +1,477 @@
+package com.rairai.producer_kafka.outbox;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+
+/**
+ * Journal local do outbox: segmentos de {@code app.outbox.segment-bytes} mapeados em memória em {@code app.outbox.dir},
+ * cada registro com tamanho, CRC32C e o pedido em JSON. Uma posição do journal é {@code base do segmento + offset}, e a
+ * base de cada segmento é múltipla do tamanho do segmento.
+ * <p>
+ * {@link #append} só volta depois que o registro está em disco. O fsync é em grupo: uma thread faz o force da faixa
+ * escrita enquanto as requisições seguintes continuam escrevendo, e o próximo force cobre todas elas de uma vez.
+ * O relay lê a faixa durável e chama {@link #ack} com a posição até onde o broker confirmou; o ack é gravado em
+ * {@code checkpoint} e os segmentos inteiramente confirmados são apagados.
+ */
+@Component
+@ConditionalOnProperty(name = "app.outbox.enabled", havingValue = "true")
+public class OutboxJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxJournal.class);
+
+    static final int HEADER = 2 * Integer.BYTES;
+    private static final String SUFFIX = ".seg";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final byte[] ZEROS = new byte[64 * 1024];
+    private static final Unmapper UNMAPPER = Unmapper.load();
+
+    public record Entry(long position, byte[] payload) {
+    }
+
+    /** Registros lidos e a posição logo depois do último (onde a próxima leitura começa). */
+    public record Batch(List<Entry> entries, long end) {
+    }
+
+    private record Segment(long base, Path path, FileChannel channel, MappedByteBuffer buffer) {
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+
+    private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pending = lock.newCondition();
+    private final Condition durableAdvanced = lock.newCondition();
+    private final ReentrantLock mappingLock = new ReentrantLock();
+    private final Thread flusher;
+
+    private Segment current;
+    private long written;
+    private volatile long durable;
+    private volatile long acked;
+    private volatile boolean running = true;
+    private boolean closed;
+    private boolean unmapped;
+    private IOException failure;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder fsyncs = new LongAdder();
+
+    public OutboxJournal(@Value("${app.outbox.dir:data/outbox}") String dir,
+                         @Value("${app.outbox.segment-bytes:67108864}") int segmentBytes) {
+        this.dir = Path.of(dir);
+        this.segmentBytes = segmentBytes;
+        try {
+            Files.createDirectories(this.dir);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível abrir o outbox em " + dir, e);
+        }
+        this.flusher = new Thread(this::flushLoop, "outbox-fsync");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+        logger.info("Outbox em {}: {} segmento(s), pendente desde a posição {} até {}", this.dir, segments.size(),
+                acked, durable);
+    }
+
+
+    /** Grava o registro e espera o fsync que o cobre. */
+    public void append(byte[] payload) {
+        int size = HEADER + payload.length;
+        if (size > segmentBytes) {
+            throw new IllegalArgumentException("Registro de " + size + " bytes maior que o segmento do outbox");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+
+        lock.lock();
+        try {
+            checkFailure();
+            int offset = (int) (written - current.base());
+            if (offset + size > segmentBytes) {
+                roll();
+                offset = 0;
+            }
+            ByteBuffer buffer = current.buffer();
+            buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+            buffer.put(offset + HEADER, payload);
+            buffer.putInt(offset, payload.length);
+            written = current.base() + offset + size;
+            long end = written;
+            appended.increment();
+            pending.signal();
+            // o close faz o último fsync antes de acordar quem espera: registro escrito nunca volta como falha
+            while (durable < end) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Outbox indisponível após falha de fsync", failure);
+                }
+                if (closed) {
+                    throw new IllegalStateException("Outbox fechado antes do fsync do registro");
+                }
+                durableAdvanced.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /** Até {@code max} registros duráveis a partir de {@code from}. */
+    public Batch read(long from, int max) {
+        // o close desfaz o mapeamento dos segmentos: ler um buffer já desmapeado derruba a JVM em vez de lançar exceção
+        mappingLock.lock();
+        try {
+            if (unmapped) {
+                throw new IllegalStateException("Outbox fechado");
+            }
+            List<Entry> entries = new ArrayList<>(Math.min(max, 1024));
+            long limit = durable;
+            long position = from;
+            while (entries.size() < max && position < limit) {
+                long base = position - position % segmentBytes;
+                Segment segment = segments.get(base);
+                if (segment == null) {
+                    Long next = segments.ceilingKey(base + 1);
+                    if (next == null) {
+                        break;
+                    }
+                    position = next;
+                    continue;
+                }
+                int offset = (int) (position - base);
+                int length = offset + HEADER <= segmentBytes ? segment.buffer().getInt(offset) : 0;
+                if (length <= 0 || offset + HEADER + length > segmentBytes) {
+                    // fim do segmento: o próximo registro foi escrito no segmento seguinte
+                    position = base + segmentBytes;
+                    continue;
+                }
+                byte[] payload = new byte[length];
+                segment.buffer().get(offset + HEADER, payload);
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                if ((int) crc.getValue() != segment.buffer().getInt(offset + Integer.BYTES)) {
+                    logger.warn("Registro corrompido no outbox na posição {}; pulando o resto do segmento {}",
+                            position, segment.path());
+                    position = base + segmentBytes;
+                    continue;
+                }
+                entries.add(new Entry(position, payload));
+                position += HEADER + length;
+            }
+            return new Batch(entries, Math.min(position, Math.max(limit, from)));
+        } finally {
+            mappingLock.unlock();
+        }
+    }
+
+    /** Espera até haver dados duráveis depois de {@code position}; retorna se há. */
+    public boolean awaitData(long position, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lock();
+        try {
+            while (durable <= position && running) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                durableAdvanced.awaitNanos(remaining);
+            }
+            return durable > position;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /** Marca como entregue tudo antes de {@code position} e apaga os segmentos que ficaram inteiramente para trás. */
+    public void ack(long position) {
+        if (position <= acked) {
+            return;
+        }
+        acked = position;
+        try {
+            Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+            Files.writeString(tmp, Long.toString(position), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC);
+            Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            long ackedBase = position - position % segmentBytes;
+            // o segmento atual nunca entra aqui: acked <= durable, que está nele. Nem o fsync nem o relay voltam a
+            // ler antes de acked, então o mapeamento pode ser desfeito já em vez de esperar o GC. Depois do close o
+            // mapa está vazio
+            mappingLock.lock();
+            try {
+                for (Segment segment : segments.headMap(ackedBase).values()) {
+                    segments.remove(segment.base());
+                    segment.channel().close();
+                    UNMAPPER.unmap(segment.buffer());
+                    Files.deleteIfExists(segment.path());
+                }
+            } finally {
+                mappingLock.unlock();
+            }
+        } catch (IOException e) {
+            // o checkpoint antigo só faz o relay reenviar pedidos já entregues
+            logger.warn("Falha ao gravar o checkpoint do outbox: {}", e.getMessage(), e);
+        }
+    }
+
+    public long ackedPosition() {
+        return acked;
+    }
+
+    public Map<String, Object> metrics() {
+        long appendedCount = appended.sum();
+        long fsyncCount = fsyncs.sum();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("appended", appendedCount);
+        metrics.put("fsyncs", fsyncCount);
+        metrics.put("recordsPerFsync", fsyncCount > 0 ? (double) appendedCount / fsyncCount : 0.0);
+        metrics.put("durablePosition", durable);
+        metrics.put("ackedPosition", acked);
+        metrics.put("segments", segments.size());
+        return metrics;
+    }
+
+
+    private void flushLoop() {
+        long flushed = durable;
+        while (running) {
+            long target;
+            lock.lock();
+            try {
+                while (written == flushed && running) {
+                    pending.awaitUninterruptibly();
+                }
+                target = written;
+            } finally {
+                lock.unlock();
+            }
+            IOException error = null;
+            try {
+                force(flushed, target);
+            } catch (IOException | RuntimeException e) {
+                error = e instanceof IOException io ? io : new IOException(e);
+                logger.error("Falha no fsync do outbox: {}", e.getMessage(), e);
+            }
+            lock.lock();
+            try {
+                if (error != null) {
+                    failure = error;
+                } else {
+                    flushed = target;
+                    durable = Math.max(durable, target);
+                    fsyncs.increment();
+                }
+                durableAdvanced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                return;
+            }
+        }
+    }
+
+    /** Force da faixa [from, to), que pode atravessar segmentos. */
+    private void force(long from, long to) throws IOException {
+        for (Segment segment : segments.subMap(from - from % segmentBytes, true, to, false).values()) {
+            long start = Math.max(from, segment.base()) - segment.base();
+            long end = Math.min(to, segment.base() + segmentBytes) - segment.base();
+            if (end > start) {
+                segment.buffer().force((int) start, (int) (end - start));
+            }
+        }
+    }
+
+    private void roll() {
+        try {
+            current = open(current.base() + segmentBytes);
+            written = current.base();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível criar segmento do outbox", e);
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Outbox indisponível após falha de fsync", failure);
+        }
+        if (!running) {
+            throw new IllegalStateException("Outbox fechado");
+        }
+    }
+
+
+    private void recover() throws IOException {
+        Path checkpoint = dir.resolve(CHECKPOINT);
+        long checkpointed = Files.exists(checkpoint) ? Long.parseLong(Files.readString(checkpoint).trim()) : 0;
+
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path path : files.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).toList()) {
+                String name = path.getFileName().toString();
+                long base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                if (base + segmentBytes <= checkpointed) {
+                    Files.delete(path);
+                } else {
+                    open(base);
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            open(checkpointed - checkpointed % segmentBytes);
+        }
+        current = segments.lastEntry().getValue();
+        long first = segments.firstKey();
+        acked = Math.max(checkpointed, first);
+
+        // o fim do último segmento é o primeiro registro incompleto; o que vem depois é zerado para não ressuscitar
+        // registros velhos quando novas escritas terminarem exatamente em cima deles
+        int offset = current.base() < acked ? (int) (acked - current.base()) : 0;
+        MappedByteBuffer buffer = current.buffer();
+        while (offset + HEADER <= segmentBytes) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER + length > segmentBytes) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER, payload);
+            CRC32C crc = new CRC32C();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+                break;
+            }
+            offset += HEADER + length;
+        }
+        if (offset < segmentBytes) {
+            // em blocos: zerar de uma vez alocaria um array do tamanho do segmento
+            for (int position = offset; position < segmentBytes; position += ZEROS.length) {
+                buffer.put(position, ZEROS, 0, Math.min(ZEROS.length, segmentBytes - position));
+            }
+            buffer.force();
+        }
+        written = current.base() + offset;
+        durable = written;
+    }
+
+    private Segment open(long base) throws IOException {
+        Path path = dir.resolve(String.format("%020d%s", base, SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        Segment segment = new Segment(base, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes));
+        segments.put(base, segment);
+        return segment;
+    }
+
+
+    @PreDestroy
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            pending.signalAll();
+            durableAdvanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            if (failure == null && written > durable) {
+                force(durable, written);
+                durable = written;
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e instanceof IOException io ? io : new IOException(e);
+            logger.warn("Falha no fsync final do outbox: {}", e.getMessage(), e);
+        } finally {
+            closed = true;
+            durableAdvanced.signalAll();
+            lock.unlock();
+        }
+        // flusher ainda preso num fsync (join expirou) pode tocar os buffers: aí o unmap fica para o GC. Leituras
+        // esperam o mappingLock e, depois dele, falham em vez de tocar um buffer desmapeado
+        boolean unmap = !flusher.isAlive();
+        mappingLock.lock();
+        try {
+            unmapped = true;
+            for (Segment segment : segments.values()) {
+                try {
+                    segment.channel().close();
+                } catch (IOException e) {
+                    logger.warn("Falha ao fechar o segmento {} do outbox: {}", segment.path(), e.getMessage(), e);
+                }
+                if (unmap) {
+                    UNMAPPER.unmap(segment.buffer());
+                }
+            }
+            segments.clear();
+        } finally {
+            mappingLock.unlock();
+        }
+    }
+
+
+    /**
+     * Desfaz o mapeamento de um segmento sem esperar o GC, pelo {@code Unsafe.invokeCleaner} do JDK. Sem ele (JVM sem
+     * {@code jdk.unsupported}) o mapeamento continua até o buffer ser coletado.
+     */
+    private record Unmapper(Object unsafe, Method invokeCleaner) {
+
+        static Unmapper load() {
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                return new Unmapper(field.get(null), unsafeClass.getMethod("invokeCleaner", ByteBuffer.class));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                logger.warn("Unmap explícito indisponível; segmentos do outbox ficam mapeados até o GC: {}", e.getMessage());
+                return new Unmapper(null, null);
+            }
+        }
+
+        void unmap(MappedByteBuffer buffer) {
+            if (invokeCleaner == null) {
+                return;
+            }
+            try {
+                invokeCleaner.invoke(unsafe, buffer);
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Falha ao desfazer o mapeamento de um segmento do outbox: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.rairai.producer_kafka.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rairai.producer_kafka.model.Order;
+import com.rairai.producer_kafka.services.ProducerService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+
+/**
+ * Drena o {@link OutboxJournal} para o Kafka em lotes de até {@code app.outbox.relay-batch-size} pedidos: envia o lote
+ * inteiro, espera todas as confirmações e só então avança o checkpoint. Se o broker falhar o lote é reenviado depois de
+ * {@code app.outbox.retry-backoff-ms}; pedidos do lote que já tinham sido entregues chegam de novo (at-least-once) e
+ * a deduplicação por orderId dos consumidores descarta a repetição.
+ */
+@Component
+@ConditionalOnProperty(name = "app.outbox.enabled", havingValue = "true")
+public class OutboxRelay {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxJournal journal;
+    private final ObjectMapper mapper;
+    private final Function<Order, CompletableFuture<?>> sender;
+    private final int batchSize;
+    private final long timeoutMs;
+    private final long backoffMs;
+    private final Thread thread;
+
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile boolean running = true;
+
+    @Autowired
+    public OutboxRelay(OutboxJournal journal, ObjectMapper mapper, ProducerService producerService,
+                       @Value("${app.outbox.relay-batch-size:1000}") int batchSize,
+                       @Value("${app.outbox.relay-timeout-ms:30000}") long timeoutMs,
+                       @Value("${app.outbox.retry-backoff-ms:1000}") long backoffMs) {
+        this(journal, mapper, producerService::publish, batchSize, timeoutMs, backoffMs);
+    }
+
+    OutboxRelay(OutboxJournal journal, ObjectMapper mapper, Function<Order, CompletableFuture<?>> sender,
+                int batchSize, long timeoutMs, long backoffMs) {
+        this.journal = journal;
+        this.mapper = mapper;
+        this.sender = sender;
+        this.batchSize = batchSize;
+        this.timeoutMs = timeoutMs;
+        this.backoffMs = backoffMs;
+        this.thread = new Thread(this::run, "outbox-relay");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+
+    private void run() {
+        boolean failing = false;
+        while (running) {
+            try {
+                long from = journal.ackedPosition();
+                OutboxJournal.Batch batch = journal.read(from, batchSize);
+                if (batch.entries().isEmpty()) {
+                    journal.ack(batch.end());
+                    journal.awaitData(batch.end(), 500);
+                    continue;
+                }
+                relay(batch);
+                journal.ack(batch.end());
+                relayed.add(batch.entries().size());
+                batches.increment();
+                if (failing) {
+                    logger.info("Outbox voltou a entregar ao Kafka; posição {}", batch.end());
+                    failing = false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failures.increment();
+                if (!failing) {
+                    logger.warn("Falha ao entregar lote do outbox ao Kafka; tentando de novo a cada {} ms: {}",
+                            backoffMs, e.getMessage());
+                    failing = true;
+                }
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void relay(OutboxJournal.Batch batch) throws Exception {
+        CompletableFuture<?>[] sends = new CompletableFuture<?>[batch.entries().size()];
+        for (int i = 0; i < sends.length; i++) {
+            Order order = decode(batch.entries().get(i));
+            if (order == null) {
+                sends[i] = CompletableFuture.completedFuture(null);
+                continue;
+            }
+            try {
+                sends[i] = sender.apply(order);
+            } catch (RuntimeException e) {
+                // send pode falhar antes de devolver o future (metadados indisponíveis, buffer cheio)
+                sends[i] = CompletableFuture.failedFuture(e);
+            }
+        }
+        CompletableFuture.allOf(sends).get(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Registro que não vira pedido não tem como ser entregue; reenviá-lo só travaria o outbox. */
+    private Order decode(OutboxJournal.Entry entry) {
+        try {
+            return mapper.readValue(entry.payload(), Order.class);
+        } catch (IOException e) {
+            logger.error("Registro do outbox na posição {} não é um pedido válido; descartado: {}", entry.position(),
+                    e.getMessage());
+            return null;
+        }
+    }
+
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>(journal.metrics());
+        metrics.put("relayed", relayed.sum());
+        metrics.put("batches", batches.sum());
+        metrics.put("relayFailures", failures.sum());
+        return metrics;
+    }
+
+
+    /**
+     * Para o relay e espera a thread terminar. Roda antes do close do {@link OutboxJournal} (o Spring destrói primeiro
+     * quem depende dele), então o journal só desfaz o mapeamento dos segmentos com o relay parado.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            logger.warn("Relay do outbox não terminou em 5 s; leituras seguintes do journal vão falhar após o close");
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.rairai.producer_kafka.partitioning;
+
+import com.rairai.producer_kafka.model.Order;
+import org.springframework.stereotype.Component;
+
+
+/** Co-localiza os pedidos de um mesmo cliente na mesma partição. */
+@Component
+public class CustomerPartitionStrategy implements PartitionStrategy {
+
+    public static final String NAME = "customer";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int partition(Order order, int partitionCount) {
+        String customer = order.getCustomer() != null ? order.getCustomer() : order.getId();
+        return PartitionStrategy.hash(customer, partitionCount);
+    }
+}
@@ -0,0 +1,57 @@
+package com.rairai.producer_kafka.partitioning;
+
+import com.rairai.producer_kafka.model.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Roteamento explícito cliente → partição via {@code app.partitioning.routes} (ex.: {@code clienteA:0,clienteB:1}).
+ * Clientes sem rota, ou com rota fora do número atual de partições, caem no hash do id do pedido.
+ */
+@Component
+public class ExplicitPartitionStrategy implements PartitionStrategy {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExplicitPartitionStrategy.class);
+
+    public static final String NAME = "explicit";
+
+    private final Map<String, Integer> routes = new HashMap<>();
+
+    public ExplicitPartitionStrategy(@Value("${app.partitioning.routes:}") List<String> routes) {
+        for (String route : routes) {
+            if (route.isBlank()) {
+                continue;
+            }
+            int sep = route.lastIndexOf(':');
+            if (sep <= 0) {
+                throw new IllegalArgumentException("Rota inválida em app.partitioning.routes: " + route);
+            }
+            this.routes.put(route.substring(0, sep).trim(), Integer.parseInt(route.substring(sep + 1).trim()));
+        }
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int partition(Order order, int partitionCount) {
+        Integer routed = order.getCustomer() != null ? routes.get(order.getCustomer()) : null;
+        if (routed != null && routed < partitionCount) {
+            return routed;
+        }
+        if (routed != null) {
+            logger.warn("Rota do cliente {} aponta para a partição {}, mas o tópico tem {}; usando hash do pedido",
+                    order.getCustomer(), routed, partitionCount);
+        }
+        return PartitionStrategy.hash(order.getId(), partitionCount);
+    }
+}
@@ -0,0 +1,22 @@
+package com.rairai.producer_kafka.partitioning;
+
+import com.rairai.producer_kafka.model.Order;
+import org.springframework.stereotype.Component;
+
+
+/** Comportamento original: hash do id do pedido, equivalente ao partitioner padrão. */
+@Component
+public class OrderIdPartitionStrategy implements PartitionStrategy {
+
+    public static final String NAME = "order-id";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int partition(Order order, int partitionCount) {
+        return PartitionStrategy.hash(order.getId(), partitionCount);
+    }
+}
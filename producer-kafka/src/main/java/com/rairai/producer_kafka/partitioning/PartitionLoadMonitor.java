@@ -0,0 +1,109 @@
+package com.rairai.producer_kafka.partitioning;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Conta os envios por partição e, a cada {@code app.partitioning.report-interval-ms}, calcula a taxa de envio de cada
+ * partição e o skew (maior taxa / taxa média). Acima de {@code app.partitioning.skew-threshold} registra um WARN.
+ */
+@Component
+public class PartitionLoadMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionLoadMonitor.class);
+
+    private final double skewThreshold;
+    private final long skewMinSends;
+    private final long intervalMs;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<Integer, LongAdder> counts = new ConcurrentHashMap<>();
+    private volatile int partitionCount;
+    private volatile long windowStart = System.nanoTime();
+
+    private volatile Map<Integer, Double> lastRates = Map.of();
+    private volatile double lastSkew = 1.0;
+
+    public PartitionLoadMonitor(@Value("${app.partitioning.skew-threshold:2.0}") double skewThreshold,
+                                @Value("${app.partitioning.skew-min-sends:100}") long skewMinSends,
+                                @Value("${app.partitioning.report-interval-ms:10000}") long intervalMs) {
+        this.skewThreshold = skewThreshold;
+        this.skewMinSends = skewMinSends;
+        this.intervalMs = intervalMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "partition-load-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::report, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+
+    public void record(int partition, int partitionCount) {
+        this.partitionCount = partitionCount;
+        counts.computeIfAbsent(partition, p -> new LongAdder()).increment();
+    }
+
+    public Map<Integer, Double> lastRates() {
+        return lastRates;
+    }
+
+    public double lastSkew() {
+        return lastSkew;
+    }
+
+
+    void report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - windowStart) / 1e9);
+        windowStart = now;
+
+        int partitions = Math.max(partitionCount, counts.keySet().stream().mapToInt(p -> p + 1).max().orElse(0));
+        if (partitions == 0) {
+            return;
+        }
+
+        Map<Integer, Double> rates = new LinkedHashMap<>();
+        long total = 0;
+        long max = 0;
+        for (int p = 0; p < partitions; p++) {
+            LongAdder adder = counts.get(p);
+            long sent = adder != null ? adder.sumThenReset() : 0;
+            total += sent;
+            max = Math.max(max, sent);
+            rates.put(p, sent / seconds);
+        }
+        double mean = (double) total / partitions;
+        double skew = mean > 0 ? max / mean : 1.0;
+
+        lastRates = Collections.unmodifiableMap(rates);
+        lastSkew = skew;
+
+        if (total == 0) {
+            return;
+        }
+        logger.info("Taxa de envio por partição (msg/s): {}, skew={}", rates, String.format("%.2f", skew));
+        if (total >= skewMinSends && skew > skewThreshold) {
+            logger.warn("Skew de partições acima do limite: skew={} (limite={}), taxas={}. Considere outra estratégia "
+                    + "em app.partitioning.strategy", String.format("%.2f", skew), skewThreshold, rates);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
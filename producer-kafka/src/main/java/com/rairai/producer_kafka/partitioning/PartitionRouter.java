@@ -0,0 +1,44 @@
+package com.rairai.producer_kafka.partitioning;
+
+import com.rairai.producer_kafka.model.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+
+/**
+ * Escolhe a partição de cada pedido com a estratégia configurada e alimenta o {@link PartitionLoadMonitor}.
+ */
+@Component
+public class PartitionRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionRouter.class);
+
+    private final PartitionStrategy strategy;
+    private final PartitionLoadMonitor monitor;
+
+    public PartitionRouter(List<PartitionStrategy> strategies, PartitionLoadMonitor monitor,
+                           @Value("${app.partitioning.strategy:" + OrderIdPartitionStrategy.NAME + "}") String strategy) {
+        this.monitor = monitor;
+        this.strategy = strategies.stream()
+                .filter(s -> s.name().equalsIgnoreCase(strategy))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("app.partitioning.strategy desconhecida: " + strategy
+                        + ". Opções: " + strategies.stream().map(PartitionStrategy::name).toList()));
+        logger.info("Estratégia de particionamento: {}", this.strategy.name());
+    }
+
+
+    public int route(Order order, int partitionCount) {
+        int partition = strategy.partition(order, partitionCount);
+        monitor.record(partition, partitionCount);
+        return partition;
+    }
+
+    public String strategyName() {
+        return strategy.name();
+    }
+}
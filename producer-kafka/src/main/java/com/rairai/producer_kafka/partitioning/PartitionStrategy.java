@@ -0,0 +1,24 @@
+package com.rairai.producer_kafka.partitioning;
+
+import com.rairai.producer_kafka.model.Order;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Estratégia de escolha da partição de um pedido. A chave do registro continua sendo o id do pedido; a estratégia só
+ * decide para qual partição ele vai. Selecionada por {@code app.partitioning.strategy}.
+ */
+public interface PartitionStrategy {
+
+    String name();
+
+    int partition(Order order, int partitionCount);
+
+
+    /** Mesmo hash do partitioner padrão do Kafka para chaves String em UTF-8. */
+    static int hash(String key, int partitionCount) {
+        return Utils.toPositive(Utils.murmur2(key.getBytes(StandardCharsets.UTF_8))) % partitionCount;
+    }
+}
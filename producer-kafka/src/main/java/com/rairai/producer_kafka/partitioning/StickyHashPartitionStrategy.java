@@ -0,0 +1,100 @@
+package com.rairai.producer_kafka.partitioning;
+
+import com.rairai.producer_kafka.model.Order;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Hash do cliente (afinidade, como {@code customer}), mas uma chave que passa de {@code app.partitioning.hot-key-threshold}
+ * envios dentro de {@code app.partitioning.hot-key-window-ms} é "salgada": seus pedidos passam a ser espalhados em
+ * round-robin por {@code app.partitioning.salt-buckets} partições vizinhas até a janela seguinte terminar.
+ */
+@Component
+public class StickyHashPartitionStrategy implements PartitionStrategy {
+
+    private static final Logger logger = LoggerFactory.getLogger(StickyHashPartitionStrategy.class);
+
+    public static final String NAME = "sticky-hash";
+
+    private final long hotKeyThreshold;
+    private final long windowNanos;
+    private final int saltBuckets;
+
+    private final ReentrantLock rotateLock = new ReentrantLock();
+
+    private volatile Window current;
+    private volatile Set<String> previousHot = Set.of();
+
+    public StickyHashPartitionStrategy(@Value("${app.partitioning.hot-key-threshold:1000}") long hotKeyThreshold,
+                                       @Value("${app.partitioning.hot-key-window-ms:1000}") long windowMs,
+                                       @Value("${app.partitioning.salt-buckets:4}") int saltBuckets) {
+        this.hotKeyThreshold = hotKeyThreshold;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.saltBuckets = Math.max(1, saltBuckets);
+        this.current = new Window(System.nanoTime());
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int partition(Order order, int partitionCount) {
+        String key = order.getCustomer() != null ? order.getCustomer() : order.getId();
+        int base = PartitionStrategy.hash(key, partitionCount);
+
+        Window window = window(System.nanoTime());
+        long count = window.counts.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+        boolean hot = count > hotKeyThreshold || previousHot.contains(key);
+        if (!hot) {
+            return base;
+        }
+        if (window.hot.add(key)) {
+            logger.warn("Chave quente detectada: key={}, envios na janela={}, espalhando em {} partições",
+                    key, count, Math.min(saltBuckets, partitionCount));
+        }
+        int salt = (int) (count % Math.min(saltBuckets, partitionCount));
+        return (base + salt) % partitionCount;
+    }
+
+
+    private Window window(long now) {
+        Window window = current;
+        if (now - window.start < windowNanos) {
+            return window;
+        }
+        rotateLock.lock();
+        try {
+            if (current == window) {
+                previousHot = Set.copyOf(window.hot);
+                current = new Window(now);
+            }
+            return current;
+        } finally {
+            rotateLock.unlock();
+        }
+    }
+
+
+    private static final class Window {
+
+        private final long start;
+        private final Map<String, AtomicLong> counts = new ConcurrentHashMap<>();
+        private final Set<String> hot = ConcurrentHashMap.newKeySet();
+
+        private Window(long start) {
+            this.start = start;
+        }
+    }
+}
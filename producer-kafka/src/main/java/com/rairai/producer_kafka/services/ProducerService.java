@@ -1,25 +1,83 @@
 package com.rairai.producer_kafka.services;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rairai.producer_kafka.jfr.OrderSendEvent;
+import com.rairai.producer_kafka.lanes.PriorityLanes;
 import com.rairai.producer_kafka.model.Order;
+import com.rairai.producer_kafka.outbox.OutboxJournal;
+import com.rairai.producer_kafka.partitioning.PartitionRouter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 @Service
 public class ProducerService {
 
     private static final Logger logger = LoggerFactory.getLogger(ProducerService.class);
     private final KafkaTemplate<String, Object> kafkaTemplate;
-    private final String topic = "pedidos";
+    private final PartitionRouter partitionRouter;
+    private final PriorityLanes lanes;
+    private final OutboxJournal outbox;
+    private final ObjectMapper mapper;
 
-    public ProducerService(KafkaTemplate<String, Object> kafkaTemplate) {
+    public ProducerService(KafkaTemplate<String, Object> kafkaTemplate, PartitionRouter partitionRouter,
+                           PriorityLanes lanes, ObjectProvider<OutboxJournal> outbox, ObjectMapper mapper) {
         this.kafkaTemplate = kafkaTemplate;
+        this.partitionRouter = partitionRouter;
+        this.lanes = lanes;
+        this.outbox = outbox.getIfAvailable();
+        this.mapper = mapper;
+    }
+
+    /**
+     * Aceita o pedido. Com {@code app.outbox.enabled} ele é gravado no outbox local e o future volta completo assim que
+     * o registro está em disco; o relay publica depois. Sem outbox é o próprio envio ao Kafka.
+     */
+    public CompletableFuture<SendResult<String, Object>> sendOrder(Order order) {
+        if (outbox == null) {
+            return publish(order);
+        }
+        try {
+            outbox.append(mapper.writeValueAsBytes(order));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Pedido não serializável: " + order.getId(), e);
+        }
+        return CompletableFuture.completedFuture(null);
     }
 
-    public void sendOrder(Order order) {
+    public CompletableFuture<SendResult<String, Object>> publish(Order order) {
         String key = order.getId();
-        kafkaTemplate.send(topic, key, order);
+        String topic = lanes.topicFor(order);
+        int partition = partitionRouter.route(order, kafkaTemplate.partitionsFor(topic).size());
+
+        OrderSendEvent event = new OrderSendEvent();
+        if (!event.isEnabled()) {
+            return kafkaTemplate.send(topic, partition, key, order);
+        }
+
+        event.begin();
+        return kafkaTemplate.send(topic, partition, key, order)
+                .whenComplete((result, ex) -> recordSend(event, order, result, ex));
+    }
+
+    private void recordSend(OrderSendEvent event, Order order, SendResult<String, Object> result, Throwable ex) {
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.orderId = order.getId();
+        event.itemCount = order.getItems() != null ? order.getItems().size() : 0;
+        event.success = ex == null;
+        if (result != null && result.getRecordMetadata() != null) {
+            event.partition = result.getRecordMetadata().partition();
+            event.offset = result.getRecordMetadata().offset();
+        }
+        event.commit();
     }
 }
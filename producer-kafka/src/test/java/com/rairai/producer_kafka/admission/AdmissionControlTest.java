@@ -0,0 +1,56 @@
+package com.rairai.producer_kafka.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionControlTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.SECONDS.toNanos(1_000));
+
+    @Test
+    void limitsEachCustomerToBurstThenRefillsAtRate() {
+        AdmissionControl admission = new AdmissionControl(true, 10, 5, 64, 1_000, now::get);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(admission.admit("clienteA").admitted()).isTrue();
+        }
+        AdmissionControl.Decision rejected = admission.admit("clienteA");
+        assertThat(rejected.verdict()).isEqualTo(AdmissionControl.Verdict.CUSTOMER_RATE);
+        assertThat(rejected.retryAfterSeconds()).isEqualTo(1);
+        assertThat(admission.admit("clienteB").admitted()).isTrue();
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(admission.admit("clienteA").admitted()).isTrue();
+        assertThat(admission.admit("clienteA").admitted()).isFalse();
+        assertThat(admission.metrics()).containsEntry("rejectedCustomerRate", 2L);
+    }
+
+    @Test
+    void rejectsAboveGlobalInFlightUntilReleased() {
+        AdmissionControl admission = new AdmissionControl(true, 1_000, 1_000, 64, 2, now::get);
+
+        assertThat(admission.admit("a").admitted()).isTrue();
+        assertThat(admission.admit("b").admitted()).isTrue();
+        assertThat(admission.admit("c").verdict()).isEqualTo(AdmissionControl.Verdict.CONCURRENCY);
+
+        admission.release();
+        assertThat(admission.admit("c").admitted()).isTrue();
+        assertThat(admission.metrics()).containsEntry("inFlight", 2).containsEntry("rejectedConcurrency", 1L);
+    }
+
+    @Test
+    void bucketTableStaysBoundedWithManyCustomers() {
+        AdmissionControl admission = new AdmissionControl(true, 1, 1, 16, 100_000, now::get);
+
+        for (int i = 0; i < 10_000; i++) {
+            admission.admit("cliente-" + i);
+            admission.release();
+        }
+        assertThat(admission.bucket("cliente-9999", now.get()).customer).isEqualTo("cliente-9999");
+        assertThat((long) admission.metrics().get("evictions")).isPositive();
+    }
+}
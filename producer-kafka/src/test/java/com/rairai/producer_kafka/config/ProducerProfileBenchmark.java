@@ -0,0 +1,220 @@
+package com.rairai.producer_kafka.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rairai.producer_kafka.model.Order;
+import com.rairai.producer_kafka.model.OrderItem;
+import org.apache.kafka.common.compress.Compression;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.Record;
+import org.apache.kafka.common.record.RecordBatch;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+/**
+ * Benchmark offline dos perfis do produtor: passa um corpus de pedidos pelo mesmo caminho de lote e compressão do
+ * cliente Kafka ({@link MemoryRecordsBuilder}) para cada codec e configuração de lote, sem broker. Fica fora do
+ * {@code mvn test} normal (o nome não termina em Test); rode com
+ * <pre>
+ * mvn test -Dtest=ProducerProfileBenchmark -Dbenchmark.corpus=pedidos.jsonl -Dbenchmark.rate=2000
+ * </pre>
+ * O corpus tem um pedido JSON por linha, por exemplo capturado com {@code kafka-console-consumer --topic pedidos}; sem
+ * ele são gerados pedidos sintéticos. Para cada linha a tabela mostra bytes de lote por registro, a razão de compressão,
+ * a CPU por registro (serialização do lote e compressão) e a latência de envio: o tempo que o registro espera no lote
+ * sob a taxa de chegada informada mais a compressão do lote. Rede e round trip do broker não entram, e com linger 0 o
+ * modelo fecha o lote na hora, enquanto o produtor real ainda junta registros quando já tem envio em voo.
+ */
+class ProducerProfileBenchmark {
+
+    private static final String[] CODECS = {"none", "gzip", "snappy", "lz4", "zstd"};
+    private static final int PARTITIONS = 3;
+
+    private record Setting(String codec, int batchSize, int lingerMs) {
+    }
+
+    private record Result(Setting setting, long records, long batches, long bytes, long uncompressed, long cpuNanos,
+                          long p50Nanos, long p99Nanos) {
+    }
+
+
+    @Test
+    void compareCodecsAndBatchSettings() throws IOException {
+        List<byte[]> corpus = loadCorpus();
+        double rate = Double.parseDouble(System.getProperty("benchmark.rate", "2000"));
+        long[] arrivals = new long[corpus.size()];
+        for (int i = 0; i < arrivals.length; i++) {
+            arrivals[i] = (long) (i * TimeUnit.SECONDS.toNanos(1) / rate);
+        }
+
+        List<Setting> settings = new ArrayList<>();
+        for (String codec : CODECS) {
+            for (ProducerProfile profile : ProducerProfile.values()) {
+                settings.add(new Setting(codec, profile.batchSize(), profile.lingerMs()));
+            }
+        }
+
+        System.out.printf("%nCorpus: %d pedidos, %.0f bytes/pedido em média, chegada %.0f pedidos/s, %d partições%n",
+                corpus.size(), corpus.stream().mapToInt(value -> value.length).average().orElse(0), rate, PARTITIONS);
+        System.out.printf("%-8s %8s %6s %10s %8s %10s %8s %10s %10s  %s%n", "codec", "batch", "linger", "bytes/reg",
+                "razão", "lotes", "reg/lote", "cpu/reg", "p50", "p99");
+        for (Setting setting : settings) {
+            // primeira rodada aquece o JIT e os codecs nativos
+            run(setting, corpus, arrivals);
+            Result result = run(setting, corpus, arrivals);
+            System.out.printf("%-8s %8d %6d %10.1f %8.2f %10d %8.1f %8.2fµs %8.2fms %8.2fms%s%n",
+                    setting.codec(), setting.batchSize(), setting.lingerMs(),
+                    (double) result.bytes() / result.records(), (double) result.uncompressed() / result.bytes(),
+                    result.batches(), (double) result.records() / result.batches(),
+                    result.cpuNanos() / 1_000.0 / result.records(),
+                    result.p50Nanos() / 1e6, result.p99Nanos() / 1e6, profileLabel(setting));
+            assertThat(result.records()).isEqualTo(corpus.size());
+        }
+    }
+
+
+    private static Result run(Setting setting, List<byte[]> corpus, long[] arrivals) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(setting.lingerMs());
+        Batch[] open = new Batch[PARTITIONS];
+        long[] latencies = new long[corpus.size()];
+        long[] totals = new long[3];
+
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        for (int i = 0; i < corpus.size(); i++) {
+            long now = arrivals[i];
+            // lotes cujo linger venceu antes desta chegada já foram enviados
+            for (int p = 0; p < PARTITIONS; p++) {
+                if (open[p] != null && open[p].firstArrival + lingerNanos <= now) {
+                    open[p].close(open[p].firstArrival + lingerNanos, arrivals, latencies, totals);
+                    open[p] = null;
+                }
+            }
+            byte[] value = corpus.get(i);
+            byte[] key = ("pedido-" + i).getBytes(StandardCharsets.UTF_8);
+            int partition = Utils.toPositive(Utils.murmur2(key)) % PARTITIONS;
+            Batch batch = open[partition];
+            if (batch != null && !batch.hasRoomFor(TimeUnit.NANOSECONDS.toMillis(now), key, value)) {
+                batch.close(batch.lastArrival, arrivals, latencies, totals);
+                batch = null;
+            }
+            if (batch == null) {
+                batch = new Batch(setting, now);
+                open[partition] = batch;
+            }
+            batch.append(i, now, key, value);
+        }
+        for (Batch batch : open) {
+            if (batch != null) {
+                batch.close(Math.max(batch.lastArrival, batch.firstArrival + lingerNanos), arrivals, latencies, totals);
+            }
+        }
+        long cpuNanos = threads.getCurrentThreadCpuTime() - cpuStart;
+
+        Arrays.sort(latencies);
+        return new Result(setting, corpus.size(), totals[0], totals[1], totals[2], cpuNanos,
+                latencies[latencies.length / 2], latencies[(int) (latencies.length * 0.99)]);
+    }
+
+
+    /** Lote aberto de uma partição, com os índices dos registros para calcular a latência de cada um no fechamento. */
+    private static final class Batch {
+
+        private final MemoryRecordsBuilder builder;
+        private final long firstArrival;
+        private final List<Integer> records = new ArrayList<>();
+        private long lastArrival;
+        private long compressNanos;
+
+        private Batch(Setting setting, long firstArrival) {
+            this.builder = MemoryRecords.builder(ByteBuffer.allocate(setting.batchSize()), RecordBatch.CURRENT_MAGIC_VALUE,
+                    Compression.of(setting.codec()).build(), TimestampType.CREATE_TIME, 0L);
+            this.firstArrival = firstArrival;
+        }
+
+        private boolean hasRoomFor(long timestamp, byte[] key, byte[] value) {
+            return builder.hasRoomFor(timestamp, key, value, Record.EMPTY_HEADERS);
+        }
+
+        private void append(int index, long arrival, byte[] key, byte[] value) {
+            long start = System.nanoTime();
+            builder.append(TimeUnit.NANOSECONDS.toMillis(arrival), key, value);
+            compressNanos += System.nanoTime() - start;
+            records.add(index);
+            lastArrival = arrival;
+        }
+
+        private void close(long closedAt, long[] arrivals, long[] latencies, long[] totals) {
+            long start = System.nanoTime();
+            MemoryRecords built = builder.build();
+            compressNanos += System.nanoTime() - start;
+            for (int index : records) {
+                latencies[index] = closedAt - arrivals[index] + compressNanos;
+            }
+            totals[0]++;
+            totals[1] += built.sizeInBytes();
+            totals[2] += builder.uncompressedBytesWritten();
+        }
+    }
+
+
+    private static String profileLabel(Setting setting) {
+        for (ProducerProfile profile : ProducerProfile.values()) {
+            if (profile.compression().equals(setting.codec()) && profile.batchSize() == setting.batchSize()
+                    && profile.lingerMs() == setting.lingerMs()) {
+                return "  <- " + profile.profileName();
+            }
+        }
+        return "";
+    }
+
+    private static List<byte[]> loadCorpus() throws IOException {
+        String path = System.getProperty("benchmark.corpus", "");
+        if (!path.isBlank()) {
+            return Files.readAllLines(Path.of(path)).stream()
+                    .filter(line -> !line.isBlank())
+                    .map(line -> line.getBytes(StandardCharsets.UTF_8))
+                    .toList();
+        }
+        ObjectMapper mapper = new JacksonConfig().objectMapper();
+        Random random = new Random(42);
+        int size = Integer.getInteger("benchmark.orders", 50_000);
+        List<byte[]> corpus = new ArrayList<>(size);
+        Instant start = Instant.parse("2026-01-01T00:00:00Z");
+        for (int i = 0; i < size; i++) {
+            Order order = new Order();
+            order.setId("pedido-" + i);
+            order.setCustomer("cliente-" + random.nextInt(500));
+            List<OrderItem> items = new ArrayList<>();
+            double total = 0;
+            for (int item = 0, count = 1 + random.nextInt(4); item < count; item++) {
+                double price = Math.round(random.nextDouble() * 50_000) / 100.0;
+                int quantity = 1 + random.nextInt(5);
+                items.add(new OrderItem("p" + random.nextInt(200), quantity, price));
+                total += price * quantity;
+            }
+            order.setItems(items);
+            order.setTotal(Math.round(total * 100) / 100.0);
+            order.setCreatedAt(start.plusMillis(i * 7L));
+            corpus.add(mapper.writeValueAsBytes(order));
+        }
+        return corpus;
+    }
+}
@@ -0,0 +1,38 @@
+package com.rairai.producer_kafka.config;
+
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProducerProfileTest {
+
+    @Test
+    void resolvesProfileByName() {
+        assertThat(ProducerProfile.of("max-throughput")).isEqualTo(ProducerProfile.MAX_THROUGHPUT);
+        assertThat(ProducerProfile.of(" Low-Latency ")).isEqualTo(ProducerProfile.LOW_LATENCY);
+        assertThatThrownBy(() -> ProducerProfile.of("turbo"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("low-latency, balanced, max-throughput");
+    }
+
+    @Test
+    void customizerOverridesProducerFactorySettings() {
+        DefaultKafkaProducerFactory<String, Object> factory = new DefaultKafkaProducerFactory<>(Map.of(
+                ProducerConfig.ACKS_CONFIG, "all",
+                ProducerConfig.LINGER_MS_CONFIG, 1));
+
+        new ProducerProfileConfig().producerProfileCustomizer("max-throughput").customize(factory);
+
+        assertThat(factory.getConfigurationProperties())
+                .containsEntry(ProducerConfig.ACKS_CONFIG, "all")
+                .containsEntry(ProducerConfig.LINGER_MS_CONFIG, 50)
+                .containsEntry(ProducerConfig.BATCH_SIZE_CONFIG, 262_144)
+                .containsEntry(ProducerConfig.COMPRESSION_TYPE_CONFIG, "zstd")
+                .containsEntry(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+    }
+}
@@ -0,0 +1,125 @@
+package com.rairai.producer_kafka.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+/**
+ * Compara o {@code POST /api/pedidos} com threads de plataforma e com virtual threads sob muitas requisições
+ * simultâneas. Com o outbox ligado cada requisição espera o fsync em grupo do journal, que é o bloqueio que prende as
+ * threads do Tomcat. Fica fora do {@code mvn test} normal; rode uma vez em cada modo e compare:
+ * <pre>
+ * mvn test -Dtest=VirtualThreadBenchmark -Dspring.threads.virtual.enabled=false
+ * mvn test -Dtest=VirtualThreadBenchmark -Dspring.threads.virtual.enabled=true
+ * </pre>
+ * {@code -Dbenchmark.concurrency} (padrão 1000) e {@code -Dbenchmark.requests} (padrão 20000) ajustam a carga. O
+ * cliente roda na mesma JVM e disputa a mesma CPU nos dois modos.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "app.admission.enabled=false",
+        "app.outbox.enabled=true",
+        "app.outbox.dir=${java.io.tmpdir}/outbox-benchmark-${random.uuid}"})
+@EmbeddedKafka(partitions = 3, topics = "pedidos")
+class VirtualThreadBenchmark {
+
+    @Value("${local.server.port}")
+    private int port;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${server.tomcat.threads.max:200}")
+    private int tomcatThreads;
+
+    @Test
+    void postOrdersUnderHighConcurrency() throws Exception {
+        int concurrency = Integer.getInteger("benchmark.concurrency", 1000);
+        int requests = Integer.getInteger("benchmark.requests", 20_000);
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        // aquecimento: JIT, pool de conexões e segmentos do outbox
+        run(client, Math.min(concurrency, 200), Math.max(1, requests / 10));
+        Result result = run(client, concurrency, requests);
+
+        System.out.printf("%nModo: %s, concorrência %d, %d requisições%n",
+                virtualThreads ? "virtual threads" : "plataforma (Tomcat " + tomcatThreads + " threads)",
+                concurrency, requests);
+        System.out.printf("throughput %.0f req/s, p50 %.2f ms, p99 %.2f ms, máx %.2f ms, erros %d%n",
+                requests / (result.elapsedNanos() / 1e9), result.percentile(0.50) / 1e6,
+                result.percentile(0.99) / 1e6, result.percentile(1.0) / 1e6, result.errors());
+        assertThat(result.errors()).isZero();
+    }
+
+
+    private Result run(HttpClient client, int concurrency, int requests) throws InterruptedException {
+        long[] latencies = new long[requests];
+        AtomicInteger errors = new AtomicInteger();
+        Semaphore slots = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(requests);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < requests; i++) {
+                slots.acquire();
+                int index = i;
+                executor.execute(() -> {
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request(index), HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 201) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        latencies[index] = System.nanoTime() - sent;
+                        slots.release();
+                        done.countDown();
+                    }
+                });
+            }
+            done.await(5, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        return new Result(latencies, elapsed, errors.get());
+    }
+
+    private HttpRequest request(int index) {
+        String body = "{\"customer\":\"cliente-" + (index % 500) + "\","
+                + "\"items\":[{\"productId\":\"p" + (index % 200) + "\",\"quantity\":1,\"price\":10.0}],\"total\":10.0}";
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/pedidos"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+
+    private record Result(long[] sortedLatencies, long elapsedNanos, int errors) {
+
+        long percentile(double p) {
+            int index = (int) Math.min(sortedLatencies.length - 1, Math.floor(sortedLatencies.length * p));
+            return sortedLatencies[index];
+        }
+    }
+}
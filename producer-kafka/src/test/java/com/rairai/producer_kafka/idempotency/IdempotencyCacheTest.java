@@ -0,0 +1,135 @@
+package com.rairai.producer_kafka.idempotency;
+
+import com.rairai.producer_kafka.model.Order;
+import com.rairai.producer_kafka.model.OrderItem;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotencyCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void coalescesDuplicateWhileFirstIsInFlight() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(60_000, 100, 5_000, now::get);
+        IdempotencyCache.Claim first = cache.claim("k1", "h");
+        assertThat(first.owner()).isTrue();
+
+        CompletableFuture<IdempotencyCache.Claim> duplicate = CompletableFuture.supplyAsync(() -> cache.claim("k1", "h"));
+        Thread.sleep(50);
+        assertThat(duplicate).isNotDone();
+
+        ResponseEntity<Order> created = ResponseEntity.status(HttpStatus.CREATED).body(new Order());
+        cache.complete(first, created);
+
+        assertThat(duplicate.get(1, TimeUnit.SECONDS).response()).isSameAs(created);
+        assertThat(cache.claim("k1", "h").response()).isSameAs(created);
+        assertThat(cache.metrics()).containsEntry("coalesced", 1L).containsEntry("hits", 2L);
+    }
+
+    @Test
+    void rejectedResponsesAreNotCached() {
+        IdempotencyCache cache = new IdempotencyCache(60_000, 100, 5_000, now::get);
+        IdempotencyCache.Claim first = cache.claim("k1", "h");
+        cache.complete(first, ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build());
+
+        assertThat(cache.claim("k1", "h").owner()).isTrue();
+    }
+
+    @Test
+    void evictsExpiredAndOldestBeyondCapacity() {
+        IdempotencyCache cache = new IdempotencyCache(1_000, 2, 5_000, now::get);
+        for (String key : new String[]{"a", "b", "c"}) {
+            cache.complete(cache.claim(key, "h"), ResponseEntity.ok(new Order()));
+        }
+        assertThat(cache.claim("a", "h").owner()).isTrue();
+        assertThat(cache.claim("c", "h").owner()).isFalse();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertThat(cache.claim("c", "h").owner()).isTrue();
+    }
+
+    @Test
+    void reusedKeyWithAnotherBodyIsRejected() {
+        IdempotencyCache cache = new IdempotencyCache(60_000, 100, 5_000, now::get);
+        Order order = order("cliente-1", 2);
+        cache.complete(cache.claim("k1", IdempotencyCache.fingerprint(order)), ResponseEntity.ok(order));
+
+        assertThat(cache.claim("k1", IdempotencyCache.fingerprint(order("cliente-1", 2))).owner()).isFalse();
+        assertThatThrownBy(() -> cache.claim("k1", IdempotencyCache.fingerprint(order("cliente-1", 3))))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_CONTENT));
+        assertThat(cache.metrics()).containsEntry("mismatches", 1L);
+    }
+
+    @Test
+    void inFlightKeysAreNeverEvicted() {
+        IdempotencyCache cache = new IdempotencyCache(1_000, 1, 5_000, now::get);
+        IdempotencyCache.Claim inFlight = cache.claim("a", "h");
+        cache.complete(cache.claim("b", "h"), ResponseEntity.ok(new Order()));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        cache.complete(cache.claim("c", "h"), ResponseEntity.ok(new Order()));
+
+        // "a" passou do limite e do TTL mas continua em andamento: a repetição espera por ela em vez de publicar
+        CompletableFuture<IdempotencyCache.Claim> retry = CompletableFuture.supplyAsync(() -> cache.claim("a", "h"));
+        while (!cache.metrics().get("coalesced").equals(1L)) {
+            Thread.onSpinWait();
+        }
+        ResponseEntity<Order> created = ResponseEntity.status(HttpStatus.CREATED).body(new Order());
+        cache.complete(inFlight, created);
+
+        assertThat(retry.join().owner()).isFalse();
+        assertThat(retry.join().response()).isSameAs(created);
+    }
+
+    @Test
+    void hungKeyDoesNotStopEvictionOfTheKeysBehindIt() {
+        IdempotencyCache cache = new IdempotencyCache(60_000, 2, 5_000, now::get);
+        IdempotencyCache.Claim hung = cache.claim("hung", "h");
+        for (int i = 0; i < 10; i++) {
+            cache.complete(cache.claim("k" + i, "h"), ResponseEntity.ok(new Order()));
+        }
+
+        // só a chave em andamento passa do limite: as concluídas mais antigas foram despejadas atrás dela
+        assertThat(cache.metrics()).containsEntry("entries", 3).containsEntry("inFlightOutOfQueue", 1);
+        IdempotencyCache.Claim evicted = cache.claim("k0", "h");
+        assertThat(evicted.owner()).isTrue();
+        cache.abandon(evicted);
+
+        // concluída, a chave volta à fila e é despejada pela ordem como as outras
+        cache.complete(hung, ResponseEntity.ok(new Order()));
+        assertThat(cache.metrics()).containsEntry("inFlightOutOfQueue", 0);
+        cache.complete(cache.claim("k10", "h"), ResponseEntity.ok(new Order()));
+        assertThat((int) cache.metrics().get("entries")).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    void hungKeyCompletedAfterItsTtlIsRemoved() {
+        IdempotencyCache cache = new IdempotencyCache(1_000, 1, 5_000, now::get);
+        IdempotencyCache.Claim hung = cache.claim("hung", "h");
+        cache.complete(cache.claim("a", "h"), ResponseEntity.ok(new Order()));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+
+        cache.complete(hung, ResponseEntity.ok(new Order()));
+        assertThat(cache.claim("hung", "h").owner()).isTrue();
+    }
+
+
+    private static Order order(String customer, int quantity) {
+        Order order = new Order();
+        order.setCustomer(customer);
+        order.setItems(List.of(new OrderItem("p1", quantity, 10.0)));
+        order.setTotal(10.0 * quantity);
+        return order;
+    }
+}
@@ -0,0 +1,127 @@
+package com.rairai.producer_kafka.outbox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutboxJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentAppendsShareFsyncsAndAreReadInOrderPerThread() {
+        OutboxJournal journal = new OutboxJournal(dir.toString(), 1 << 20);
+        try {
+            CompletableFuture.allOf(IntStream.range(0, 8).mapToObj(t -> CompletableFuture.runAsync(() -> {
+                for (int i = 0; i < 200; i++) {
+                    journal.append(("t" + t + "-" + i).getBytes(StandardCharsets.UTF_8));
+                }
+            })).toArray(CompletableFuture[]::new)).join();
+
+            List<String> read = payloads(journal.read(0, 10_000));
+            assertThat(read).hasSize(1_600);
+            assertThat(read.stream().filter(p -> p.startsWith("t3-")).toList())
+                    .containsExactlyElementsOf(IntStream.range(0, 200).mapToObj(i -> "t3-" + i).toList());
+            assertThat((long) journal.metrics().get("fsyncs")).isLessThanOrEqualTo(1_600);
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    void restartResumesAfterCheckpointAndTruncatesAckedSegments() throws Exception {
+        OutboxJournal journal = new OutboxJournal(dir.toString(), 256);
+        for (int i = 0; i < 20; i++) {
+            journal.append(String.format("pedido-%040d", i).getBytes(StandardCharsets.UTF_8));
+        }
+        OutboxJournal.Batch first = journal.read(0, 15);
+        journal.ack(first.end());
+        journal.close();
+        assertThat(segmentFiles()).isLessThan(7);
+
+        OutboxJournal reopened = new OutboxJournal(dir.toString(), 256);
+        try {
+            List<String> pending = payloads(reopened.read(reopened.ackedPosition(), 100));
+            assertThat(pending).containsExactlyElementsOf(
+                    IntStream.range(15, 20).mapToObj(i -> String.format("pedido-%040d", i)).toList());
+
+            reopened.append("depois".getBytes(StandardCharsets.UTF_8));
+            assertThat(payloads(reopened.read(reopened.ackedPosition(), 100))).hasSize(6).endsWith("depois");
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void appendRacingCloseFailsOnlyWhenTheRecordWasNotWritten() throws Exception {
+        OutboxJournal journal = new OutboxJournal(dir.toString(), 4096);
+        Set<String> succeeded = ConcurrentHashMap.newKeySet();
+        Set<String> rejected = ConcurrentHashMap.newKeySet();
+        CountDownLatch started = new CountDownLatch(4);
+        CompletableFuture<?>[] writers = IntStream.range(0, 4).mapToObj(t -> CompletableFuture.runAsync(() -> {
+            started.countDown();
+            for (int i = 0; i < 100_000 && rejected.isEmpty(); i++) {
+                String payload = "t" + t + "-" + i;
+                try {
+                    journal.append(payload.getBytes(StandardCharsets.UTF_8));
+                    succeeded.add(payload);
+                } catch (IllegalStateException e) {
+                    rejected.add(payload);
+                }
+            }
+        })).toArray(CompletableFuture[]::new);
+        started.await();
+        Thread.sleep(20);
+        journal.close();
+        CompletableFuture.allOf(writers).join();
+
+        OutboxJournal reopened = new OutboxJournal(dir.toString(), 4096);
+        try {
+            List<String> recovered = payloads(reopened.read(0, Integer.MAX_VALUE));
+            assertThat(recovered).containsAll(succeeded);
+            assertThat(recovered).doesNotContainAnyElementsOf(rejected);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void recoveryZeroesALargeTailInChunks() {
+        int segmentBytes = 8 << 20;
+        OutboxJournal journal = new OutboxJournal(dir.toString(), segmentBytes);
+        journal.append("antes".getBytes(StandardCharsets.UTF_8));
+        journal.close();
+
+        OutboxJournal reopened = new OutboxJournal(dir.toString(), segmentBytes);
+        try {
+            reopened.append("depois".getBytes(StandardCharsets.UTF_8));
+            assertThat(payloads(reopened.read(0, 10))).containsExactly("antes", "depois");
+        } finally {
+            reopened.close();
+        }
+    }
+
+
+    private long segmentFiles() throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.toString().endsWith(".seg")).count();
+        }
+    }
+
+    private static List<String> payloads(OutboxJournal.Batch batch) {
+        return batch.entries().stream().map(e -> new String(e.payload(), StandardCharsets.UTF_8)).toList();
+    }
+}
@@ -0,0 +1,89 @@
+package com.rairai.producer_kafka.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.rairai.producer_kafka.model.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OutboxRelayTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void retriesBatchUntilBrokerAcceptsThenAdvancesCheckpoint() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        OutboxJournal journal = new OutboxJournal(dir.toString(), 1 << 16);
+        AtomicBoolean brokerUp = new AtomicBoolean(false);
+        List<String> delivered = new CopyOnWriteArrayList<>();
+
+        OutboxRelay relay = new OutboxRelay(journal, mapper, order -> {
+            if (!brokerUp.get()) {
+                return CompletableFuture.failedFuture(new IllegalStateException("broker fora"));
+            }
+            delivered.add(order.getId());
+            return CompletableFuture.completedFuture(null);
+        }, 100, 1_000, 20);
+        try {
+            for (int i = 0; i < 10; i++) {
+                Order order = new Order();
+                order.setId("o" + i);
+                journal.append(mapper.writeValueAsBytes(order));
+            }
+            long deadline = System.currentTimeMillis() + 5_000;
+            while ((long) relay.metrics().get("relayFailures") < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat((long) relay.metrics().get("relayFailures")).isGreaterThanOrEqualTo(2);
+            assertThat(journal.ackedPosition()).isZero();
+
+            brokerUp.set(true);
+            while ((long) relay.metrics().get("relayed") < 10 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(delivered).containsExactly("o0", "o1", "o2", "o3", "o4", "o5", "o6", "o7", "o8", "o9");
+            assertThat(journal.read(journal.ackedPosition(), 100).entries()).isEmpty();
+        } finally {
+            relay.shutdown();
+            journal.close();
+        }
+    }
+
+    @Test
+    void shutdownWaitsForTheRelayThreadBeforeTheJournalUnmaps() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        OutboxJournal journal = new OutboxJournal(dir.toString(), 1 << 16);
+        AtomicReference<Thread> relayThread = new AtomicReference<>();
+        CountDownLatch sending = new CountDownLatch(1);
+
+        // envio que nunca confirma: o relay fica preso esperando o lote quando o shutdown chega
+        OutboxRelay relay = new OutboxRelay(journal, mapper, order -> {
+            relayThread.set(Thread.currentThread());
+            sending.countDown();
+            return new CompletableFuture<>();
+        }, 100, 60_000, 20);
+        Order order = new Order();
+        order.setId("o1");
+        journal.append(mapper.writeValueAsBytes(order));
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+
+        relay.shutdown();
+        assertThat(relayThread.get().isAlive()).isFalse();
+
+        journal.close();
+        assertThatThrownBy(() -> journal.read(0, 10)).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,37 @@
+package com.rairai.producer_kafka.partitioning;
+
+import com.rairai.producer_kafka.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StickyHashPartitionStrategyTest {
+
+    @Test
+    void keepsCustomerAffinityUntilKeyGetsHot() {
+        StickyHashPartitionStrategy strategy = new StickyHashPartitionStrategy(10, 60_000, 4);
+        Order order = order("cliente-quente");
+        int home = PartitionStrategy.hash("cliente-quente", 12);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(strategy.partition(order, 12)).isEqualTo(home);
+        }
+
+        Set<Integer> salted = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            salted.add(strategy.partition(order, 12));
+        }
+        assertThat(salted).hasSize(4);
+        assertThat(strategy.partition(order("cliente-frio"), 12)).isEqualTo(PartitionStrategy.hash("cliente-frio", 12));
+    }
+
+
+    private static Order order(String customer) {
+        Order order = new Order();
+        order.setCustomer(customer);
+        return order;
+    }
+}